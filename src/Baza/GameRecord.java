@@ -0,0 +1,284 @@
+package Baza;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import Logika.Zobrist;
+import Model.Gra;
+import Model.MoveHistory;
+import Model.Plansza;
+
+/**
+ * A game as kept in the {@link GameStore}: its ID, the players, the result,
+ * the start position and the steps played, two bytes per step.
+ * <p>
+ * The encoded form is a long ID, a long time (milliseconds since the epoch),
+ * a byte status, the black and white player names (a short length and UTF-8
+ * bytes each), the start position as three int masks and a byte with the
+ * turn and skip index, then a short step count and a short per step (start
+ * index in bits 0-4, end index in bits 5-9 and bit 10 if the turn ended).
+ */
+public final class GameRecord {
+
+    /** The status of a game that ended in a draw. */
+    public static final int DRAW = 0;
+
+    /** The status of a game won by black (player 1). */
+    public static final int BLACK_WIN = 1;
+
+    /** The status of a game won by white (player 2). */
+    public static final int WHITE_WIN = 2;
+
+    /** The status of a game that is still being played. */
+    public static final int IN_PROGRESS = 3;
+
+    private static final int ENDS_TURN = 1 << 10;
+
+    private final long id;
+
+    private final long time;
+
+    private final int status;
+
+    private final String black;
+
+    private final String white;
+
+    /** The masks of the start position. */
+    private final int blackMask, whiteMask, kingMask;
+
+    /** The turn (bit 0) and skip index plus one (bits 1-6) of the start
+     * position. */
+    private final int startFlags;
+
+    private final short[] steps;
+
+    private GameRecord(long id, long time, int status, String black,
+                       String white, int blackMask, int whiteMask,
+                       int kingMask, int startFlags, short[] steps) {
+        this.id = id;
+        this.time = time;
+        this.status = status;
+        this.black = (black == null)? "" : black;
+        this.white = (white == null)? "" : white;
+        this.blackMask = blackMask;
+        this.whiteMask = whiteMask;
+        this.kingMask = kingMask;
+        this.startFlags = startFlags;
+        this.steps = steps;
+    }
+
+    /**
+     * Creates a record of a game up to its current ply.
+     *
+     * @param id	the ID of the game (see {@link GameStore#nextId()}).
+     * @param game	the game.
+     * @param black	the name of the black player, or null.
+     * @param white	the name of the white player, or null.
+     * @return the record.
+     */
+    public static GameRecord of(long id, Gra game, String black,
+                                String white) {
+        Gra start = game.getStart();
+        Plansza b = start.getBoard();
+        int skip = start.getSkipIndex();
+        short[] steps = new short[Math.min(0xFFFF, game.getStepCount())];
+        for (int i = 0; i < steps.length; i ++) {
+            int step = game.getStep(i);
+            steps[i] = (short) (MoveHistory.start(step)
+                    | (MoveHistory.end(step) << 5)
+                    | (MoveHistory.endsTurn(step)? ENDS_TURN : 0));
+        }
+        return new GameRecord(id, System.currentTimeMillis(), statusOf(game),
+                black, white, b.getBlackMask(), b.getWhiteMask(),
+                b.getKingMask(), (start.isP1Turn()? 1 : 0)
+                | ((Plansza.isValidIndex(skip)? skip + 1 : 0) << 1), steps);
+    }
+
+    /**
+     * Gets the status of a game.
+     *
+     * @param game	the game.
+     * @return {@link #IN_PROGRESS} if the game is not over, otherwise
+     * {@link #DRAW}, {@link #BLACK_WIN} or {@link #WHITE_WIN}.
+     */
+    public static int statusOf(Gra game) {
+        if (!game.isGameOver()) {
+            return IN_PROGRESS;
+        } else if (game.isDraw()) {
+            return DRAW;
+        }
+        return game.isP1Turn()? WHITE_WIN : BLACK_WIN;
+    }
+
+    /**
+     * Replays the game from its start position.
+     *
+     * @return the game at its last ply, with its history.
+     */
+    public Gra toGame() {
+        Plansza b = new Plansza();
+        b.setMasks(blackMask, whiteMask, kingMask);
+        Gra game = new Gra(b, (startFlags & 1) != 0, (startFlags >>> 1) - 1);
+        for (short step : steps) {
+            if (!game.move(step & 0x1F, (step >>> 5) & 0x1F)) {
+                break;
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Gets the Zobrist hash of the position at every ply, replaying the
+     * steps on the board masks without checking them.
+     *
+     * @return the hashes of plies 0 to {@link #getStepCount()}.
+     * @see {@link Zobrist#hash(int, int, int, boolean)}
+     */
+    public long[] getHashes() {
+        long[] hashes = new long[steps.length + 1];
+        int black = blackMask, white = whiteMask, kings = kingMask;
+        boolean p1Turn = (startFlags & 1) != 0;
+        hashes[0] = Zobrist.hash(black, white, kings, p1Turn);
+        for (int i = 0; i < steps.length; i ++) {
+            int start = steps[i] & 0x1F, end = (steps[i] >>> 5) & 0x1F;
+            int from = 1 << start, to = 1 << end;
+            boolean isBlack = (black & from) != 0;
+            boolean king = (kings & from) != 0
+                    || Plansza.toPoint(end).y == (isBlack? 7 : 0);
+
+            // Move the checker and remove a skipped one
+            int middle = Plansza.toIndex(Plansza.middle(start, end));
+            int skipped = Plansza.isValidIndex(middle)? ~(1 << middle) : ~0;
+            if (isBlack) {
+                black = (black & ~from) | to;
+                white &= skipped;
+            } else {
+                white = (white & ~from) | to;
+                black &= skipped;
+            }
+            kings = (kings & ~from & skipped) | (king? to : 0);
+            if ((steps[i] & ENDS_TURN) != 0) {
+                p1Turn = !p1Turn;
+            }
+            hashes[i + 1] = Zobrist.hash(black, white, kings, p1Turn);
+        }
+        return hashes;
+    }
+
+    /**
+     * Checks if the turn ended with a step, so the position after it is one
+     * a player moves from.
+     *
+     * @param i	the number of the step (from 0).
+     * @return true if the turn ended.
+     */
+    public boolean endsTurn(int i) {
+        return (steps[i] & ENDS_TURN) != 0;
+    }
+
+    /**
+     * Encodes the record.
+     *
+     * @return the encoded record.
+     */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                64 + 2 * steps.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(id);
+            out.writeLong(time);
+            out.writeByte(status);
+            writeName(out, black);
+            writeName(out, white);
+            out.writeInt(blackMask);
+            out.writeInt(whiteMask);
+            out.writeInt(kingMask);
+            out.writeByte(startFlags);
+            out.writeShort(steps.length);
+            for (short step : steps) {
+                out.writeShort(step);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeName(DataOutputStream out, String name)
+            throws IOException {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        int n = Math.min(b.length, 0xFFFF);
+        out.writeShort(n);
+        out.write(b, 0, n);
+    }
+
+    /**
+     * Decodes a record.
+     *
+     * @param buffer	the encoded record, from its position to its limit.
+     * @return the record.
+     * @throws java.nio.BufferUnderflowException if the record is cut short.
+     */
+    static GameRecord decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long time = buffer.getLong();
+        int status = buffer.get();
+        String black = readName(buffer), white = readName(buffer);
+        int blackMask = buffer.getInt(), whiteMask = buffer.getInt();
+        int kingMask = buffer.getInt();
+        int startFlags = buffer.get() & 0xFF;
+        short[] steps = new short[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < steps.length; i ++) {
+            steps[i] = buffer.getShort();
+        }
+        return new GameRecord(id, time, status, black, white, blackMask,
+                whiteMask, kingMask, startFlags, steps);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        byte[] b = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the time the record was made, in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBlack() {
+        return black;
+    }
+
+    public String getWhite() {
+        return white;
+    }
+
+    /**
+     * Gets the number of steps played (a multiple skip is one per skip).
+     */
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[id=" + id + ", black=" + black
+                + ", white=" + white + ", status=" + status + ", steps="
+                + steps.length + "]";
+    }
+}
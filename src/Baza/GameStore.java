@@ -0,0 +1,769 @@
+package Baza;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import Model.Gra;
+import Zapis.PdnWriter;
+
+/**
+ * An embedded store of finished and unfinished games. Each save appends a
+ * {@link GameRecord} to a log split into segment files, and a memory-mapped
+ * {@link StoreIndex} finds the latest record of a game by its ID and the
+ * games of a player.
+ * <p>
+ * Saving only copies the record into a queue. A background thread writes
+ * the queued records every {@link #FLUSH_INTERVAL} milliseconds (or sooner
+ * when much is queued) and forces them to the disk once per batch, so many
+ * saves share one sync. A saved game can be read back at once, but is only
+ * safe from a crash after the next batch, or after {@link #flush()}. A
+ * batch that cannot be written stays queued, in order, and is tried again,
+ * and {@link #flush()} throws the error instead of waiting for it.
+ * <p>
+ * Each record in the log is an int length, the int CRC-32 of the record and
+ * the record. The index remembers how far into the log it is up to date, and
+ * on opening the records after that are indexed again. A record cut short
+ * or damaged by a crash ends the log: the segment is truncated there.
+ */
+public class GameStore implements Closeable {
+
+    /** The largest size of a segment file. */
+    public static final int SEGMENT_SIZE = 64 << 20;
+
+    /** The time a batch of saves waits to be written (in milliseconds). */
+    public static final int FLUSH_INTERVAL = 10;
+
+    /** The number of queued bytes that starts a batch at once. */
+    private static final int FLUSH_BYTES = 1 << 20;
+
+    /** The number of queued bytes after which saving waits. */
+    private static final int MAX_QUEUED_BYTES = 32 << 20;
+
+    /** The time to wait before trying a failed batch again. */
+    private static final int RETRY_INTERVAL = 100;
+
+    /** The time between writes of the index to the disk. */
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    /** The size of the length and CRC before each record. */
+    private static final int RECORD_HEADER = 8;
+
+    /** The largest size of a record. */
+    private static final int MAX_RECORD = 1 << 20;
+
+    private static final String SEGMENT_PREFIX = "games-",
+            SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+
+    private final StoreIndex index;
+
+    /** The lock guarding the queue and the end of the log. */
+    private final Object lock = new Object();
+
+    /** The records waiting to be written. */
+    private List<Queued> queue = new ArrayList<>();
+
+    /** The latest record of each game that is not yet in the index. */
+    private final Map<Long, Queued> unindexed = new HashMap<>();
+
+    private int queuedBytes;
+
+    /** The segment and offset the next record is written at. */
+    private int segment, end;
+
+    /** The number of records saved and the number written to the disk. */
+    private long saved, durable;
+
+    /** The error of the last batch if it could not be written, or null. */
+    private IOException failure;
+
+    /** The number of times a batch could not be written. */
+    private long failures;
+
+    private volatile boolean closed;
+
+    private final AtomicLong ids;
+
+    /** The open segment files, for reading records. */
+    private final Map<Integer, FileChannel> readers = new HashMap<>();
+
+    /** The segment file being written. */
+    private FileChannel out;
+
+    private int outSegment = -1;
+
+    private final Thread writer;
+
+    private GameStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        this.index = StoreIndex.open(dir.resolve("index.dat"));
+        recover();
+        this.ids = new AtomicLong(index.getMaxId());
+        this.writer = new Thread(this::writeLoop, "game-store");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the store in a directory, creating it if needed and recovering
+     * the records written after the index was last saved.
+     *
+     * @param dir	the directory of the store.
+     * @return the open store.
+     * @throws IOException if the store cannot be opened.
+     */
+    public static GameStore open(Path dir) throws IOException {
+        return new GameStore(dir);
+    }
+
+    /**
+     * Gets a new game ID, larger than every ID in the store.
+     *
+     * @return the game ID.
+     */
+    public long nextId() {
+        return ids.incrementAndGet();
+    }
+
+    /**
+     * Saves a game up to its current ply, replacing any earlier save of the
+     * same game ID.
+     *
+     * @param id	the ID of the game.
+     * @param game	the game.
+     * @param black	the name of the black player, or null.
+     * @param white	the name of the white player, or null.
+     * @return the record that was saved.
+     */
+    public GameRecord save(long id, Gra game, String black, String white) {
+        GameRecord record = GameRecord.of(id, game, black, white);
+        save(record);
+        return record;
+    }
+
+    /**
+     * Saves a game record, replacing any earlier record with the same ID.
+     * This only waits if the writer is far behind.
+     *
+     * @param record	the record to save.
+     * @throws IllegalStateException if the store is closed.
+     */
+    public void save(GameRecord record) {
+        if (record.getId() <= 0) {
+            throw new IllegalArgumentException("Invalid game ID "
+                    + record.getId());
+        }
+        byte[] bytes = frame(record.encode());
+        synchronized (lock) {
+            while (queuedBytes > MAX_QUEUED_BYTES && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (closed) {
+                throw new IllegalStateException("The store is closed");
+            }
+
+            // Start a new segment if the record does not fit
+            if (end > 0 && (long) end + bytes.length > SEGMENT_SIZE) {
+                this.segment ++;
+                this.end = 0;
+            }
+            Queued q = new Queued(record, bytes, segment, end);
+            queue.add(q);
+            unindexed.put(record.getId(), q);
+            this.end += bytes.length;
+            this.queuedBytes += bytes.length;
+            this.saved ++;
+            if (queuedBytes >= FLUSH_BYTES) {
+                lock.notifyAll();
+            }
+        }
+        ids.accumulateAndGet(record.getId(), Math::max);
+    }
+
+    /**
+     * Adds the length and CRC to an encoded record.
+     */
+    private static byte[] frame(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER + record.length);
+        b.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        return b.array();
+    }
+
+    /**
+     * Waits until every game saved so far is written to the disk.
+     *
+     * @throws IOException if the store is closed before that, or if the
+     * records could not be written.
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            long target = saved, failed = failures;
+            lock.notifyAll();
+            while (durable < target) {
+                if (failures != failed) {
+                    throw new IOException("The saved games could not be "
+                            + "written", failure);
+                }
+                if (closed && !writer.isAlive()) {
+                    throw new IOException("The store is closed");
+                }
+                try {
+                    lock.wait(FLUSH_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the latest record of a game.
+     *
+     * @param id	the ID of the game.
+     * @return the record, or null if the game is not in the store.
+     * @throws IOException if the record cannot be read.
+     */
+    public GameRecord get(long id) throws IOException {
+        synchronized (lock) {
+            Queued q = unindexed.get(id);
+            if (q != null) {
+                return q.record;
+            }
+        }
+        long location;
+        synchronized (index) {
+            location = index.get(id);
+        }
+        if (location < 0) {
+            return null;
+        }
+        ByteBuffer record = read((int) (location >>> 32), (int) location);
+        if (record == null) {
+            throw new IOException("Damaged record of game " + id);
+        }
+        return GameRecord.decode(record);
+    }
+
+    /**
+     * Gets the IDs of the games of a player, newest first.
+     *
+     * @param player	the name of the player (as black or white).
+     * @return the game IDs.
+     */
+    public List<Long> findByPlayer(String player) {
+        List<Long> found = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        synchronized (lock) {
+            for (Queued q : unindexed.values()) {
+                if (player.equals(q.record.getBlack())
+                        || player.equals(q.record.getWhite())) {
+                    long id = q.record.getId();
+                    if (seen.add(id)) {
+                        found.add(id);
+                    }
+                }
+            }
+        }
+        synchronized (index) {
+            index.forEach(player, id -> {
+                if (seen.add(id)) {
+                    found.add(id);
+                }
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Visits the latest record of every game, in the order they were last
+     * saved. Games saved before this is called are written first.
+     *
+     * @param visitor	called with each record.
+     * @throws IOException if the log cannot be read.
+     */
+    public void forEachGame(Consumer<GameRecord> visitor) throws IOException {
+        flush();
+        for (Map.Entry<Integer, Path> e : listSegments().entrySet()) {
+            int seg = e.getKey();
+            try (FileChannel c = FileChannel.open(e.getValue(),
+                    StandardOpenOption.READ)) {
+                long size = c.size(), offset = 0;
+                ByteBuffer record;
+                while ((record = read(c, offset, size)) != null) {
+                    long location = ((long) seg << 32) | offset;
+                    offset += RECORD_HEADER + record.remaining();
+                    GameRecord r = GameRecord.decode(record);
+                    boolean latest;
+                    synchronized (index) {
+                        latest = index.get(r.getId()) == location;
+                    }
+                    if (latest) {
+                        visitor.accept(r);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of games in the store.
+     */
+    public int size() {
+        List<Long> queued;
+        synchronized (lock) {
+            queued = new ArrayList<>(unindexed.keySet());
+        }
+        synchronized (index) {
+            int n = index.getGames();
+            for (long id : queued) {
+                if (index.get(id) < 0) {
+                    n ++;
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Writes the queued records in batches until the store is closed.
+     */
+    private void writeLoop() {
+        long lastCheckpoint = System.currentTimeMillis();
+        while (true) {
+
+            // Wait for a batch
+            List<Queued> batch;
+            long batchEnd;
+            synchronized (lock) {
+                if (queue.isEmpty() && closed) {
+                    break;
+                }
+                if (queuedBytes < FLUSH_BYTES && !closed) {
+                    try {
+                        lock.wait(FLUSH_INTERVAL);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                }
+                batch = queue;
+                batchEnd = saved;
+                this.queue = new ArrayList<>();
+                this.queuedBytes = 0;
+                lock.notifyAll();
+            }
+
+            // Write and index it
+            IOException error = null;
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch);
+                    index(batch);
+                } catch (IOException e) {
+                    error = e;
+                    e.printStackTrace();
+                }
+            }
+
+            // Keep a failed batch at the front of the queue, so no later
+            // record is written past the hole it would leave
+            if (error != null) {
+                synchronized (lock) {
+                    this.failure = error;
+                    this.failures ++;
+                    for (Queued q : batch) {
+                        this.queuedBytes += q.bytes.length;
+                    }
+                    batch.addAll(queue);
+                    this.queue = batch;
+                    lock.notifyAll();
+                    if (closed) {
+                        break;
+                    }
+                    try {
+                        lock.wait(RETRY_INTERVAL);
+                    } catch (InterruptedException e) {}
+                }
+                continue;
+            }
+            synchronized (lock) {
+                this.failure = null;
+                for (Queued q : batch) {
+                    unindexed.remove(q.record.getId(), q);
+                }
+                this.durable = batchEnd;
+                lock.notifyAll();
+            }
+
+            // Save the index now and then
+            long now = System.currentTimeMillis();
+            if (now - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                checkpoint();
+                lastCheckpoint = now;
+            }
+        }
+
+        // The index must not cover a batch that was not written
+        boolean failed;
+        synchronized (lock) {
+            failed = failure != null;
+        }
+        if (!failed) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Writes a batch to the segment files with one write and one sync per
+     * segment.
+     */
+    private void write(List<Queued> batch) throws IOException {
+        int i = 0;
+        while (i < batch.size()) {
+
+            // Gather the records of one segment
+            int seg = batch.get(i).segment, start = batch.get(i).offset;
+            int j = i, size = 0;
+            while (j < batch.size() && batch.get(j).segment == seg) {
+                size += batch.get(j ++).bytes.length;
+            }
+            ByteBuffer b = ByteBuffer.allocate(size);
+            for (int k = i; k < j; k ++) {
+                b.put(batch.get(k).bytes);
+            }
+            b.flip();
+
+            // Write them
+            if (seg != outSegment) {
+                if (out != null) {
+                    FileChannel old = out;
+                    this.out = null;
+                    this.outSegment = -1;
+                    old.force(false);
+                    old.close();
+                }
+                this.out = FileChannel.open(segmentPath(seg),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                this.outSegment = seg;
+            }
+            long position = start;
+            while (b.hasRemaining()) {
+                position += out.write(b, position);
+            }
+            out.force(false);
+            i = j;
+        }
+    }
+
+    /**
+     * Points the index to the records of a written batch.
+     */
+    private void index(List<Queued> batch) throws IOException {
+        synchronized (index) {
+            for (Queued q : batch) {
+                GameRecord r = q.record;
+                if (!index.put(r.getId(), r.getBlack(), r.getWhite(),
+                        q.segment, q.offset)) {
+
+                    // Grow the index and fill it again from the log
+                    Queued last = batch.get(batch.size() - 1);
+                    rebuild(last.segment, last.offset + last.bytes.length);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the index to the disk and marks the log up to the records
+     * written so far as covered by it.
+     */
+    private void checkpoint() {
+        synchronized (index) {
+            try {
+                int seg, offset;
+                synchronized (lock) {
+                    seg = (out == null)? segment : outSegment;
+                    offset = (out == null)? end : (int) out.size();
+                }
+                index.force();
+                index.setCovered(seg, offset);
+                index.force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Indexes the records written after the index was last saved, and
+     * truncates the log at the first damaged record.
+     */
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> segments = listSegments();
+        int lastSegment = segments.isEmpty()? 0 : segments.lastKey();
+        synchronized (index) {
+            int lastEnd = replay(segments, index.getSegment(),
+                    index.getOffset(), Integer.MAX_VALUE, Integer.MAX_VALUE);
+            this.segment = lastSegment;
+            this.end = (lastEnd < 0)? 0 : lastEnd;
+            index.setCovered(segment, end);
+            index.force();
+        }
+    }
+
+    /**
+     * Grows the index and indexes every record in the log again, up to a
+     * point.
+     */
+    private void rebuild(int toSegment, int toOffset) throws IOException {
+        index.grow();
+        replay(listSegments(), 0, 0, toSegment, toOffset);
+    }
+
+    /**
+     * Indexes the records in the log between two points, growing the index
+     * when it is full.
+     *
+     * @return the end of the last segment read, or -1 if none was read.
+     */
+    private int replay(TreeMap<Integer, Path> segments, int fromSegment,
+                       int fromOffset, int toSegment, int toOffset)
+            throws IOException {
+        int lastEnd = -1;
+        for (Map.Entry<Integer, Path> e : segments.tailMap(
+                fromSegment, true).entrySet()) {
+            int seg = e.getKey();
+            if (seg > toSegment) {
+                break;
+            }
+            int offset = (seg == fromSegment)? fromOffset : 0;
+            int limit = (seg == toSegment)? toOffset : Integer.MAX_VALUE;
+            try (FileChannel c = FileChannel.open(e.getValue(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = c.size();
+                while (offset < size && offset < limit) {
+                    ByteBuffer record = read(c, offset, size);
+                    if (record == null) {
+
+                        // The rest was cut short by a crash
+                        System.err.println("Truncating " + e.getValue()
+                                + " at damaged record " + offset);
+                        c.truncate(offset);
+                        size = offset;
+                        break;
+                    }
+                    int length = record.remaining();
+                    GameRecord r;
+                    try {
+                        r = GameRecord.decode(record);
+                    } catch (BufferUnderflowException ex) {
+                        c.truncate(offset);
+                        size = offset;
+                        break;
+                    }
+                    if (!index.put(r.getId(), r.getBlack(), r.getWhite(),
+                            seg, offset)) {
+                        index.grow();
+                        return replay(segments, 0, 0, toSegment, toOffset);
+                    }
+                    offset += RECORD_HEADER + length;
+                }
+                lastEnd = (int) size;
+            }
+        }
+        return lastEnd;
+    }
+
+    /**
+     * Reads a record from a segment file of this store.
+     *
+     * @return the record, or null if it is damaged.
+     */
+    private ByteBuffer read(int seg, int offset) throws IOException {
+        FileChannel c;
+        synchronized (readers) {
+            c = readers.get(seg);
+            if (c == null) {
+                c = FileChannel.open(segmentPath(seg), StandardOpenOption.READ);
+                readers.put(seg, c);
+            }
+        }
+        return read(c, offset, c.size());
+    }
+
+    /**
+     * Reads and checks a record.
+     *
+     * @return the record, or null if it is cut short or damaged.
+     */
+    private static ByteBuffer read(FileChannel c, long offset, long size)
+            throws IOException {
+        if (offset + RECORD_HEADER > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(c, header, offset);
+        int length = header.getInt(0), crc = header.getInt(4);
+        if (length <= 0 || length > MAX_RECORD
+                || offset + RECORD_HEADER + length > size) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(c, record, offset + RECORD_HEADER);
+        CRC32 check = new CRC32();
+        check.update(record.array());
+        if ((int) check.getValue() != crc) {
+            return null;
+        }
+        return record;
+    }
+
+    private static void readFully(FileChannel c, ByteBuffer b, long position)
+            throws IOException {
+        while (b.hasRemaining()) {
+            int n = c.read(b, position + b.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        b.flip();
+    }
+
+    private Path segmentPath(int seg) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, seg,
+                SEGMENT_SUFFIX));
+    }
+
+    private TreeMap<Integer, Path> listSegments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(name.substring(
+                            SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), p);
+                } catch (NumberFormatException e) {}
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Writes every saved game and closes the store.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            this.closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (out != null) {
+            out.close();
+        }
+        synchronized (readers) {
+            for (FileChannel c : readers.values()) {
+                c.close();
+            }
+            readers.clear();
+        }
+        synchronized (index) {
+            index.close();
+        }
+    }
+
+    /**
+     * A record waiting to be written, and where it goes.
+     */
+    private static class Queued {
+
+        private final GameRecord record;
+
+        private final byte[] bytes;
+
+        private final int segment, offset;
+
+        private Queued(GameRecord record, byte[] bytes, int segment,
+                       int offset) {
+            this.record = record;
+            this.bytes = bytes;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Shows what is in a store from the command line:
+     * {@code GameStore <dir>} for the number of games,
+     * {@code GameStore <dir> <id>} for a game as PDN, or
+     * {@code GameStore <dir> -player <name>} for the games of a player.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GameStore <dir> [id | -player name]");
+            return;
+        }
+        try (GameStore store = open(Paths.get(args[0]))) {
+            if (args.length >= 3 && args[1].equals("-player")) {
+                for (long id : store.findByPlayer(args[2])) {
+                    System.out.println(store.get(id));
+                }
+            } else if (args.length >= 2) {
+                GameRecord r = store.get(Long.parseLong(args[1]));
+                if (r == null) {
+                    System.err.println("No game " + args[1]);
+                    return;
+                }
+                Map<String, String> tags = new HashMap<>();
+                tags.put("Black", r.getBlack());
+                tags.put("White", r.getWhite());
+                Writer w = new OutputStreamWriter(System.out,
+                        StandardCharsets.UTF_8);
+                PdnWriter.write(w, r.toGame(), tags);
+                w.flush();
+            } else {
+                System.out.println(store.size() + " games");
+            }
+        }
+    }
+}
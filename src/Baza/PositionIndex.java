@@ -0,0 +1,664 @@
+package Baza;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import Logika.Zobrist;
+import Model.Gra;
+import Zapis.PdnReader;
+
+/**
+ * Finds the stored games that passed through a position. Every position a
+ * player moved from is recorded as its Zobrist hash and a hit (the game ID
+ * and ply), in a log-structured merge tree: new hits are collected in memory,
+ * written out as a sorted segment file when there are
+ * {@link #MEMTABLE_SIZE} of them, and small segments are merged into larger
+ * ones so there are no more than {@link #MAX_SEGMENTS}. A merged segment
+ * holds at most {@value #MAX_MERGED} hits, so only once the index is made of
+ * segments close to that size can there be more.
+ * <p>
+ * Each segment has a bloom filter of its hashes, so a query only searches
+ * the segments that may hold the position. The segments are memory-mapped
+ * and searched in place with a binary search, so a query reads a few pages
+ * per segment.
+ * <p>
+ * A segment file is a header (int magic, int version, long count, int
+ * bloom words, int bloom hashes, and the int first and last segment numbers
+ * it was merged from), the bloom filter as longs and the hits as a long hash
+ * and long hit each, sorted by hash. Hits still in memory are lost if the
+ * program ends without {@link #close()}; the index can be built again from
+ * the {@link GameStore} after a {@link #clear()}. A game added more than once
+ * is only found once per position, but the positions of an earlier version
+ * of a game stay in the index until it is built again.
+ */
+public class PositionIndex implements Closeable {
+
+    /** The number of hits collected in memory before a segment is written. */
+    public static final int MEMTABLE_SIZE = 1 << 18;
+
+    /** The largest number of segments before they are merged. */
+    public static final int MAX_SEGMENTS = 8;
+
+    /** The largest number of hits in a merged segment. */
+    private static final long MAX_MERGED = 1L << 26;
+
+    /** The magic number at the start of a segment ("WPOS"). */
+    private static final int MAGIC = 0x57504F53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    /** The bloom filter bits per hit (about a 1% false positive rate). */
+    private static final int BLOOM_BITS = 10;
+
+    private static final int BLOOM_HASHES = 7;
+
+    private static final String PREFIX = "positions-", SUFFIX = ".seg";
+
+    private final Path dir;
+
+    /** The segments, oldest first. */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /** The hashes and hits collected in memory. */
+    private final long[] memKeys = new long[MEMTABLE_SIZE],
+            memHits = new long[MEMTABLE_SIZE];
+
+    private int memSize;
+
+    /** The number of the next segment file. */
+    private int nextNumber;
+
+    private PositionIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the index in a directory, creating it if needed. Segments that
+     * were merged into another one that was completely written are removed.
+     *
+     * @param dir	the directory of the index.
+     * @return the open index.
+     * @throws IOException if the index cannot be opened.
+     */
+    public static PositionIndex open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        PositionIndex index = new PositionIndex(dir);
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                PREFIX + "*" + SUFFIX)) {
+            for (Path p : files) {
+                Segment s = Segment.open(p);
+                if (s != null) {
+                    found.add(s);
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt(s -> s.first));
+        for (Segment s : found) {
+            boolean merged = false;
+            for (Segment other : found) {
+                if (other != s && other.first <= s.first
+                        && s.last <= other.last
+                        && other.last - other.first > s.last - s.first) {
+                    merged = true;
+                }
+            }
+            if (merged) {
+                s.close();
+                Files.deleteIfExists(s.file);
+            } else {
+                index.segments.add(s);
+                index.nextNumber = Math.max(index.nextNumber, s.last + 1);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Records every position a player moved from in a game.
+     *
+     * @param record	the game.
+     * @throws IOException if a segment cannot be written.
+     */
+    public synchronized void add(GameRecord record) throws IOException {
+        long[] hashes = record.getHashes();
+        for (int ply = 0; ply < hashes.length; ply ++) {
+            if (ply == 0 || record.endsTurn(ply - 1)) {
+                add(hashes[ply], record.getId(), ply);
+            }
+        }
+    }
+
+    /**
+     * Records that a game passed through a position.
+     *
+     * @param hash		the Zobrist hash of the position.
+     * @param gameId	the ID of the game.
+     * @param ply		the ply the position was reached at.
+     * @throws IOException if a segment cannot be written.
+     */
+    public synchronized void add(long hash, long gameId, int ply)
+            throws IOException {
+        if (memSize == MEMTABLE_SIZE) {
+            flush();
+        }
+        this.memKeys[memSize] = hash;
+        this.memHits[memSize ++] = hit(gameId, ply);
+    }
+
+    /**
+     * Finds the games that passed through a position.
+     *
+     * @param game	the game whose current position to find.
+     * @param limit	the largest number of hits to return.
+     * @return the hits, as by {@link #hit(long, int)}, in no set order.
+     */
+    public long[] find(Gra game, int limit) {
+        return find(Zobrist.hash(game.getBoard(), game.isP1Turn()), limit);
+    }
+
+    /**
+     * Finds the games that passed through a position. A hit that was added
+     * more than once is only returned once.
+     *
+     * @param hash	the Zobrist hash of the position.
+     * @param limit	the largest number of hits to return.
+     * @return the hits, as by {@link #hit(long, int)}, in no set order.
+     */
+    public synchronized long[] find(long hash, int limit) {
+        long[] found = new long[Math.min(limit, 64)];
+        Set<Long> seen = new HashSet<>();
+        int n = 0;
+
+        // Search the newest hits first
+        for (int i = 0; i < memSize && n < limit; i ++) {
+            if (memKeys[i] == hash && seen.add(memHits[i])) {
+                if (n == found.length) {
+                    found = Arrays.copyOf(found, Math.min(limit, n * 2));
+                }
+                found[n ++] = memHits[i];
+            }
+        }
+        for (int s = segments.size() - 1; s >= 0 && n < limit; s --) {
+            Segment seg = segments.get(s);
+            if (!seg.mayContain(hash)) {
+                continue;
+            }
+            for (long i = seg.lowerBound(hash); i < seg.count
+                    && seg.key(i) == hash && n < limit; i ++) {
+                if (!seen.add(seg.hit(i))) {
+                    continue;
+                }
+                if (n == found.length) {
+                    found = Arrays.copyOf(found, Math.min(limit, n * 2));
+                }
+                found[n ++] = seg.hit(i);
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Writes the hits in memory to a new segment, merging segments if there
+     * are too many.
+     *
+     * @throws IOException if a segment cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (memSize == 0) {
+            return;
+        }
+        sort(memKeys, memHits, 0, memSize - 1);
+        int number = nextNumber ++;
+        segments.add(write(number, number, memSize, new Source() {
+
+            int i = 0;
+
+            @Override
+            public boolean next(long[] entry) {
+                if (i == memSize) {
+                    return false;
+                }
+                entry[0] = memKeys[i];
+                entry[1] = memHits[i ++];
+                return true;
+            }
+        }));
+        this.memSize = 0;
+        if (segments.size() > MAX_SEGMENTS) {
+            merge();
+        }
+    }
+
+    /**
+     * Merges the run of neighbouring segments with the fewest hits into one,
+     * leaving half the largest number of segments. If no such run fits in
+     * {@link #MAX_MERGED} hits, the longest shorter run that fits is merged,
+     * so there are no more than the largest number of segments unless no two
+     * neighbours fit together. Only neighbours are merged, so the segment
+     * numbers a merged segment covers are always the segments it replaced.
+     */
+    private void merge() throws IOException {
+
+        // Pick the smallest run that fits in one segment
+        int run = segments.size() - MAX_SEGMENTS / 2 + 1, best = -1;
+        long total = Long.MAX_VALUE;
+        for (; run >= 2 && best < 0; run --) {
+            for (int i = 0; i + run <= segments.size(); i ++) {
+                long sum = 0;
+                for (int k = i; k < i + run; k ++) {
+                    sum += segments.get(k).count;
+                }
+                if (sum <= MAX_MERGED && sum < total) {
+                    total = sum;
+                    best = i;
+                }
+            }
+        }
+        if (best < 0) {
+            return;
+        }
+        run ++;
+        List<Segment> picked = new ArrayList<>(
+                segments.subList(best, best + run));
+
+        // Merge them by hash
+        int first = Integer.MAX_VALUE, last = 0;
+        for (Segment s : picked) {
+            first = Math.min(first, s.first);
+            last = Math.max(last, s.last);
+        }
+        final long[] next = new long[picked.size()];
+        Segment merged = write(first, last, total, entry -> {
+            int min = -1;
+            for (int k = 0; k < next.length; k ++) {
+                Segment s = picked.get(k);
+                if (next[k] < s.count && (min < 0 || Long.compareUnsigned(
+                        s.key(next[k]), picked.get(min).key(next[min]))
+                        < 0)) {
+                    min = k;
+                }
+            }
+            if (min < 0) {
+                return false;
+            }
+            Segment s = picked.get(min);
+            entry[0] = s.key(next[min]);
+            entry[1] = s.hit(next[min] ++);
+            return true;
+        });
+
+        // Replace them
+        segments.removeAll(picked);
+        segments.add(merged);
+        segments.sort(Comparator.comparingInt(s -> s.first));
+        for (Segment s : picked) {
+            s.close();
+            Files.deleteIfExists(s.file);
+        }
+    }
+
+    /**
+     * Writes a segment from hits sorted by hash.
+     */
+    private Segment write(int first, int last, long count, Source source)
+            throws IOException {
+        int words = (int) Math.max(1, (count * BLOOM_BITS + 63) / 64);
+        long[] bloom = new long[words];
+        Path file = dir.resolve(String.format("%s%06d-%06d%s", PREFIX, first,
+                last, SUFFIX));
+        Path temp = dir.resolve(file.getFileName() + ".tmp");
+        try (FileChannel c = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // Write the hits after room for the header and filter
+            long start = HEADER_SIZE + 8L * words;
+            ByteBuffer b = ByteBuffer.allocate(1 << 16);
+            long[] entry = new long[2];
+            long position = start, written = 0;
+            while (source.next(entry)) {
+                if (!b.hasRemaining()) {
+                    position += writeFully(c, b, position);
+                }
+                b.putLong(entry[0]).putLong(entry[1]);
+                addToBloom(bloom, entry[0]);
+                written ++;
+            }
+            writeFully(c, b, position);
+
+            // Write the header and filter
+            ByteBuffer header = ByteBuffer.allocate((int) start);
+            header.putInt(MAGIC).putInt(VERSION).putLong(written)
+                    .putInt(words).putInt(BLOOM_HASHES).putInt(first)
+                    .putInt(last);
+            header.position(HEADER_SIZE);
+            for (long w : bloom) {
+                header.putLong(w);
+            }
+            writeFully(c, header, 0);
+            c.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return Segment.open(file);
+    }
+
+    private static long writeFully(FileChannel c, ByteBuffer b, long position)
+            throws IOException {
+        b.flip();
+        long n = 0;
+        while (b.hasRemaining()) {
+            n += c.write(b, position + n);
+        }
+        b.clear();
+        return n;
+    }
+
+    private static void addToBloom(long[] bloom, long hash) {
+        long h1 = mix(hash), h2 = (h1 >>> 32) | 1;
+        long bits = 64L * bloom.length;
+        for (int k = 0; k < BLOOM_HASHES; k ++) {
+            long bit = Long.remainderUnsigned(h1 + k * h2, bits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Sorts the hashes (as unsigned numbers) and their hits together.
+     */
+    private static void sort(long[] keys, long[] hits, int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (Long.compareUnsigned(keys[i], pivot) < 0) {
+                    i ++;
+                }
+                while (Long.compareUnsigned(keys[j], pivot) > 0) {
+                    j --;
+                }
+                if (i <= j) {
+                    swap(keys, hits, i ++, j --);
+                }
+            }
+
+            // Recurse into the smaller part
+            if (j - lo < hi - i) {
+                sort(keys, hits, lo, j);
+                lo = i;
+            } else {
+                sort(keys, hits, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i ++) {
+            for (int j = i; j > lo
+                    && Long.compareUnsigned(keys[j - 1], keys[j]) > 0; j --) {
+                swap(keys, hits, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, long[] hits, int i, int j) {
+        long k = keys[i], h = hits[i];
+        keys[i] = keys[j];
+        hits[i] = hits[j];
+        keys[j] = k;
+        hits[j] = h;
+    }
+
+    /**
+     * Packs a hit into a long: the game ID in the high 48 bits and the ply in
+     * the low 16 bits.
+     *
+     * @param gameId	the ID of the game.
+     * @param ply		the ply of the position in the game.
+     * @return the packed hit.
+     */
+    public static long hit(long gameId, int ply) {
+        return (gameId << 16) | (ply & 0xFFFF);
+    }
+
+    public static long gameId(long hit) {
+        return hit >>> 16;
+    }
+
+    public static int ply(long hit) {
+        return (int) (hit & 0xFFFF);
+    }
+
+    /**
+     * Removes every hit, deleting the segment files, so the index can be
+     * built again.
+     *
+     * @throws IOException if a segment file cannot be deleted.
+     */
+    public synchronized void clear() throws IOException {
+        this.memSize = 0;
+        for (Segment s : segments) {
+            s.close();
+            Files.deleteIfExists(s.file);
+        }
+        segments.clear();
+    }
+
+    /**
+     * Gets the number of hits in the index.
+     */
+    public synchronized long size() {
+        long n = memSize;
+        for (Segment s : segments) {
+            n += s.count;
+        }
+        return n;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes the hits in memory and closes the index.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Segment s : segments) {
+            s.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * Gives the hits to write to a segment, in order.
+     */
+    private interface Source {
+
+        /**
+         * Gets the next hash and hit.
+         *
+         * @param entry	where to put the hash and hit.
+         * @return false if there are no more.
+         */
+        boolean next(long[] entry);
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static class Segment {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final long count;
+
+        private final int first, last;
+
+        private final long[] bloom;
+
+        /** The hits of the segment, two longs each. */
+        private final LongBuffer entries;
+
+        private Segment(Path file, FileChannel channel, long count, int first,
+                        int last, long[] bloom, LongBuffer entries) {
+            this.file = file;
+            this.channel = channel;
+            this.count = count;
+            this.first = first;
+            this.last = last;
+            this.bloom = bloom;
+            this.entries = entries;
+        }
+
+        /**
+         * Opens a segment file.
+         *
+         * @return the segment, or null if the file is not a whole segment.
+         */
+        private static Segment open(Path file) throws IOException {
+            FileChannel c = FileChannel.open(file, StandardOpenOption.READ);
+            long size = c.size();
+            if (size < HEADER_SIZE) {
+                c.close();
+                return null;
+            }
+            MappedByteBuffer map = c.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size);
+            map.order(ByteOrder.BIG_ENDIAN);
+            long count = map.getLong(8);
+            int words = map.getInt(16);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || map.getInt(20) != BLOOM_HASHES || words <= 0
+                    || size != HEADER_SIZE + 8L * words + 16 * count) {
+                c.close();
+                return null;
+            }
+            long[] bloom = new long[words];
+            map.position(HEADER_SIZE);
+            map.asLongBuffer().get(bloom);
+            map.position(HEADER_SIZE + 8 * words);
+            return new Segment(file, c, count, map.getInt(24), map.getInt(28),
+                    bloom, map.asLongBuffer());
+        }
+
+        private boolean mayContain(long hash) {
+            long h1 = mix(hash), h2 = (h1 >>> 32) | 1;
+            long bits = 64L * bloom.length;
+            for (int k = 0; k < BLOOM_HASHES; k ++) {
+                long bit = Long.remainderUnsigned(h1 + k * h2, bits);
+                if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long key(long i) {
+            return entries.get((int) (2 * i));
+        }
+
+        private long hit(long i) {
+            return entries.get((int) (2 * i + 1));
+        }
+
+        /**
+         * Finds the first hit with a hash that is not less than a hash.
+         */
+        private long lowerBound(long hash) {
+            long lo = 0, hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (Long.compareUnsigned(key(mid), hash) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Builds or queries an index from the command line:
+     * {@code PositionIndex <index dir> -build <store dir>} indexes the
+     * finished games of a store in place of what the index held, and {@code PositionIndex <index dir> <FEN>}
+     * lists the games that reached a position (e.g. {@code B:W21-32:B1-12}).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PositionIndex <index dir>"
+                    + " (-build <store dir> | <FEN>)");
+            return;
+        }
+        try (PositionIndex index = open(Paths.get(args[0]))) {
+            if (args[1].equals("-build") && args.length >= 3) {
+                long start = System.currentTimeMillis();
+                long[] games = new long[1];
+                index.clear();
+                try (GameStore store = GameStore.open(Paths.get(args[2]))) {
+                    store.forEachGame(r -> {
+                        if (r.getStatus() == GameRecord.IN_PROGRESS) {
+                            return;
+                        }
+                        try {
+                            index.add(r);
+                            games[0] ++;
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    });
+                }
+                index.flush();
+                System.out.println("Indexed " + games[0] + " games ("
+                        + index.size() + " positions) in "
+                        + (System.currentTimeMillis() - start) + " ms");
+                return;
+            }
+            Gra game = PdnReader.parseFen(args[1]);
+            if (game == null) {
+                System.err.println("Invalid FEN " + args[1]);
+                return;
+            }
+            long start = System.nanoTime();
+            long[] hits = index.find(game, 1000);
+            long time = System.nanoTime() - start;
+            for (long h : hits) {
+                System.out.println("game " + gameId(h) + " ply " + ply(h));
+            }
+            System.out.println(hits.length + " games in " + time / 1000
+                    + " us");
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package Baza;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * The memory-mapped index of a {@link GameStore}. It is two hash tables with
+ * open addressing in one file: the games by ID, each pointing to its latest
+ * record in the log, and the players by a hash of their name, each pointing
+ * to the newest of their games. The games of a player are linked from game
+ * to game, newest first, so no lists have to be stored.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: int magic,
+ * int version, int game capacity, int player capacity, int games, int
+ * players, int segment and int offset of the end of the log covered by the
+ * index, and the long largest game ID. A game slot is a long ID (0 if
+ * empty), int segment, int offset and the int links to the previous games
+ * of its black and white players. A player slot is a long name hash (0 if
+ * empty), int link to the newest game and int game count. A link is the
+ * game slot plus one, shifted left by one, with the low bit set if the
+ * chain goes on through the white link of that slot.
+ */
+class StoreIndex {
+
+    /** The magic number at the start of the file ("WIDX"). */
+    static final int MAGIC = 0x57494458;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    private static final int GAME_SLOT = 24, PLAYER_SLOT = 16;
+
+    /** The initial number of game slots. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final Path file;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer map;
+
+    private int capacity, playerCapacity;
+
+    private StoreIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens an index file, creating an empty one if it is missing or is not
+     * a valid index.
+     *
+     * @param file	the index file.
+     * @return the open index.
+     * @throws IOException if the file cannot be opened.
+     */
+    static StoreIndex open(Path file) throws IOException {
+        StoreIndex index = new StoreIndex(file);
+        if (!index.load()) {
+            index.create(file, INITIAL_CAPACITY);
+        }
+        return index;
+    }
+
+    private boolean load() throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) {
+            return false;
+        }
+        map(file);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                || Files.size(file) != size(map.getInt(8), map.getInt(12))) {
+            close();
+            return false;
+        }
+        this.capacity = map.getInt(8);
+        this.playerCapacity = map.getInt(12);
+        return true;
+    }
+
+    private void create(Path target, int capacity) throws IOException {
+        close();
+        Files.deleteIfExists(target);
+        this.capacity = capacity;
+        this.playerCapacity = capacity / 4;
+        try (FileChannel c = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            c.truncate(0);
+            c.position(size(capacity, playerCapacity) - 1);
+            c.write(ByteBuffer.wrap(new byte[1]));
+        }
+        map(target);
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, capacity);
+        map.putInt(12, playerCapacity);
+    }
+
+    private void map(Path target) throws IOException {
+        this.channel = FileChannel.open(target, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                channel.size());
+    }
+
+    private static long size(int capacity, int playerCapacity) {
+        return HEADER_SIZE + (long) capacity * GAME_SLOT
+                + (long) playerCapacity * PLAYER_SLOT;
+    }
+
+    /**
+     * Gets the number of games in the index.
+     */
+    int getGames() {
+        return map.getInt(16);
+    }
+
+    /**
+     * Gets the segment of the end of the log covered by the index.
+     */
+    int getSegment() {
+        return map.getInt(24);
+    }
+
+    /**
+     * Gets the offset in its segment of the end of the log covered by the
+     * index.
+     */
+    int getOffset() {
+        return map.getInt(28);
+    }
+
+    /**
+     * Sets the end of the log covered by the index.
+     */
+    void setCovered(int segment, int offset) {
+        map.putInt(24, segment);
+        map.putInt(28, offset);
+    }
+
+    long getMaxId() {
+        return map.getLong(32);
+    }
+
+    /**
+     * Points a game to its latest record, adding it to the index and to the
+     * games of its players if it is new.
+     *
+     * @param id		the ID of the game (not 0).
+     * @param black		the name of the black player.
+     * @param white		the name of the white player.
+     * @param segment	the segment of the record.
+     * @param offset	the offset of the record in its segment.
+     * @return false if the index is full and must be grown first.
+     */
+    boolean put(long id, String black, String white, int segment,
+                int offset) {
+        int slot = findGame(id);
+        int base = gameBase(slot);
+        if (map.getLong(base) == 0) {
+
+            // Grow before the table gets too full
+            if (getGames() + 1 > capacity / 4 * 3
+                    || map.getInt(20) + 2 > playerCapacity / 4 * 3) {
+                return false;
+            }
+            map.putLong(base, id);
+            map.putInt(16, getGames() + 1);
+            if (id > getMaxId()) {
+                map.putLong(32, id);
+            }
+
+            // Link the game to its players
+            long blackHash = hash(black), whiteHash = hash(white);
+            if (blackHash != 0) {
+                map.putInt(base + 16, link(blackHash, slot, 0));
+            }
+            if (whiteHash != 0 && whiteHash != blackHash) {
+                map.putInt(base + 20, link(whiteHash, slot, 1));
+            }
+        }
+        map.putInt(base + 8, segment);
+        map.putInt(base + 12, offset);
+        return true;
+    }
+
+    /**
+     * Makes a game slot the newest game of a player.
+     *
+     * @return the previous newest link of the player.
+     */
+    private int link(long hash, int slot, int colour) {
+        int base = playerBase(findPlayer(hash));
+        if (map.getLong(base) == 0) {
+            map.putLong(base, hash);
+            map.putInt(20, map.getInt(20) + 1);
+        }
+        int previous = map.getInt(base + 8);
+        map.putInt(base + 8, ((slot + 1) << 1) | colour);
+        map.putInt(base + 12, map.getInt(base + 12) + 1);
+        return previous;
+    }
+
+    /**
+     * Gets where the latest record of a game is.
+     *
+     * @param id	the ID of the game.
+     * @return the segment in the high int and offset in the low int, or -1
+     * if the game is not in the index.
+     */
+    long get(long id) {
+        int base = gameBase(findGame(id));
+        if (map.getLong(base) == 0) {
+            return -1;
+        }
+        return ((long) map.getInt(base + 8) << 32)
+                | (map.getInt(base + 12) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the number of games of a player.
+     */
+    int count(String player) {
+        long hash = hash(player);
+        int base = playerBase(findPlayer(hash));
+        return (hash == 0 || map.getLong(base) == 0)? 0 : map.getInt(base + 12);
+    }
+
+    /**
+     * Lists the games of a player, newest first.
+     *
+     * @param player	the name of the player.
+     * @param visitor	called with the ID of each game.
+     */
+    void forEach(String player, LongConsumer visitor) {
+        long hash = hash(player);
+        if (hash == 0) {
+            return;
+        }
+        int base = playerBase(findPlayer(hash));
+        if (map.getLong(base) == 0) {
+            return;
+        }
+        int link = map.getInt(base + 8);
+        while (link != 0) {
+            int game = gameBase((link >>> 1) - 1);
+            visitor.accept(map.getLong(game));
+            link = map.getInt(game + ((link & 1) == 0? 16 : 20));
+        }
+    }
+
+    private int findGame(long id) {
+        int mask = capacity - 1;
+        int i = (int) mix(id) & mask;
+        long key;
+        while ((key = map.getLong(gameBase(i))) != 0 && key != id) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private int findPlayer(long hash) {
+        int mask = playerCapacity - 1;
+        int i = (int) mix(hash) & mask;
+        long key;
+        while ((key = map.getLong(playerBase(i))) != 0 && key != hash) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static int gameBase(int slot) {
+        return HEADER_SIZE + slot * GAME_SLOT;
+    }
+
+    private int playerBase(int slot) {
+        return HEADER_SIZE + capacity * GAME_SLOT + slot * PLAYER_SLOT;
+    }
+
+    /**
+     * Hashes a player name with 64-bit FNV-1a.
+     *
+     * @return the hash, or 0 for no name.
+     */
+    static long hash(String name) {
+        if (name == null || name.isEmpty()) {
+            return 0;
+        }
+        long h = 0xCBF29CE484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return (h == 0)? 1 : h;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Starts a new, empty index with twice the capacity, to be filled again
+     * from the log. The old file is kept until the new one replaces it.
+     *
+     * @throws IOException if the new index cannot be made.
+     */
+    void grow() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".new");
+        int next = capacity * 2;
+        close();
+        create(temp, next);
+        close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (!load()) {
+            throw new IOException("Cannot load the grown index " + file);
+        }
+    }
+
+    /**
+     * Writes the changes of the index to the disk.
+     */
+    void force() {
+        map.force();
+    }
+
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            this.channel = null;
+            this.map = null;
+        }
+    }
+}
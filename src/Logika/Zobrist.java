@@ -0,0 +1,97 @@
+package Logika;
+
+import java.util.SplittableRandom;
+
+import Model.Plansza;
+
+public class Zobrist {
+
+    /** The seed for the key table. It is fixed so that hashes stored on disk
+     * (e.g. in the opening book) stay valid between runs. */
+    private static final long SEED = 0x5761726361627921L;
+
+    /** The keys for a black checker on each black tile. */
+    private static final long[] BLACK_CHECKER = new long[32];
+
+    /** The keys for a white checker on each black tile. */
+    private static final long[] WHITE_CHECKER = new long[32];
+
+    /** The keys for a black king on each black tile. */
+    private static final long[] BLACK_KING = new long[32];
+
+    /** The keys for a white king on each black tile. */
+    private static final long[] WHITE_KING = new long[32];
+
+    /** The key that is mixed in when it is player 1's (black's) turn. */
+    public static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom r = new SplittableRandom(SEED);
+        for (int i = 0; i < 32; i ++) {
+            BLACK_CHECKER[i] = r.nextLong();
+            WHITE_CHECKER[i] = r.nextLong();
+            BLACK_KING[i] = r.nextLong();
+            WHITE_KING[i] = r.nextLong();
+        }
+        BLACK_TO_MOVE = r.nextLong();
+    }
+
+    /**
+     * Gets the key for a checker ID on the specified black tile.
+     *
+     * @param id	the ID of the checker (e.g. {@link Plansza#BLACK_KING}).
+     * @param index	the index of the black tile (from 0 to 31 inclusive).
+     * @return the key, or 0 if the tile is empty or the arguments are invalid.
+     */
+    public static long key(int id, int index) {
+        if (!Plansza.isValidIndex(index)) {
+            return 0;
+        }
+        switch (id) {
+            case Plansza.BLACK_CHECKER: return BLACK_CHECKER[index];
+            case Plansza.WHITE_CHECKER: return WHITE_CHECKER[index];
+            case Plansza.BLACK_KING: return BLACK_KING[index];
+            case Plansza.WHITE_KING: return WHITE_KING[index];
+            default: return 0;
+        }
+    }
+
+    /**
+     * Computes the hash of a position given as bit masks.
+     *
+     * @param black			the mask of black checkers and kings.
+     * @param white			the mask of white checkers and kings.
+     * @param kings			the mask of kings of both colours.
+     * @param blackToMove	the flag indicating if it is player 1's turn.
+     * @return the Zobrist hash of the position.
+     */
+    public static long hash(int black, int white, int kings,
+                            boolean blackToMove) {
+        long h = blackToMove? BLACK_TO_MOVE : 0;
+        for (int m = black & ~kings; m != 0; m &= m - 1) {
+            h ^= BLACK_CHECKER[Integer.numberOfTrailingZeros(m)];
+        }
+        for (int m = white & ~kings; m != 0; m &= m - 1) {
+            h ^= WHITE_CHECKER[Integer.numberOfTrailingZeros(m)];
+        }
+        for (int m = black & kings; m != 0; m &= m - 1) {
+            h ^= BLACK_KING[Integer.numberOfTrailingZeros(m)];
+        }
+        for (int m = white & kings; m != 0; m &= m - 1) {
+            h ^= WHITE_KING[Integer.numberOfTrailingZeros(m)];
+        }
+        return h;
+    }
+
+    /**
+     * Computes the hash of a board with the specified player to move.
+     *
+     * @param plansza		the board to hash.
+     * @param blackToMove	the flag indicating if it is player 1's turn.
+     * @return the Zobrist hash of the position.
+     */
+    public static long hash(Plansza plansza, boolean blackToMove) {
+        return plansza == null? 0 : hash(plansza.getBlackMask(),
+                plansza.getWhiteMask(), plansza.getKingMask(), blackToMove);
+    }
+}
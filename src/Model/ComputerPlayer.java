@@ -0,0 +1,366 @@
+package Model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+import Silnik.EndgameTablebase;
+import Silnik.MoveGenerator;
+import Silnik.OpeningBook;
+import Silnik.PackedMove;
+import Silnik.Position;
+import Silnik.Search;
+import Silnik.SearchInfoRing;
+import Silnik.TimeManager;
+
+public class ComputerPlayer extends Gracz {
+
+    /** The system property with the path of the opening book file. */
+    public static final String BOOK_PROPERTY = "warcaby.book";
+
+    /** The opening book file used if the property is not set. */
+    public static final String DEFAULT_BOOK = "warcaby.book";
+
+    /** The system property with the endgame tablebase directory. */
+    public static final String TABLEBASE_PROPERTY = "warcaby.tablebase";
+
+    /** The tablebase directory used if the property is not set. */
+    public static final String DEFAULT_TABLEBASE = "tablebase";
+
+    /** The default maximum search depth. */
+    public static final int DEFAULT_DEPTH = 20;
+
+    /** The default time the computer may think per move (in ms). */
+    public static final long DEFAULT_TIME = 500;
+
+    /** The opening book shared by all computer players (may be null). */
+    private static OpeningBook sharedBook;
+
+    /** The flag indicating if loading the shared book was attempted. */
+    private static boolean sharedBookLoaded;
+
+    /** The endgame tablebase shared by all computer players (may be null). */
+    private static EndgameTablebase sharedTablebase;
+
+    /** The flag indicating if loading the shared tablebase was attempted. */
+    private static boolean sharedTablebaseLoaded;
+
+    /** The ring the searches of all computer players publish their
+     * progress to. */
+    private static final SearchInfoRing INFO_RING = new SearchInfoRing();
+
+    /** The search used to find moves outside of the book. */
+    private final Search search;
+
+    /** The opening book to use, or null for none. */
+    private OpeningBook book;
+
+    /** The maximum search depth. */
+    private int depth;
+
+    /** The time the computer may think per move (in ms), used when there is
+     * no game clock. */
+    private long time;
+
+    /** The time left on the computer's game clock (in ms), or 0 for none. */
+    private long clock;
+
+    /** The time added to the game clock after each move (in ms). */
+    private long increment;
+
+    /** The source of randomness for picking book moves. */
+    private final SplittableRandom random = new SplittableRandom();
+
+    /** The flag indicating if the computer thinks on the opponent's time. */
+    private boolean ponder = true;
+
+    /** The flag indicating if the opponent is a person, as thinking on a
+     * computer opponent's time would take the CPU it searches with. */
+    private boolean opponentIsPerson;
+
+    /** The search running on the opponent's time, or null if none is. */
+    private PonderThread ponderThread;
+
+    /** The position expected after the opponent's reply, which the search
+     * running on the opponent's time is looking at. */
+    private Position ponderPosition;
+
+    /** The time budget of the search on the opponent's time, put in force
+     * if the opponent plays the expected reply. */
+    private TimeManager ponderTime;
+
+    public ComputerPlayer() {
+        this(getSharedBook(), DEFAULT_DEPTH, DEFAULT_TIME);
+    }
+
+    public ComputerPlayer(OpeningBook book, int depth, long time) {
+        this.search = new Search();
+        this.search.setTablebase(getSharedTablebase());
+        this.search.setInfoRing(INFO_RING);
+        this.book = book;
+        this.depth = depth;
+        this.time = time;
+    }
+
+    @Override
+    public boolean isHuman() {
+        return false;
+    }
+
+    /**
+     * Takes a whole turn for the current player. The move is taken from the
+     * opening book if the position is in it, otherwise it is searched for.
+     */
+    @Override
+    public void updateGame(Gra game) {
+
+        // Nothing to do (but stop thinking if the opponent ended the game)
+        if (game == null || game.isGameOver()) {
+            stopThinking();
+            return;
+        }
+
+        // Budget the time for this move
+        TimeManager manager = clock > 0? TimeManager.forClock(
+                clock, increment, TimeManager.DEFAULT_MOVES_TO_GO)
+                : TimeManager.forMove(time);
+
+        // Use the search on the opponent's time if the reply was predicted,
+        // putting its time budget (which counts the time it has had) in force
+        Position pos = Position.from(game);
+        search.setDrawMoves(game.getDrawMoves());
+        long move = PackedMove.NONE;
+        if (ponderThread != null) {
+            if (pos.getForcedFrom() < 0
+                    && pos.getHash() == ponderPosition.getHash()) {
+                ponderTime.ponderHit();
+                ponderThread.finish();
+                move = search.getBestMove();
+            } else {
+                ponderThread.halt();
+            }
+            this.ponderThread = null;
+            this.ponderTime = null;
+        }
+
+        // Find the move (book moves are only for positions between turns)
+        if (move == PackedMove.NONE && book != null
+                && pos.getForcedFrom() < 0) {
+            move = book.lookup(pos, random);
+        }
+        if (move == PackedMove.NONE) {
+            move = search.search(pos, depth, manager);
+        }
+        if (move == PackedMove.NONE) {
+            return;
+        }
+
+        playMove(game, pos, move);
+        if (clock > 0) {
+            this.clock = Math.max(1, clock - manager.elapsed()) + increment;
+        }
+        if (ponder && opponentIsPerson && !game.isGameOver()) {
+            startPondering(game, pos, move);
+        }
+    }
+
+    /**
+     * Starts searching the position after the opponent's expected reply, taken
+     * from the principal variation of the last search. On the next turn the
+     * search is kept if the opponent played that reply and stopped otherwise;
+     * either way the transposition table is warm.
+     *
+     * @param game	the game after the move was played.
+     * @param pos	the position the move was played from.
+     * @param move	the move that was played.
+     */
+    private void startPondering(Gra game, Position pos, long move) {
+
+        // Only predict a reply after a searched move that was fully played
+        long[] pv = search.getPrincipalVariation(pos, 2);
+        if (pv.length < 2 || pv[0] != move) {
+            return;
+        }
+        Position expected = pos.copy();
+        expected.make(move);
+        if (expected.getHash() != Position.from(game).getHash()) {
+            return;
+        }
+        expected.make(pv[1]);
+
+        // Search without a limit until the opponent moves. The search is
+        // given the time budget of the next move up front, so the limits
+        // reach it even if the reply comes before it has started
+        final Position root = expected.copy();
+        final TimeManager budget = (clock > 0? TimeManager.forClock(
+                clock, increment, TimeManager.DEFAULT_MOVES_TO_GO)
+                : TimeManager.forMove(time)).ponder();
+        this.ponderPosition = expected;
+        this.ponderTime = budget;
+        this.ponderThread = new PonderThread(
+                () -> search.search(root, depth, budget), search::stop);
+        this.ponderThread.start();
+    }
+
+    /**
+     * Stops the search on the opponent's time. This must be called on the
+     * thread the game is played on.
+     */
+    @Override
+    public void stopThinking() {
+        if (ponderThread != null) {
+            ponderThread.halt();
+            this.ponderThread = null;
+            this.ponderTime = null;
+        }
+    }
+
+    /**
+     * Stops the search for the move, which then plays the best move found so
+     * far. This may be called from any thread.
+     */
+    @Override
+    public void stopMove() {
+        search.stop();
+    }
+
+    /**
+     * Thinks on the opponent's time only if the opponent is a person.
+     */
+    @Override
+    public void setOpponent(Gracz opponent) {
+        this.opponentIsPerson = isPerson(opponent);
+        if (!opponentIsPerson) {
+            stopThinking();
+        }
+    }
+
+    /**
+     * Plays a whole-turn move on a game one step at a time.
+     *
+     * @param game	the game to update.
+     * @param pos	the position of the game before the move.
+     * @param move	the packed move to play.
+     */
+    static void playMove(Gra game, Position pos, long move) {
+        int[] path = MoveGenerator.path(pos, move);
+        for (int i = 1; i < path.length; i ++) {
+            if (!game.move(path[i - 1], path[i])) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Gets the opening book from {@value #BOOK_PROPERTY} (or
+     * {@value #DEFAULT_BOOK}), loading it the first time.
+     *
+     * @return the shared book, or null if there is no book file.
+     */
+    public static synchronized OpeningBook getSharedBook() {
+        if (!sharedBookLoaded) {
+            sharedBookLoaded = true;
+            Path file = Paths.get(System.getProperty(
+                    BOOK_PROPERTY, DEFAULT_BOOK));
+            if (Files.isRegularFile(file)) {
+                try {
+                    sharedBook = OpeningBook.open(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return sharedBook;
+    }
+
+    /**
+     * Gets the endgame tablebase from {@value #TABLEBASE_PROPERTY} (or
+     * {@value #DEFAULT_TABLEBASE}), opening it the first time.
+     *
+     * @return the shared tablebase, or null if there are no tables.
+     */
+    public static synchronized EndgameTablebase getSharedTablebase() {
+        if (!sharedTablebaseLoaded) {
+            sharedTablebaseLoaded = true;
+            Path dir = Paths.get(System.getProperty(
+                    TABLEBASE_PROPERTY, DEFAULT_TABLEBASE));
+            if (Files.isDirectory(dir)) {
+                try {
+                    EndgameTablebase tb = EndgameTablebase.open(dir);
+                    sharedTablebase = tb.getMaxPieces() > 0? tb : null;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return sharedTablebase;
+    }
+
+    /**
+     * Gets the ring the searches of all computer players publish the
+     * information of each iteration to, including searches on the
+     * opponent's time.
+     *
+     * @return the shared ring.
+     */
+    public static SearchInfoRing getInfoRing() {
+        return INFO_RING;
+    }
+
+    public OpeningBook getBook() {
+        return book;
+    }
+
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    /**
+     * Puts the computer on a game clock. Its moves are then given a share of
+     * the time left instead of the fixed time per move.
+     *
+     * @param clock		the time on the clock (in ms), or 0 for no clock.
+     * @param increment	the time added after each move (in ms).
+     */
+    public void setClock(long clock, long increment) {
+        this.clock = Math.max(0, clock);
+        this.increment = Math.max(0, increment);
+    }
+
+    public long getIncrement() {
+        return increment;
+    }
+
+    public boolean isPonder() {
+        return ponder;
+    }
+
+    public void setPonder(boolean ponder) {
+        this.ponder = ponder;
+        if (!ponder) {
+            stopThinking();
+        }
+    }
+}
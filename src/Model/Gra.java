@@ -2,12 +2,22 @@ package Model;
 
 import Logika.GenerujRuch;
 import Logika.LogikaRuchu;
+import Logika.Zobrist;
 
 import java.awt.Point;
+import java.util.Arrays;
 import java.util.List;
 
 public class Gra {
 
+    /** The default number of moves by each player without a capture or a
+     * checker (man) move after which the game is a draw. */
+    public static final int DEFAULT_DRAW_MOVES = 40;
+
+    /** The number of times a position must occur for the game to be a
+     * draw. */
+    public static final int DRAW_REPETITIONS = 3;
+
     /** The current state of the checker board. */
     private Plansza plansza;
 
@@ -17,6 +27,17 @@ public class Gra {
     /** The index of the last skip, to allow for multiple skips in a turn. */
     private int skipIndex;
 
+    /** The steps played since the start position. */
+    private MoveHistory history = new MoveHistory();
+
+    /** The number of moves by each player without a capture or checker move
+     * that draws the game, or 0 for no limit. */
+    private int drawMoves = DEFAULT_DRAW_MOVES;
+
+    /** The number of changes made to the state, so a change worked out on
+     * a copy can be checked against the game before it is made. */
+    private long version;
+
     public Gra() {
         restart();
     }
@@ -29,6 +50,7 @@ public class Gra {
         this.plansza = (plansza == null)? new Plansza() : plansza;
         this.isP1Turn = isP1Turn;
         this.skipIndex = skipIndex;
+        resetHistory();
     }
 
     /**
@@ -42,6 +64,9 @@ public class Gra {
         g.plansza = plansza.copy();
         g.isP1Turn = isP1Turn;
         g.skipIndex = skipIndex;
+        g.history = history.copy();
+        g.drawMoves = drawMoves;
+        g.version = version;
         return g;
     }
 
@@ -52,6 +77,23 @@ public class Gra {
         this.plansza = new Plansza();
         this.isP1Turn = true;
         this.skipIndex = -1;
+        resetHistory();
+    }
+
+    /**
+     * Records a change to the state.
+     */
+    private void changed() {
+        this.version ++;
+    }
+
+    /**
+     * Clears the history and starts it from the current state.
+     */
+    private void resetHistory() {
+        history.reset(plansza, isP1Turn, skipIndex,
+                Zobrist.hash(plansza, isP1Turn));
+        changed();
     }
 
     /**
@@ -83,11 +125,15 @@ public class Gra {
         if (!LogikaRuchu.isValidMove(this, startIndex, endIndex)) {
             return false;
         }
+        MoveEvent event = new MoveEvent();
+        event.begin();
 
         // Make the move
         Point middle = Plansza.middle(startIndex, endIndex);
         int midIndex = Plansza.toIndex(middle);
-        this.plansza.set(endIndex, plansza.get(startIndex));
+        int moved = plansza.get(startIndex), captured = plansza.get(midIndex);
+        int previousSkip = skipIndex;
+        this.plansza.set(endIndex, moved);
         this.plansza.set(midIndex, Plansza.EMPTY);
         this.plansza.set(startIndex, Plansza.EMPTY);
 
@@ -117,9 +163,250 @@ public class Gra {
             this.skipIndex = -1;
         }
 
+        // Record the step
+        int now = plansza.get(endIndex);
+        if (captured == Plansza.INVALID) {
+            captured = Plansza.EMPTY;
+        }
+        long hash = history.getHash() ^ Zobrist.key(moved, startIndex)
+                ^ Zobrist.key(now, endIndex) ^ Zobrist.key(captured, midIndex)
+                ^ (switchTurn? Zobrist.BLACK_TO_MOVE : 0);
+        history.push(MoveHistory.pack(startIndex, endIndex, switchTurn,
+                now != moved, captured, previousSkip,
+                Plansza.isKingChecker(moved)), hash, plansza, isP1Turn,
+                skipIndex);
+        changed();
+
+        // Report the step to a flight recording
+        if (event.shouldCommit()) {
+            event.from = startIndex + 1;
+            event.to = endIndex + 1;
+            event.capture = midValid;
+            event.promotion = now != moved;
+            event.endsTurn = switchTurn;
+            event.commit();
+        }
+
+        return true;
+    }
+
+    /**
+     * Takes back the last step played.
+     *
+     * @return true if a step was taken back.
+     */
+    public boolean undo() {
+        int step = history.back();
+        if (step == 0) {
+            return false;
+        }
+        int start = MoveHistory.start(step), end = MoveHistory.end(step);
+        int id = plansza.get(end);
+        if (MoveHistory.promoted(step)) {
+            id = (id == Plansza.BLACK_KING)? Plansza.BLACK_CHECKER
+                    : Plansza.WHITE_CHECKER;
+        }
+        this.plansza.set(end, Plansza.EMPTY);
+        this.plansza.set(start, id);
+        int captured = MoveHistory.captured(step);
+        if (captured != Plansza.EMPTY) {
+            this.plansza.set(Plansza.toIndex(Plansza.middle(start, end)),
+                    captured);
+        }
+        if (MoveHistory.endsTurn(step)) {
+            this.isP1Turn = !isP1Turn;
+        }
+        this.skipIndex = MoveHistory.previousSkip(step);
+        changed();
+        return true;
+    }
+
+    /**
+     * Plays again the next step that was taken back.
+     *
+     * @return true if a step was played again.
+     */
+    public boolean redo() {
+        int step = history.forward();
+        if (step == 0) {
+            return false;
+        }
+        replay(step);
         return true;
     }
 
+    /**
+     * Takes back the last turn, including every skip of a multiple skip.
+     *
+     * @return true if a step was taken back.
+     */
+    public boolean undoTurn() {
+        if (!undo()) {
+            return false;
+        }
+        int ply;
+        while ((ply = history.getPly()) > 0
+                && !MoveHistory.endsTurn(history.getStep(ply - 1))) {
+            undo();
+        }
+        return true;
+    }
+
+    /**
+     * Plays again the next turn that was taken back.
+     *
+     * @return true if a step was played again.
+     */
+    public boolean redoTurn() {
+        boolean redone = false;
+        int step;
+        while ((step = history.forward()) != 0) {
+            replay(step);
+            redone = true;
+            if (MoveHistory.endsTurn(step)) {
+                break;
+            }
+        }
+        return redone;
+    }
+
+    /**
+     * Plays a recorded step without checking it.
+     */
+    private void replay(int step) {
+        int start = MoveHistory.start(step), end = MoveHistory.end(step);
+        int id = plansza.get(start);
+        if (MoveHistory.promoted(step)) {
+            id = (id == Plansza.BLACK_CHECKER)? Plansza.BLACK_KING
+                    : Plansza.WHITE_KING;
+        }
+        this.plansza.set(start, Plansza.EMPTY);
+        this.plansza.set(end, id);
+        if (MoveHistory.captured(step) != Plansza.EMPTY) {
+            this.plansza.set(Plansza.toIndex(Plansza.middle(start, end)),
+                    Plansza.EMPTY);
+        }
+        if (MoveHistory.endsTurn(step)) {
+            this.isP1Turn = !isP1Turn;
+            this.skipIndex = -1;
+        } else {
+            this.skipIndex = end;
+        }
+        changed();
+    }
+
+    /**
+     * Goes to a ply of the history, by undoing or redoing steps or, if it is
+     * far away, from the nearest stored position before it.
+     *
+     * @param ply	the ply to go to (from 0 to {@link #getHistorySize()}).
+     * @return true if the game is at the ply.
+     */
+    public boolean goToPly(int ply) {
+        if (ply < 0 || ply > history.size()) {
+            return false;
+        }
+        // Start from a stored position if the ply is far away
+        int distance = Math.abs(ply - history.getPly());
+        if (distance > MoveHistory.CHECKPOINT_INTERVAL) {
+            int state = history.seek(ply, plansza);
+            this.isP1Turn = MoveHistory.isP1Turn(state);
+            this.skipIndex = MoveHistory.skipIndex(state);
+            changed();
+        }
+
+        // Undo or redo the rest of the way
+        while (history.getPly() > ply) {
+            undo();
+        }
+        while (history.getPly() < ply) {
+            redo();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of steps played to reach the current position. A
+     * multiple skip is one step per skip.
+     *
+     * @return the current ply of the history.
+     */
+    public int getStepCount() {
+        return history.getPly();
+    }
+
+    /**
+     * Gets a step played since the start position.
+     *
+     * @param i	the number of the step (from 0).
+     * @return the packed step.
+     * @see {@link MoveHistory#pack(int, int, boolean, boolean, int, int,
+     * boolean)}
+     */
+    public int getStep(int i) {
+        if (i >= history.getPly()) {
+            throw new IndexOutOfBoundsException("Step " + i);
+        }
+        return history.getStep(i);
+    }
+
+    /**
+     * Gets the number of steps recorded, including those taken back that can
+     * be played again with {@link #redo()}.
+     */
+    public int getHistorySize() {
+        return history.size();
+    }
+
+    /**
+     * Gets the Zobrist hash of the current position.
+     *
+     * @return the hash, as by {@link Zobrist#hash(Plansza, boolean)}.
+     */
+    public long getHash() {
+        return history.getHash();
+    }
+
+    /**
+     * Gets the Zobrist hash of the position after a number of steps.
+     *
+     * @param step	the number of steps (from 0 to {@link #getStepCount()}).
+     * @return the hash of the position.
+     */
+    public long getHash(int step) {
+        if (step > history.getPly()) {
+            throw new IndexOutOfBoundsException("Step " + step);
+        }
+        return history.getHash(step);
+    }
+
+    /**
+     * Gets the number of steps since the last capture or checker move, as
+     * counted for the draw by {@link #setDrawMoves(int)}.
+     */
+    public int getQuietPlies() {
+        return history.getQuietPlies();
+    }
+
+    /**
+     * Gets the game state the recorded steps were played from: the initial
+     * state after {@link #restart()}, or the state that was last set.
+     *
+     * @return the start state, as by {@link #getGameState()}.
+     */
+    public String getStartState() {
+        return history.getStart().getGameState();
+    }
+
+    /**
+     * Gets the position the recorded steps were played from.
+     *
+     * @return a new game with the start position and no history.
+     */
+    public Gra getStart() {
+        return history.getStart();
+    }
+
     /**
      * Gets a copy of the current board state.
      *
@@ -131,12 +418,18 @@ public class Gra {
 
     /**
      * Determines if the game is over. The game is over if one or both players
-     * cannot make a single move during their turn.
+     * cannot make a single move during their turn, or if it is a draw.
      *
      * @return true if the game is over.
+     * @see {@link #isDraw()}
      */
     public boolean isGameOver() {
 
+        // The game may be drawn
+        if (isDraw()) {
+            return true;
+        }
+
         // Ensure there is at least one of each checker
         List<Point> black = plansza.find(Plansza.BLACK_CHECKER);
         black.addAll(plansza.find(Plansza.BLACK_KING));
@@ -163,18 +456,64 @@ public class Gra {
         return true;
     }
 
+    /**
+     * Determines if the game is a draw. It is if the current position has
+     * occurred {@link #DRAW_REPETITIONS} times, or if each player has made
+     * the set number of moves without a capture or a checker move. Both are
+     * kept up to date by the history as steps are played, so this is O(1).
+     *
+     * @return true if the game is drawn.
+     * @see {@link #setDrawMoves(int)}
+     */
+    public boolean isDraw() {
+        return history.getRepetitions() >= DRAW_REPETITIONS
+                || (drawMoves > 0 && history.getQuietPlies() >= 2 * drawMoves);
+    }
+
+    public int getDrawMoves() {
+        return drawMoves;
+    }
+
+    /**
+     * Sets the number of moves by each player without a capture or checker
+     * move after which the game is a draw.
+     *
+     * @param drawMoves	the number of moves, or 0 for no limit.
+     */
+    public void setDrawMoves(int drawMoves) {
+        this.drawMoves = Math.max(0, drawMoves);
+    }
+
     public boolean isP1Turn() {
         return isP1Turn;
     }
 
+    /**
+     * Sets whose turn it is. This changes the position, so the history is
+     * started again from it.
+     *
+     * @param isP1Turn	the flag indicating if it is player 1's turn.
+     */
     public void setP1Turn(boolean isP1Turn) {
         this.isP1Turn = isP1Turn;
+        this.skipIndex = -1;
+        resetHistory();
     }
 
     public int getSkipIndex() {
         return skipIndex;
     }
 
+    /**
+     * Gets the version of the game state. It goes up with every change, and
+     * a copy starts with the version of the game it was made from.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Gets the current game state as a string of data that can be parsed by
      * {@link #setGameState(String)}.
@@ -233,5 +572,108 @@ public class Gra {
                 this.skipIndex = -1;
             }
         }
+        resetHistory();
+    }
+
+    /**
+     * Plays the steps that lead from the current state to another, so they
+     * are recorded in the history like any other move. A peer sends its whole
+     * state after each step or turn, so the steps are found by trying the
+     * legal steps of the current turn. If none lead to the state, it is set
+     * instead, which starts a new history from it.
+     *
+     * @param state	the game state to reach.
+     * @return true if the state was reached by playing steps.
+     * @see {@link #findSteps(String)}
+     */
+    public boolean moveTo(String state) {
+        int[] steps = findSteps(state);
+        if (steps == null) {
+            setGameState(state);
+            return false;
+        }
+        play(steps);
+        return true;
+    }
+
+    /**
+     * Plays steps found by {@link #findSteps(String)}.
+     *
+     * @param steps	the start and end index of each step in turn.
+     * @return true if every step was legal.
+     */
+    public boolean play(int[] steps) {
+        for (int i = 0; i + 1 < steps.length; i += 2) {
+            if (!move(steps[i], steps[i + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the legal steps of the current turn that lead to a game state.
+     *
+     * @param state	the game state to reach.
+     * @return the start and end index of each step in turn (empty if the
+     * game is already in the state), or null if no steps lead to it.
+     */
+    public int[] findSteps(String state) {
+        Gra target = new Gra(state);
+        if (isSameState(target)) {
+            return new int[0];
+        }
+        int[] steps = new int[64];
+        int n = findSteps(copy(), target, steps, 0);
+        return (n < 0)? null : Arrays.copyOf(steps, n);
+    }
+
+    /**
+     * Tries each legal step on a game, going on with the turn after a skip
+     * that does not end it, until the target state is reached.
+     *
+     * @return the number of indices written to the steps, or -1.
+     */
+    private static int findSteps(Gra g, Gra target, int[] steps, int n) {
+        if (n + 2 > steps.length) {
+            return -1;
+        }
+        boolean turn = g.isP1Turn;
+        for (int i = 0; i < 32; i ++) {
+            int id = g.plansza.get(i);
+            if ((g.skipIndex >= 0 && i != g.skipIndex)
+                    || id == Plansza.EMPTY || id == Plansza.INVALID
+                    || (turn ^ Plansza.isBlackChecker(id))) {
+                continue;
+            }
+            List<Point> ends = GenerujRuch.getSkips(g.plansza, i);
+            ends.addAll(GenerujRuch.getMoves(g.plansza, i));
+            for (Point end : ends) {
+                int j = Plansza.toIndex(end);
+                if (!g.move(i, j)) {
+                    continue;
+                }
+                steps[n] = i;
+                steps[n + 1] = j;
+                int found = g.isSameState(target)? n + 2
+                        : (g.isP1Turn == turn)? findSteps(g, target, steps,
+                        n + 2) : -1;
+                g.undo();
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if another game has the same board, turn and skip index.
+     */
+    private boolean isSameState(Gra other) {
+        return isP1Turn == other.isP1Turn && skipIndex == other.skipIndex
+                && plansza.getBlackMask() == other.plansza.getBlackMask()
+                && plansza.getWhiteMask() == other.plansza.getWhiteMask()
+                && plansza.getKingMask() == other.plansza.getKingMask();
     }
 }
@@ -19,6 +19,53 @@ public abstract class Gracz {
      */
     public abstract void updateGame(Gra game);
 
+    /**
+     * Stops any work this player is doing in the background, such as thinking
+     * on the opponent's time. This is called when the player is replaced or
+     * the game is restarted; by default there is nothing to stop.
+     */
+    public void stopThinking() {
+    }
+
+    /**
+     * Asks for the move {@link #updateGame(Gra)} is working out on another
+     * thread to be made as soon as it can. It may be called from any thread,
+     * and may need repeating if the work had not started yet; by default
+     * there is nothing to cut short.
+     */
+    public void stopMove() {
+    }
+
+    /**
+     * Frees what this player holds, such as the threads of its search. This
+     * is called on the game logic thread once the player has been replaced;
+     * by default there is nothing to free.
+     */
+    public void close() {
+    }
+
+    /**
+     * Tells this player who it is playing against. This is called on the
+     * game logic thread whenever either player changes; by default it is
+     * not used.
+     *
+     * @param opponent	the other player.
+     */
+    public void setOpponent(Gracz opponent) {
+    }
+
+    /**
+     * Checks if a player takes its time over its moves, being a person at
+     * this board or across the network, so there is time to think on.
+     *
+     * @param player	the player.
+     * @return true if the player is a person.
+     */
+    static boolean isPerson(Gracz player) {
+        return player != null
+                && (player.isHuman() || player instanceof NetworkPlayer);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "[isHuman=" + isHuman() + "]";
@@ -0,0 +1,135 @@
+package Model;
+
+import Silnik.MctsSearch;
+import Silnik.PackedMove;
+import Silnik.Position;
+
+public class MctsPlayer extends Gracz {
+
+    /** The default time the computer may think per move (in ms). */
+    public static final long DEFAULT_TIME = 500;
+
+    /** The tree search, kept between moves so the tree can be reused. */
+    private final MctsSearch search;
+
+    /** The time the computer may think per move (in ms). */
+    private long time;
+
+    /** The flag indicating if the computer thinks on the opponent's time. */
+    private boolean ponder = true;
+
+    /** The flag indicating if the opponent is a person, as thinking on a
+     * computer opponent's time would take the CPU it searches with. */
+    private boolean opponentIsPerson;
+
+    /** The search running on the opponent's time, or null if none is. */
+    private PonderThread ponderThread;
+
+    public MctsPlayer() {
+        this(new MctsSearch(), DEFAULT_TIME);
+    }
+
+    public MctsPlayer(MctsSearch search, long time) {
+        this.search = search;
+        this.time = time;
+    }
+
+    @Override
+    public boolean isHuman() {
+        return false;
+    }
+
+    /**
+     * Takes a whole turn for the current player, using the most visited move
+     * of a Monte Carlo tree search.
+     */
+    @Override
+    public void updateGame(Gra game) {
+
+        // The tree grown on the opponent's time is reused by the search, and
+        // is not grown any further if the opponent ended the game
+        stopThinking();
+        if (game == null || game.isGameOver()) {
+            return;
+        }
+        Position pos = Position.from(game);
+        long move = search.search(pos, time);
+        if (move == PackedMove.NONE) {
+            return;
+        }
+        ComputerPlayer.playMove(game, pos, move);
+
+        // Keep growing the tree below every reply until the opponent moves
+        if (ponder && opponentIsPerson && !game.isGameOver()) {
+            final Position next = Position.from(game);
+            this.ponderThread = new PonderThread(
+                    () -> search.search(next, Long.MAX_VALUE / 2),
+                    search::stop);
+            this.ponderThread.start();
+        }
+    }
+
+    /**
+     * Stops growing the tree on the opponent's time. This must be called on
+     * the thread the game is played on.
+     */
+    @Override
+    public void stopThinking() {
+        if (ponderThread != null) {
+            ponderThread.halt();
+            this.ponderThread = null;
+        }
+    }
+
+    /**
+     * Stops the search for the move, which then plays the most visited move
+     * so far. This may be called from any thread.
+     */
+    @Override
+    public void stopMove() {
+        search.stop();
+    }
+
+    /**
+     * Thinks on the opponent's time only if the opponent is a person.
+     */
+    @Override
+    public void setOpponent(Gracz opponent) {
+        this.opponentIsPerson = isPerson(opponent);
+        if (!opponentIsPerson) {
+            stopThinking();
+        }
+    }
+
+    /**
+     * Stops the threads of the search, as the player is no longer used.
+     */
+    @Override
+    public void close() {
+        stopThinking();
+        search.close();
+    }
+
+    public MctsSearch getSearch() {
+        return search;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public boolean isPonder() {
+        return ponder;
+    }
+
+    public void setPonder(boolean ponder) {
+        this.ponder = ponder;
+        if (!ponder) {
+            stopThinking();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package Model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder event for a step played with
+ * {@link Gra#move(int, int)}. While the event is not enabled in a recording
+ * it costs a check of a flag.
+ */
+@Name("checkers.Move")
+@Label("Move")
+@Category({"Checkers", "Game"})
+@Description("A step played in a game")
+class MoveEvent extends jdk.jfr.Event {
+
+    /** The PDN square the step started on (from 1 to 32). */
+    @Label("From")
+    int from;
+
+    /** The PDN square the step ended on (from 1 to 32). */
+    @Label("To")
+    int to;
+
+    @Label("Capture")
+    boolean capture;
+
+    @Label("Promotion")
+    boolean promotion;
+
+    @Label("Ends Turn")
+    boolean endsTurn;
+}
@@ -0,0 +1,466 @@
+package Model;
+
+import java.util.Arrays;
+
+/**
+ * The history of a {@link Gra}: every step played since the start position,
+ * packed into an int, and the Zobrist hash of the position after each step.
+ * A cursor marks the current ply, so steps that were undone are kept until a
+ * different step is played and can be redone.
+ * <p>
+ * The game undoes and redoes steps in place from what is packed here (the
+ * captured checker, a promotion and the previous skip index), so no game
+ * states are stored for that. To jump to any ply, the position is also
+ * stored every {@link #CHECKPOINT_INTERVAL} plies; going to a ply restores
+ * the nearest checkpoint and replays at most that many steps.
+ * <p>
+ * For draws, each ply also keeps the number of plies since the last capture
+ * or checker (man) move and how often its position has occurred since then.
+ * Only positions after such a move can repeat, so the hashes since then are
+ * counted in a small hash table, which is cleared in O(1) by the next
+ * capture or checker move. This keeps the draw checks O(1) per step.
+ */
+public class MoveHistory {
+
+    /** The number of plies between stored positions. */
+    public static final int CHECKPOINT_INTERVAL = 32;
+
+    /** The bit set in a step if the turn ended with it. */
+    public static final int ENDS_TURN = 1 << 10;
+
+    /** The bit set in a step if the checker was made a king by it. */
+    public static final int PROMOTED = 1 << 11;
+
+    /** The bit set in a step if a king was moved. */
+    public static final int KING_MOVE = 1 << 21;
+
+    private static final int CAPTURED_SHIFT = 12, PREVIOUS_SKIP_SHIFT = 15;
+
+    /** The steps played, packed by {@link #pack}. */
+    private int[] steps = new int[64];
+
+    /** The hash of the position after each step. */
+    private long[] hashes = new long[64];
+
+    /** The number of plies since a capture or checker move after each step,
+     * in the low 16 bits, and how often the position after the step has
+     * occurred since then, in the high 16 bits. */
+    private int[] counters = new int[64];
+
+    /** The number of times each position since the last capture or checker
+     * move has occurred up to the current ply. */
+    private final RepetitionTable repetitions = new RepetitionTable();
+
+    /** The positions stored every {@link #CHECKPOINT_INTERVAL} plies, four
+     * ints each: the black, white and king masks, then the turn and skip
+     * index as by {@link #packState(boolean, int)}. The first one is the
+     * start position. */
+    private int[] checkpoints = new int[4 * 4];
+
+    /** The hash of the start position. */
+    private long startHash;
+
+    /** The current ply. */
+    private int ply;
+
+    /** The number of steps that can be redone up to. */
+    private int size;
+
+    /**
+     * Clears the history and starts it from a position.
+     *
+     * @param plansza	the start board.
+     * @param isP1Turn	the flag indicating if it is player 1's turn.
+     * @param skipIndex	the index of the checker that must skip, or -1.
+     * @param hash		the hash of the start position.
+     */
+    public void reset(Plansza plansza, boolean isP1Turn, int skipIndex,
+                      long hash) {
+        this.ply = 0;
+        this.size = 0;
+        this.startHash = hash;
+        setCheckpoint(0, plansza, isP1Turn, skipIndex);
+        repetitions.clear(1);
+        repetitions.add(hash);
+    }
+
+    /**
+     * Creates a copy of this history such that any modifications made to one
+     * are not made to the other.
+     *
+     * @return an exact copy of this history.
+     */
+    public MoveHistory copy() {
+        MoveHistory h = new MoveHistory();
+        h.steps = Arrays.copyOf(steps, steps.length);
+        h.hashes = Arrays.copyOf(hashes, hashes.length);
+        h.counters = Arrays.copyOf(counters, counters.length);
+        h.checkpoints = Arrays.copyOf(checkpoints, checkpoints.length);
+        h.startHash = startHash;
+        h.ply = ply;
+        h.size = size;
+        h.recount();
+        return h;
+    }
+
+    /**
+     * Records a step played at the current ply. Any steps that were undone
+     * are dropped, as the game now has a different continuation.
+     *
+     * @param step		the packed step.
+     * @param hash		the hash of the position after the step.
+     * @param plansza	the board after the step.
+     * @param isP1Turn	the turn after the step.
+     * @param skipIndex	the skip index after the step.
+     */
+    void push(int step, long hash, Plansza plansza, boolean isP1Turn,
+              int skipIndex) {
+        if (ply == steps.length) {
+            this.steps = Arrays.copyOf(steps, ply * 2);
+            this.hashes = Arrays.copyOf(hashes, ply * 2);
+            this.counters = Arrays.copyOf(counters, ply * 2);
+        }
+        this.steps[ply] = step;
+        this.hashes[ply] = hash;
+        this.counters[ply] = count(step, hash);
+        this.ply ++;
+        this.size = ply;
+        if (ply % CHECKPOINT_INTERVAL == 0) {
+            setCheckpoint(ply / CHECKPOINT_INTERVAL, plansza, isP1Turn,
+                    skipIndex);
+        }
+    }
+
+    /**
+     * Moves the cursor back one ply.
+     *
+     * @return the step to undo, or 0 if there is none.
+     */
+    int back() {
+        if (ply == 0) {
+            return 0;
+        }
+        int step = steps[-- ply];
+        if (isQuiet(step)) {
+            repetitions.remove(hashes[ply]);
+        } else {
+            recount();
+        }
+        return step;
+    }
+
+    /**
+     * Moves the cursor forward one ply.
+     *
+     * @return the step to redo, or 0 if there is none.
+     */
+    int forward() {
+        if (ply == size) {
+            return 0;
+        }
+        count(steps[ply], hashes[ply]);
+        return steps[ply ++];
+    }
+
+    /**
+     * Counts the position after a step played at the current ply.
+     *
+     * @return the counters of the step.
+     */
+    private int count(int step, long hash) {
+        int quiet = 0;
+        if (isQuiet(step)) {
+            quiet = Math.min(0xFFFF, getQuietPlies() + 1);
+        } else {
+            repetitions.clear(1);
+        }
+        int repeats = Math.min(0xFFFF, repetitions.add(hash));
+        return quiet | (repeats << 16);
+    }
+
+    /**
+     * Counts again the positions since the last capture or checker move
+     * before the current ply.
+     */
+    private void recount() {
+        int quiet = getQuietPlies();
+        repetitions.clear(quiet + 1);
+        for (int p = ply - quiet; p <= ply; p ++) {
+            repetitions.add(getHash(p));
+        }
+    }
+
+    /**
+     * Moves the cursor to the checkpoint at or before a ply.
+     *
+     * @param target	the ply to go to.
+     * @param plansza	the board to set to the checkpoint position.
+     * @return the turn and skip index of the checkpoint, as by
+     * {@link #packState(boolean, int)}.
+     */
+    int seek(int target, Plansza plansza) {
+        int c = target / CHECKPOINT_INTERVAL;
+        this.ply = c * CHECKPOINT_INTERVAL;
+        recount();
+        plansza.setMasks(checkpoints[4 * c], checkpoints[4 * c + 1],
+                checkpoints[4 * c + 2]);
+        return checkpoints[4 * c + 3];
+    }
+
+    private void setCheckpoint(int c, Plansza plansza, boolean isP1Turn,
+                               int skipIndex) {
+        if (4 * c + 4 > checkpoints.length) {
+            this.checkpoints = Arrays.copyOf(checkpoints,
+                    Math.max(4 * c + 4, checkpoints.length * 2));
+        }
+        this.checkpoints[4 * c] = plansza.getBlackMask();
+        this.checkpoints[4 * c + 1] = plansza.getWhiteMask();
+        this.checkpoints[4 * c + 2] = plansza.getKingMask();
+        this.checkpoints[4 * c + 3] = packState(isP1Turn, skipIndex);
+    }
+
+    /**
+     * Gets the start position of the history.
+     *
+     * @return a new game with the start position and no history.
+     */
+    public Gra getStart() {
+        Plansza b = new Plansza();
+        b.setMasks(checkpoints[0], checkpoints[1], checkpoints[2]);
+        return new Gra(b, isP1Turn(checkpoints[3]), skipIndex(checkpoints[3]));
+    }
+
+    /**
+     * Gets the current ply, which is the number of steps played from the
+     * start position to reach the current one.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Gets the number of steps recorded, including those that were undone
+     * and can be redone.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean canUndo() {
+        return ply > 0;
+    }
+
+    public boolean canRedo() {
+        return ply < size;
+    }
+
+    /**
+     * Gets a recorded step.
+     *
+     * @param i	the ply of the step (from 0).
+     * @return the packed step.
+     */
+    public int getStep(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Step " + i);
+        }
+        return steps[i];
+    }
+
+    /**
+     * Gets the hash of the position at a ply.
+     *
+     * @param ply	the ply (0 for the start position).
+     * @return the Zobrist hash of the position.
+     */
+    public long getHash(int ply) {
+        if (ply < 0 || ply > size) {
+            throw new IndexOutOfBoundsException("Ply " + ply);
+        }
+        return ply == 0? startHash : hashes[ply - 1];
+    }
+
+    /**
+     * Gets the hash of the current position.
+     */
+    public long getHash() {
+        return getHash(ply);
+    }
+
+    /**
+     * Gets the number of plies since the last capture or checker move.
+     */
+    public int getQuietPlies() {
+        return ply == 0? 0 : counters[ply - 1] & 0xFFFF;
+    }
+
+    /**
+     * Gets the number of times the current position has occurred since the
+     * last capture or checker move, including now.
+     */
+    public int getRepetitions() {
+        return ply == 0? 1 : counters[ply - 1] >>> 16;
+    }
+
+    /**
+     * Packs a step into an int: the start index in bits 0-4, the end index
+     * in bits 5-9, {@link #ENDS_TURN}, {@link #PROMOTED}, the ID of the
+     * captured checker in bits 12-14, the skip index before the step plus
+     * one in bits 15-20 and {@link #KING_MOVE}.
+     *
+     * @param startIndex	the start index of the step.
+     * @param endIndex		the end index of the step.
+     * @param endsTurn		the flag indicating if the turn ended.
+     * @param promoted		the flag indicating if the checker became a king.
+     * @param captured		the ID of the captured checker, or
+     * {@link Plansza#EMPTY}.
+     * @param previousSkip	the skip index before the step.
+     * @param king			the flag indicating if a king was moved.
+     * @return the packed step.
+     */
+    public static int pack(int startIndex, int endIndex, boolean endsTurn,
+                           boolean promoted, int captured, int previousSkip,
+                           boolean king) {
+        return startIndex | (endIndex << 5) | (endsTurn? ENDS_TURN : 0)
+                | (promoted? PROMOTED : 0) | (king? KING_MOVE : 0)
+                | ((captured & 7) << CAPTURED_SHIFT)
+                | ((Plansza.isValidIndex(previousSkip)? previousSkip + 1 : 0)
+                        << PREVIOUS_SKIP_SHIFT);
+    }
+
+    public static int start(int step) {
+        return step & 0x1F;
+    }
+
+    public static int end(int step) {
+        return (step >>> 5) & 0x1F;
+    }
+
+    public static boolean endsTurn(int step) {
+        return (step & ENDS_TURN) != 0;
+    }
+
+    public static boolean promoted(int step) {
+        return (step & PROMOTED) != 0;
+    }
+
+    public static int captured(int step) {
+        return (step >>> CAPTURED_SHIFT) & 7;
+    }
+
+    public static int previousSkip(int step) {
+        return ((step >>> PREVIOUS_SKIP_SHIFT) & 0x3F) - 1;
+    }
+
+    /**
+     * Checks if a step can be reversed, which is if a king was moved without
+     * a capture. Positions before other steps cannot occur again.
+     */
+    public static boolean isQuiet(int step) {
+        return (step & KING_MOVE) != 0 && captured(step) == Plansza.EMPTY;
+    }
+
+    /**
+     * Packs the turn and skip index of a position into an int.
+     */
+    static int packState(boolean isP1Turn, int skipIndex) {
+        return (isP1Turn? 1 : 0)
+                | ((Plansza.isValidIndex(skipIndex)? skipIndex + 1 : 0) << 1);
+    }
+
+    static boolean isP1Turn(int state) {
+        return (state & 1) != 0;
+    }
+
+    static int skipIndex(int state) {
+        return (state >>> 1) - 1;
+    }
+
+    /**
+     * Counts hashes with open addressing. Every slot is stamped with the
+     * generation it was written in, and slots from older generations are
+     * empty, so the table is cleared by starting a new generation.
+     */
+    private static class RepetitionTable {
+
+        private long[] keys = new long[256];
+
+        private int[] counts = new int[256];
+
+        private int[] stamps = new int[256];
+
+        private int generation = 1;
+
+        private int entries;
+
+        /**
+         * Empties the table, making room for a number of hashes.
+         */
+        private void clear(int expected) {
+            if (expected * 2 > keys.length) {
+                int n = Integer.highestOneBit(expected * 4 - 1);
+                this.keys = new long[n];
+                this.counts = new int[n];
+                this.stamps = new int[n];
+            }
+            this.generation ++;
+            this.entries = 0;
+        }
+
+        /**
+         * Counts a hash.
+         *
+         * @return the number of times the hash was counted.
+         */
+        private int add(long hash) {
+            int i = find(hash);
+            if (stamps[i] != generation) {
+                if (entries * 2 >= keys.length) {
+                    grow();
+                    i = find(hash);
+                }
+                this.keys[i] = hash;
+                this.counts[i] = 0;
+                this.stamps[i] = generation;
+                this.entries ++;
+            }
+            return ++ counts[i];
+        }
+
+        private void remove(long hash) {
+            int i = find(hash);
+            if (stamps[i] == generation && counts[i] > 0) {
+                this.counts[i] --;
+            }
+        }
+
+        /**
+         * Finds the slot of a hash, or the empty slot for it.
+         */
+        private int find(long hash) {
+            int mask = keys.length - 1;
+            int i = (int) (hash ^ (hash >>> 32)) & mask;
+            while (stamps[i] == generation && keys[i] != hash) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts, oldStamps = stamps;
+            int current = generation;
+            this.keys = new long[oldKeys.length * 2];
+            this.counts = new int[keys.length];
+            this.stamps = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i ++) {
+                if (oldStamps[i] == current) {
+                    int j = find(oldKeys[i]);
+                    this.keys[j] = oldKeys[i];
+                    this.counts[j] = oldCounts[i];
+                    this.stamps[j] = current;
+                }
+            }
+        }
+    }
+}
@@ -66,6 +66,52 @@ public class Plansza {
         }
     }
 
+    /**
+     * Zwraca maskę bitową pól zajętych przez czarne pionki i damki. Bit
+     * {@code i} odpowiada indeksowi czarnego pola {@code i}.
+     *
+     * @return maska czarnych pionków.
+     * @see {@link #getWhiteMask()}, {@link #getKingMask()}
+     */
+    public int getBlackMask() {
+        return state[0] & state[1];
+    }
+
+    /**
+     * Zwraca maskę bitową pól zajętych przez białe pionki i damki.
+     *
+     * @return maska białych pionków.
+     * @see {@link #getBlackMask()}, {@link #getKingMask()}
+     */
+    public int getWhiteMask() {
+        return state[0] & ~state[1];
+    }
+
+    /**
+     * Zwraca maskę bitową pól zajętych przez damki (obu kolorów).
+     *
+     * @return maska damek.
+     * @see {@link #getBlackMask()}, {@link #getWhiteMask()}
+     */
+    public int getKingMask() {
+        return state[0] & state[2];
+    }
+
+    /**
+     * Ustawia całą planszę na podstawie masek bitowych. Pola wspólne dla
+     * masek czarnych i białych są traktowane jako czarne.
+     *
+     * @param black	maska czarnych pionków i damek.
+     * @param white	maska białych pionków i damek.
+     * @param kings	maska damek (obu kolorów).
+     */
+    public void setMasks(int black, int white, int kings) {
+        int occupied = black | white;
+        this.state[0] = occupied;
+        this.state[1] = black;
+        this.state[2] = kings & occupied;
+    }
+
     /**
      * Przeszukuje planszę do gry w warcaby i znajduje czarne pola pasujące
      * do określonego ID.
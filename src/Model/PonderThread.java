@@ -0,0 +1,46 @@
+package Model;
+
+/**
+ * The background thread a computer player searches on during the opponent's
+ * turn. The search itself is given as a task, along with a way to tell it to
+ * stop.
+ */
+class PonderThread extends Thread {
+
+    /** Tells the search running on this thread to stop. */
+    private final Runnable stopper;
+
+    PonderThread(Runnable task, Runnable stopper) {
+        super(task, "ponder");
+        this.stopper = stopper;
+        setDaemon(true);
+    }
+
+    /**
+     * Waits for the search to end by itself.
+     */
+    void finish() {
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            halt();
+        }
+    }
+
+    /**
+     * Stops the search and waits for it to end. The stop request is repeated
+     * in case the search had not started yet and cleared it.
+     */
+    void halt() {
+        while (isAlive()) {
+            stopper.run();
+            try {
+                join(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -14,12 +14,6 @@ import ui.OptionPanel;
 
 public class CheckersNetworkHandler implements ActionListener {
 
-    /** The minimum number of characters in the session ID. */
-    private static final int MIN_SID_LENGTH = 16;
-
-    /** The max number of characters in the session ID. */
-    private static final int MAX_SID_LENGTH = 64;
-
     /** The start of a response that was accepted. */
     public static final String RESPONSE_ACCEPTED = "ACCEPTED";
 
@@ -59,8 +53,35 @@ public class CheckersNetworkHandler implements ActionListener {
 
         // Get the data from the connection
         ConnectionHandler handler = (ConnectionHandler) e.getSource();
+        long start = System.nanoTime();
         String data = ConnectionListener.read(handler.getSocket());
         data = data.replace("\r\n", "\n");
+        String cmd = data.split("\n")[0].split(" ")[0].toUpperCase();
+        try {
+            handle(handler, cmd, data);
+        } catch (RuntimeException err) {
+            NetworkMetrics.failure(err);
+            throw err;
+        } finally {
+            NetworkMetrics.received(cmd, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Handles a command from a connected client and sends the response.
+     *
+     * @param handler	the connection the command was read from.
+     * @param cmd		the command (the first word of the data).
+     * @param data		the data that was read, with the command.
+     */
+    private void handle(ConnectionHandler handler, String cmd, String data) {
+
+        // The counters can be read without a session
+        if (cmd.equals(Command.COMMAND_METRICS)) {
+            sendResponse(handler, RESPONSE_ACCEPTED + "\n"
+                    + NetworkMetrics.dump());
+            return;
+        }
 
         // Unable to handle
         if (window == null || board == null || opts == null) {
@@ -72,14 +93,12 @@ public class CheckersNetworkHandler implements ActionListener {
 
         // Determine if a valid user
         String[] lines = data.split("\n");
-        String cmd = lines[0].split(" ")[0].toUpperCase();
         String sid = lines.length > 1? lines[1] : "";
         String response = "";
-        boolean match = false;
-        if (isPlayer1) {
-            match = sid.equals(s1.getSid());
-        } else {
-            match = sid.equals(s2.getSid());
+        Session session = window.getSessions().get(sid);
+        boolean match = session != null && session == (isPlayer1? s1 : s2);
+        if (match) {
+            session.touch();
         }
 
         // A connected client wants to update the board
@@ -111,12 +130,17 @@ public class CheckersNetworkHandler implements ActionListener {
             // Send the board if there was a SID match
             if (match) {
                 response = RESPONSE_ACCEPTED + "\n"
-                        + board.getGame().getGameState();
+                        + board.getGameState();
             } else {
                 response = RESPONSE_DENIED;
             }
         }
 
+        // A connected client checks that this one is still there
+        else if (cmd.equals(Command.COMMAND_PING)) {
+            response = match? RESPONSE_ACCEPTED : RESPONSE_DENIED;
+        }
+
         // A connected client wants to disconnect
         else if (cmd.equals(Command.COMMAND_DISCONNECT)) {
 
@@ -163,7 +187,7 @@ public class CheckersNetworkHandler implements ActionListener {
         }
 
         // Update the current client's game state
-        this.board.setGameState(false, newState, null);
+        this.board.moveTo(newState);
         if (!board.getCurrentPlayer().isHuman()) {
             board.update();
         }
@@ -242,8 +266,8 @@ public class CheckersNetworkHandler implements ActionListener {
      * @param handler	the connection handler to send the response to.
      * @param response	the response data to send.
      */
-    private static void sendResponse(ConnectionHandler handler,
-                                     String response) {
+    static void sendResponse(ConnectionHandler handler,
+                             String response) {
 
         // Trivial cases
         if (handler == null) {
@@ -259,9 +283,12 @@ public class CheckersNetworkHandler implements ActionListener {
 
         // Write the response and close the connection
         try (OutputStream os = s.getOutputStream()) {
-            os.write(response.getBytes());
+            byte[] bytes = response.getBytes();
+            os.write(bytes);
             os.flush();
+            NetworkMetrics.bytesOut(bytes.length);
         } catch (IOException e) {
+            NetworkMetrics.failure(e);
             e.printStackTrace();
         } finally {
 
@@ -269,43 +296,19 @@ public class CheckersNetworkHandler implements ActionListener {
             try {
                 s.close();
             } catch (IOException e) {
+                NetworkMetrics.failure(e);
                 e.printStackTrace();
             }
         }
     }
 
     /**
-     * Generates a session ID of a random length with random characters. The
-     * session ID itself is guaranteed to be at least {@value #MIN_SID_LENGTH}
-     * characters long, but not longer than {@value #MAX_SID_LENGTH}.
+     * Generates a session ID of {@value SessionRegistry#SID_LENGTH} random
+     * hex digits.
      *
      * @return a randomly generated SID.
      */
     private static String generateSessionID() {
-
-        // Generate a string of random length
-        String sid = "";
-        int chars = (int) ((MAX_SID_LENGTH - MIN_SID_LENGTH) * Math.random())
-                + MIN_SID_LENGTH;
-        for (int i = 0; i < chars; i ++) {
-
-            // Generate a character in a random range
-            int t = (int) (4 * Math.random());
-            int min = 32, max = 48;
-            if (t == 1) {
-                min = 48;
-                max = 65;
-            } else if (t == 2) {
-                min = 65;
-                max = 97;
-            } else if (t == 3) {
-                min = 97;
-                max = 125;
-            }
-            char randChar = (char) ((Math.random() * (max - min)) + min);
-            sid += randChar;
-        }
-
-        return sid;
+        return SessionRegistry.newSid();
     }
 }
\ No newline at end of file
@@ -3,9 +3,12 @@ package Siec;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 
 public class Command {
 
@@ -28,12 +31,37 @@ public class Command {
      * matching SID is required for the game state to be sent. */
     public static final String COMMAND_GET = "GET-STATE";
 
+    /** The command to check that the remote client is still there. Note: a
+     * matching SID is required for the command to be accepted. */
+    public static final String COMMAND_PING = "PING";
+
+    /** The default time allowed to connect to the remote client (in ms). */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+    /** The default time allowed for each read of the response (in ms). */
+    public static final int DEFAULT_READ_TIMEOUT = 5000;
+
+    /** The command to get the network counters of a remote client as plain
+     * text (see {@link NetworkMetrics#dump()}). No SID is required. */
+    public static final String COMMAND_METRICS = "METRICS";
+
+    /** The end of a line, shared by the buffers of all the commands. */
+    private static final ByteBuffer NEWLINE =
+            ByteBuffer.wrap(new byte[] {'\n'}).asReadOnlyBuffer();
+
     /** The command to issue. */
     private String command;
 
     /** The data on the following lines. */
     private String[] data;
 
+    /** The time allowed to connect (in ms), or 0 for no limit. */
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /** The time allowed for each read of the response (in ms), or 0 for no
+     * limit. */
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+
     /**
      * Constructs a command with the data.
      *
@@ -47,7 +75,9 @@ public class Command {
 
     /**
      * Sends the command and the data to the specified host and port. It then
-     * reads and returns the response from the other host.
+     * reads and returns the response from the other host. Small writes are
+     * not delayed (TCP_NODELAY), and the lines are written in one gathering
+     * write without first joining them.
      *
      * @param host	the remote host (e.g. 127.0.0.1).
      * @param port	the port to connect to.
@@ -57,32 +87,68 @@ public class Command {
      */
     public String send(String host, int port) {
 
-        String data = getOutput(), response = "";
+        String response = "";
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        long start = System.nanoTime(), bytesOut = 0, bytesIn = 0;
+        boolean success = false;
         try {
 
-            // Write the response
-            Socket s = new Socket(host, port);
-            PrintWriter writer = new PrintWriter(s.getOutputStream());
-            writer.println(data);
-            writer.flush();
-
-            // Get the response
-            BufferedReader br = new BufferedReader(new InputStreamReader(
-                    s.getInputStream()));
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                response += line + "\n";
+            // Write the command
+            SocketChannel channel = SocketChannel.open();
+            Socket s = channel.socket();
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                s.connect(new InetSocketAddress(host, port), connectTimeout);
+                s.setSoTimeout(readTimeout);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
             }
-            if (!response.isEmpty()) {
-                response = response.substring(0, response.length() - 1);
+            NetworkMetrics.outboundOpened();
+            try {
+                ByteBuffer[] buffers = getBuffers();
+                ByteBuffer last = buffers[buffers.length - 1];
+                while (last.hasRemaining()) {
+                    bytesOut += channel.write(buffers);
+                }
+                NetworkMetrics.bytesOut(bytesOut);
+
+                // Get the response
+                BufferedReader br = new BufferedReader(new InputStreamReader(
+                        s.getInputStream()));
+                String line = null;
+                while ((line = br.readLine()) != null) {
+                    response += line + "\n";
+                }
+                bytesIn = response.getBytes().length;
+                NetworkMetrics.bytesIn(bytesIn);
+                success = true;
+                if (!response.isEmpty()) {
+                    response = response.substring(0, response.length() - 1);
+                }
+            } finally {
+                channel.close();
+                NetworkMetrics.outboundClosed();
             }
-            s.close();
 
         } catch (UnknownHostException e) {
+            NetworkMetrics.failure(e);
             e.printStackTrace();
         } catch (IOException e) {
+            NetworkMetrics.failure(e);
             e.printStackTrace();
         }
+        NetworkMetrics.sent(command, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.host = host;
+            event.port = port;
+            event.bytesSent = bytesOut;
+            event.bytesReceived = bytesIn;
+            event.success = success;
+            event.commit();
+        }
 
         return response;
     }
@@ -110,6 +176,27 @@ public class Command {
         return out;
     }
 
+    /**
+     * Gets the buffers to write for this command: each line of
+     * {@link #getOutput()} followed by a line end.
+     *
+     * @return the buffers, in order.
+     */
+    private ByteBuffer[] getBuffers() {
+        int n = 0;
+        while (data != null && n < data.length && data[n] != null) {
+            n ++;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[2 * (n + 1)];
+        buffers[0] = ByteBuffer.wrap(command.getBytes());
+        buffers[1] = NEWLINE.duplicate();
+        for (int i = 0; i < n; i ++) {
+            buffers[2 * i + 2] = ByteBuffer.wrap(data[i].getBytes());
+            buffers[2 * i + 3] = NEWLINE.duplicate();
+        }
+        return buffers;
+    }
+
     public String getCommand() {
         return command;
     }
@@ -118,6 +205,33 @@ public class Command {
         this.command = command;
     }
 
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the time allowed to connect to the remote client.
+     *
+     * @param connectTimeout	the time in ms, or 0 for no limit.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = Math.max(0, connectTimeout);
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the time allowed for each read of the response. The command
+     * fails if the remote client sends nothing for that long.
+     *
+     * @param readTimeout	the time in ms, or 0 for no limit.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
     public String[] getData() {
         return data;
     }
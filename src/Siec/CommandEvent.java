@@ -0,0 +1,38 @@
+package Siec;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder event for a round trip of
+ * {@link Command#send(String, int)}. Its duration is the latency.
+ */
+@Name("checkers.Command")
+@Label("Network Command")
+@Category({"Checkers", "Network"})
+@Description("A command sent to another client and its response")
+class CommandEvent extends jdk.jfr.Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Host")
+    String host;
+
+    @Label("Port")
+    int port;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+
+    @Label("Success")
+    boolean success;
+}
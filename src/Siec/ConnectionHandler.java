@@ -38,9 +38,13 @@ public class ConnectionHandler extends Thread{
         }
 
         // Send the event to the handler
-        ActionEvent e = new ActionEvent(this, 0, "CONNECTION ACCEPT");
-        if (listener.getConnectionHandler() != null) {
-            this.listener.getConnectionHandler().actionPerformed(e);
+        try {
+            ActionEvent e = new ActionEvent(this, 0, "CONNECTION ACCEPT");
+            if (listener.getConnectionHandler() != null) {
+                this.listener.getConnectionHandler().actionPerformed(e);
+            }
+        } finally {
+            NetworkMetrics.inboundClosed();
         }
     }
 
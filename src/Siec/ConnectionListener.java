@@ -14,9 +14,16 @@ public class ConnectionListener extends Thread{
     /** The socket that will listen for connections. */
     private ServerSocket serverSocket;
 
+    /** The default time allowed for each read from a connection (in ms). */
+    public static final int DEFAULT_READ_TIMEOUT = 5000;
+
     /** The action listener that will be invoked when a connection is made. */
     private ActionListener connectionHandler;
 
+    /** The time allowed for each read from a connection (in ms), or 0 for
+     * no limit. */
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+
     /**
      * Creates a connection listener on a dynamically allocated port.
      */
@@ -74,6 +81,7 @@ public class ConnectionListener extends Thread{
                 this.serverSocket = new ServerSocket(
                         serverSocket.getLocalPort());
             } catch (IOException e) {
+                NetworkMetrics.failure(e);
                 e.printStackTrace();
             }
         }
@@ -83,12 +91,17 @@ public class ConnectionListener extends Thread{
             try {
 
                 // Get the connection and handle it
-                ConnectionHandler conn = new ConnectionHandler(
-                        this, serverSocket.accept());
+                Socket socket = serverSocket.accept();
+                socket.setSoTimeout(readTimeout);
+                socket.setTcpNoDelay(true);
+                ConnectionHandler conn = new ConnectionHandler(this, socket);
+                NetworkMetrics.inboundOpened();
                 conn.start();
             } catch (IOException e) {
+                NetworkMetrics.failure(e);
                 e.printStackTrace();
             } catch (Exception e) {
+                NetworkMetrics.failure(e);
                 e.printStackTrace();
             }
         }
@@ -162,6 +175,20 @@ public class ConnectionListener extends Thread{
         this.serverSocket = serverSocket;
     }
 
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the time allowed for each read from an incoming connection, so a
+     * client that connects and sends nothing does not hold a thread.
+     *
+     * @param readTimeout	the time in ms, or 0 for no limit.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
     public ActionListener getConnectionHandler() {
         return connectionHandler;
     }
@@ -193,10 +220,12 @@ public class ConnectionListener extends Thread{
                 data += line + "\n";
                 if (!br.ready()) {break;}
             }
+            NetworkMetrics.bytesIn(data.getBytes().length);
             if (!data.isEmpty()) {
                 data = data.substring(0, data.length()-1);
             }
         } catch (IOException e) {
+            NetworkMetrics.failure(e);
             e.printStackTrace();
         }
 
@@ -0,0 +1,198 @@
+package Siec;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import Model.Gra;
+
+/**
+ * A headless connection handler that hosts any number of games at once, one
+ * per connected client, speaking the same commands as
+ * {@link CheckersNetworkHandler}. Each client that connects gets its own
+ * session and a new game; its updates replace the state of that game and
+ * are not forwarded anywhere. It is meant as a target for
+ * {@link LoadGenerator} and other tests that need a server without a window.
+ * <p>
+ * Clients often go without saying so, so the sessions are watched by a
+ * {@link SessionMonitor}: a session whose client sends nothing for the idle
+ * timeout is dropped with its game. The clients are not pinged, as they do
+ * not need to listen for commands.
+ */
+public class GameServer implements ActionListener {
+
+    /** The sessions of the connected clients by their ID. */
+    private final SessionRegistry sessions = new SessionRegistry();
+
+    /** The game state of each connected client. */
+    private final Map<Session, String> states = new ConcurrentHashMap<>();
+
+    /** The monitor that drops the sessions of clients that have gone. */
+    private final SessionMonitor monitor;
+
+    public GameServer() {
+        this.monitor = new SessionMonitor(this::drop);
+        setIdleTimeout(SessionMonitor.DEFAULT_IDLE_TIMEOUT);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+
+        // Invalid event
+        if (e == null || !(e.getSource() instanceof ConnectionHandler)) {
+            return;
+        }
+
+        // Get the data from the connection
+        ConnectionHandler handler = (ConnectionHandler) e.getSource();
+        long start = System.nanoTime();
+        String data = ConnectionListener.read(handler.getSocket());
+        data = data.replace("\r\n", "\n");
+        String[] lines = data.split("\n");
+        String cmd = lines[0].split(" ")[0].toUpperCase();
+        try {
+            CheckersNetworkHandler.sendResponse(handler,
+                    handle(handler, cmd, lines));
+        } catch (RuntimeException err) {
+            NetworkMetrics.failure(err);
+            throw err;
+        } finally {
+            NetworkMetrics.received(cmd, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Handles a command from a client.
+     *
+     * @param handler	the connection the command was read from.
+     * @param cmd		the command (the first word of the data).
+     * @param lines		the lines that were read, starting with the command.
+     * @return the response to send.
+     */
+    private String handle(ConnectionHandler handler, String cmd,
+                          String[] lines) {
+        String accepted = CheckersNetworkHandler.RESPONSE_ACCEPTED;
+        String denied = CheckersNetworkHandler.RESPONSE_DENIED;
+
+        // The counters can be read without a session
+        if (cmd.equals(Command.COMMAND_METRICS)) {
+            return accepted + "\n" + NetworkMetrics.dump();
+        }
+
+        // A client wants to start a new game
+        String sid = lines.length > 1? lines[1] : "";
+        if (cmd.equals(Command.COMMAND_CONNECT)) {
+            int port = -1;
+            try {
+                port = Integer.parseInt(sid);
+            } catch (NumberFormatException err) {}
+            String host = handler.getSocket().getInetAddress()
+                    .getHostAddress();
+            Session session = new Session(null, null, host, port);
+            states.put(session, new Gra().getGameState());
+            session.setRegistry(sessions);
+            String newSid = SessionRegistry.newSid();
+            session.setSid(newSid);
+            monitor.add(session);
+            return accepted + "\n" + newSid + "\nSuccessfully connected.";
+        }
+
+        // The other commands need a session
+        Session session = sessions.get(sid);
+        if (session == null) {
+            return denied;
+        }
+        session.touch();
+
+        // A client made a move
+        if (cmd.equals(Command.COMMAND_UPDATE)) {
+            String newState = lines.length > 2? lines[2] : "";
+            if (newState.isEmpty()) {
+                return denied;
+            }
+            // The session may have just been dropped
+            return (states.replace(session, newState) != null)? accepted
+                    : denied;
+        }
+
+        // A client wants the state of its game
+        else if (cmd.equals(Command.COMMAND_GET)) {
+            String state = states.get(session);
+            return (state != null)? accepted + "\n" + state : denied;
+        }
+
+        // A client checks that the server is still there
+        else if (cmd.equals(Command.COMMAND_PING)) {
+            return accepted;
+        }
+
+        // A client is leaving
+        else if (cmd.equals(Command.COMMAND_DISCONNECT)) {
+            monitor.remove(session);
+            drop(session);
+            return accepted + "\nClient has been disconnected.";
+        }
+
+        return denied + "\nJava Checkers - unknown command '" + cmd + "'";
+    }
+
+    /**
+     * Drops a session and its game.
+     *
+     * @param session	the session.
+     */
+    private void drop(Session session) {
+        session.setSid(null);
+        states.remove(session);
+    }
+
+    public long getIdleTimeout() {
+        return monitor.getIdleTimeout();
+    }
+
+    /**
+     * Sets the time a client may send nothing before its session is dropped.
+     * The heartbeat is set to the same time, so a session is dropped before
+     * it would be pinged.
+     *
+     * @param idleTimeout	the time in ms.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        monitor.setIdleTimeout(idleTimeout);
+        monitor.setHeartbeatInterval(monitor.getIdleTimeout());
+    }
+
+    /**
+     * Stops watching the sessions. The games are kept.
+     */
+    public void close() {
+        monitor.close();
+    }
+
+    /**
+     * Gets the sessions of the connected clients by their ID.
+     */
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets the number of games being played.
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Runs a server on the calling thread until the process is stopped:
+     * {@code GameServer [port]}
+     */
+    public static void main(String[] args) {
+        int port = (args.length > 0)? Integer.parseInt(args[0]) : 0;
+        ConnectionListener listener = new ConnectionListener(port,
+                new GameServer());
+        System.out.println("Listening on port " + listener.getPort());
+        listener.run();
+    }
+}
@@ -0,0 +1,172 @@
+package Siec;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, in the style of HdrHistogram: the
+ * values are counted in buckets that are linear within each power of two,
+ * with {@value #SUB_BUCKETS} buckets per power, so a recorded value is off by
+ * at most 1/{@value #SUB_BUCKETS} of itself. Every bucket is a
+ * {@link LongAdder}, so many threads can record at once without locking.
+ */
+public class LatencyHistogram {
+
+    /** The number of bits of a value kept below its highest bit. */
+    private static final int SUB_BITS = 4;
+
+    /** The number of buckets per power of two. */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The highest bit of the largest value counted separately (about 69
+     * seconds). Larger values are counted in the last bucket. */
+    private static final int MAX_BIT = 36;
+
+    private static final int BUCKETS = (MAX_BIT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i ++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param nanos	the latency in nanoseconds (negative values count as 0).
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucket(nanos)].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int bit = 63 - Long.numberOfLeadingZeros(value);
+        if (bit > MAX_BIT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (bit - SUB_BITS)) - SUB_BUCKETS;
+        return (bit - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     */
+    static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int bit = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (bit - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     */
+    public long getCount() {
+        long n = 0;
+        for (LongAdder count : counts) {
+            n += count.sum();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = getCount();
+        return (n == 0)? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the value at a percentile. The counts are read bucket by bucket
+     * while other threads may still record, so the result is approximate
+     * while the histogram is in use.
+     *
+     * @param percentile	the percentile (from 0 to 100 inclusive).
+     * @return the highest value in the bucket holding the percentile (but
+     * not more than the largest value recorded), or 0 if nothing was
+     * recorded.
+     */
+    public long getValueAt(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i ++) {
+            snapshot[i] = counts[i].sum();
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        // Find the bucket that holds the rank of the percentile
+        long rank = Math.max(1, (long) Math.ceil(
+                Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i ++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears the histogram. Values recorded while it is being cleared may be
+     * lost.
+     */
+    public void reset() {
+        for (LongAdder count : counts) {
+            count.reset();
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Gets a line with the count, mean, percentiles and maximum in
+     * microseconds.
+     */
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+                + " mean=" + micros(getMean())
+                + " p50=" + micros(getValueAt(50))
+                + " p90=" + micros(getValueAt(90))
+                + " p99=" + micros(getValueAt(99))
+                + " p999=" + micros(getValueAt(99.9))
+                + " max=" + micros(getMax()) + "us";
+    }
+
+    private static String micros(double nanos) {
+        return String.format("%.1f", nanos / 1000);
+    }
+}
@@ -0,0 +1,391 @@
+package Siec;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.Gra;
+import Silnik.MoveGenerator;
+import Silnik.Position;
+
+/**
+ * Simulates many network players against a server on this machine to
+ * measure how it holds up. Each simulated client sends a
+ * {@link Command#COMMAND_CONNECT}, then a {@link Command#COMMAND_GET}, then
+ * an {@link Command#COMMAND_UPDATE} for every turn, playing both sides with
+ * random legal moves and starting a new game when one ends. Every client
+ * sends one command per period, so the load is the number of clients times
+ * the rate.
+ * <p>
+ * The latency of a command is measured from when it was due, not from when
+ * it was sent, so a server that falls behind shows up in the percentiles
+ * instead of quietly lowering the rate. The server is given by port, or one
+ * is started in this process with a {@link GameServer}. Only the loopback
+ * address is used.
+ */
+public class LoadGenerator {
+
+    /** The default number of simulated clients. */
+    public static final int DEFAULT_CLIENTS = 100;
+
+    /** The default number of commands each client sends per second. */
+    public static final double DEFAULT_RATE = 2;
+
+    /** The default time the load is kept up (in s). */
+    public static final double DEFAULT_DURATION = 10;
+
+    /** The default number of threads sending commands. */
+    public static final int DEFAULT_THREADS = 64;
+
+    private static final String HOST = "127.0.0.1";
+
+    /** The commands with their own counters. */
+    private static final String[] COMMANDS = {Command.COMMAND_CONNECT,
+            Command.COMMAND_GET, Command.COMMAND_UPDATE,
+            Command.COMMAND_DISCONNECT};
+
+    private final int port;
+
+    private int clients = DEFAULT_CLIENTS;
+
+    private double rate = DEFAULT_RATE;
+
+    private double duration = DEFAULT_DURATION;
+
+    private int threads = DEFAULT_THREADS;
+
+    private final LatencyHistogram[] latency =
+            new LatencyHistogram[COMMANDS.length];
+
+    private final LongAdder[] errors = new LongAdder[COMMANDS.length];
+
+    private volatile boolean running;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    /** The time (from {@link System#nanoTime()}) the load was started. */
+    private long started;
+
+    /** The time the load was stopped. */
+    private long stopped;
+
+    /**
+     * Creates a load generator for a server on this machine.
+     *
+     * @param port	the port the server listens on.
+     */
+    public LoadGenerator(int port) {
+        this.port = port;
+        for (int i = 0; i < COMMANDS.length; i ++) {
+            latency[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Runs the load for the duration, then disconnects the clients. It
+     * returns once all of them are done.
+     */
+    public void run() {
+        long period = (long) (1e9 / rate);
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "load-client");
+            t.setDaemon(true);
+            return t;
+        });
+        this.running = true;
+        this.started = System.nanoTime();
+
+        // Spread the clients over the first period so they do not all send
+        // at the same time
+        Client[] all = new Client[clients];
+        for (int i = 0; i < clients; i ++) {
+            all[i] = new Client(i, period, started + period * i / clients);
+            executor.schedule(all[i], all[i].due - started,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        // Keep the load up for the duration
+        try {
+            Thread.sleep((long) (duration * 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.running = false;
+        this.stopped = System.nanoTime();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Command.DEFAULT_CONNECT_TIMEOUT
+                    + Command.DEFAULT_READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Leave the server as it was
+        for (Client c : all) {
+            if (c.sid != null) {
+                send(3, System.nanoTime(), c.sid);
+            }
+        }
+    }
+
+    /**
+     * Sends a command and records its latency.
+     *
+     * @param command	the index of the command in {@link #COMMANDS}.
+     * @param due		the time the command was due.
+     * @param data		the data to send after the command.
+     * @return the lines of the response, or null if the command failed or
+     * was denied.
+     */
+    private String[] send(int command, long due, String... data) {
+        String response = new Command(COMMANDS[command], data).send(HOST,
+                port);
+        latency[command].record(System.nanoTime() - due);
+        String[] lines = response.split("\n");
+        if (!lines[0].equals(CheckersNetworkHandler.RESPONSE_ACCEPTED)) {
+            errors[command].increment();
+            return null;
+        }
+        return lines;
+    }
+
+    /**
+     * A simulated player, which sends its next command each time it runs and
+     * then schedules itself for its next period.
+     */
+    private class Client implements Runnable {
+
+        private final int id;
+
+        private final long period;
+
+        private final SplittableRandom random;
+
+        private final Position pos = new Position();
+
+        private final long[] moves = new long[MoveGenerator.MAX_MOVES];
+
+        /** The time the next command is due. */
+        long due;
+
+        volatile String sid;
+
+        private Gra game;
+
+        Client(int id, long period, long due) {
+            this.id = id;
+            this.period = period;
+            this.due = due;
+            this.random = new SplittableRandom(id);
+        }
+
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            try {
+                step();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            // Keep to the schedule, even if the command was late
+            this.due += period;
+            if (running) {
+                executor.schedule(this, due - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void step() {
+
+            // Connect, as player 1 or 2 in turn
+            if (sid == null) {
+                String[] lines = send(0, due, "0", (id % 2 == 0)? "1" : "2");
+                if (lines != null && lines.length > 1) {
+                    this.sid = lines[1];
+                }
+                return;
+            }
+
+            // Get the game
+            if (game == null) {
+                String[] lines = send(1, due, sid);
+                if (lines != null && lines.length > 1) {
+                    this.game = new Gra(lines[1]);
+                }
+                return;
+            }
+
+            // Play a random turn, starting again when the game is over
+            if (!move()) {
+                game.restart();
+            }
+            send(2, due, sid, game.getGameState());
+        }
+
+        /**
+         * Plays a random legal turn.
+         *
+         * @return false if the game is over.
+         */
+        private boolean move() {
+            if (game.isGameOver()) {
+                return false;
+            }
+            pos.set(game);
+            int n = MoveGenerator.generate(pos, moves, 0);
+            if (n == 0) {
+                return false;
+            }
+            int[] path = MoveGenerator.path(pos, moves[random.nextInt(n)]);
+            for (int i = 1; i < path.length; i ++) {
+                game.move(path[i - 1], path[i]);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes the results: for each command the count, errors and latency
+     * percentiles, then the overall throughput and error rate.
+     *
+     * @return the report.
+     */
+    public String report() {
+        double seconds = Math.max(1, stopped - started) / 1e9;
+        long total = 0, failed = 0;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-10s %9s %7s %10s %10s %10s %10s%n",
+                "command", "count", "errors", "p50(us)", "p99(us)",
+                "p999(us)", "max(us)"));
+        for (int i = 0; i < COMMANDS.length; i ++) {
+            LatencyHistogram h = latency[i];
+            long count = h.getCount(), e = errors[i].sum();
+            total += count;
+            failed += e;
+            out.append(String.format("%-10s %9d %7d %10d %10d %10d %10d%n",
+                    COMMANDS[i], count, e, h.getValueAt(50) / 1000,
+                    h.getValueAt(99) / 1000, h.getValueAt(99.9) / 1000,
+                    h.getMax() / 1000));
+        }
+        out.append(String.format("%d clients, %.1f s, %.0f commands/s, "
+                + "%.3f%% errors", clients, seconds, total / seconds,
+                (total == 0)? 0.0 : failed * 100.0 / total));
+        return out.toString();
+    }
+
+    public LatencyHistogram getLatency(String command) {
+        for (int i = 0; i < COMMANDS.length; i ++) {
+            if (COMMANDS[i].equals(command)) {
+                return latency[i];
+            }
+        }
+        return null;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public void setClients(int clients) {
+        this.clients = Math.max(1, clients);
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets the number of commands each client sends per second.
+     *
+     * @param rate	the rate, more than 0.
+     */
+    public void setRate(double rate) {
+        this.rate = (rate > 0)? rate : DEFAULT_RATE;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Sets the time the load is kept up.
+     *
+     * @param duration	the time in s.
+     */
+    public void setDuration(double duration) {
+        this.duration = Math.max(0, duration);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads sending commands. As each command blocks
+     * its thread until the response comes, this limits how many commands
+     * can be in flight at once.
+     *
+     * @param threads	the number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs a load and writes the report:
+     * {@code LoadGenerator [-port p] [-clients n] [-rate r] [-duration s]
+     * [-threads t]}. Without a port, a {@link GameServer} is started in this
+     * process.
+     */
+    public static void main(String[] args) {
+        int port = 0;
+        int clients = DEFAULT_CLIENTS, threads = DEFAULT_THREADS;
+        double rate = DEFAULT_RATE, duration = DEFAULT_DURATION;
+        for (int i = 0; i < args.length; i ++) {
+            switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++ i]);
+                    break;
+                case "-clients":
+                    clients = Integer.parseInt(args[++ i]);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(args[++ i]);
+                    break;
+                case "-duration":
+                    duration = Double.parseDouble(args[++ i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++ i]);
+                    break;
+            }
+        }
+
+        // Start a server if none was given
+        ConnectionListener server = null;
+        GameServer games = null;
+        if (port <= 0) {
+            games = new GameServer();
+            server = new ConnectionListener(0, games);
+            server.listen();
+            port = server.getPort();
+        }
+
+        LoadGenerator load = new LoadGenerator(port);
+        load.setClients(clients);
+        load.setRate(rate);
+        load.setDuration(duration);
+        load.setThreads(threads);
+        load.run();
+        System.out.println(load.report());
+        if (server != null) {
+            server.stopListening();
+            games.close();
+        }
+    }
+}
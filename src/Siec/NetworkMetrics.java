@@ -0,0 +1,265 @@
+package Siec;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of the network code: per command, the number of commands sent
+ * and received and histograms of their latencies, plus the number of open
+ * connections, the bytes in and out and the failures by cause. All of them
+ * are striped ({@link LongAdder}), so recording costs a few nanoseconds and
+ * never blocks. The counters can be read remotely with the
+ * {@link Command#COMMAND_METRICS} command.
+ */
+public class NetworkMetrics {
+
+    /** The commands with their own counters. Other commands are counted
+     * together under "OTHER". */
+    private static final String[] COMMANDS = {Command.COMMAND_UPDATE,
+            Command.COMMAND_CONNECT, Command.COMMAND_GET,
+            Command.COMMAND_DISCONNECT, Command.COMMAND_PING,
+            Command.COMMAND_METRICS, "OTHER"};
+
+    private static final int OTHER = COMMANDS.length - 1;
+
+    /** The number of commands sent, by command. */
+    private static final LongAdder[] SENT = adders();
+
+    /** The number of commands received, by command. */
+    private static final LongAdder[] RECEIVED = adders();
+
+    /** The round-trip time of the commands sent, by command. */
+    private static final LatencyHistogram[] SEND_LATENCY = histograms();
+
+    /** The time taken to handle the commands received (from reading to
+     * sending the response), by command. */
+    private static final LatencyHistogram[] HANDLE_LATENCY = histograms();
+
+    private static final LongAdder OPEN_INBOUND = new LongAdder();
+
+    private static final LongAdder OPEN_OUTBOUND = new LongAdder();
+
+    private static final LongAdder ACCEPTED = new LongAdder();
+
+    private static final LongAdder BYTES_IN = new LongAdder();
+
+    private static final LongAdder BYTES_OUT = new LongAdder();
+
+    /** The failures by cause (the simple name of the exception class). */
+    private static final Map<String, LongAdder> FAILURES =
+            new ConcurrentHashMap<>();
+
+    private NetworkMetrics() {}
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[COMMANDS.length];
+        for (int i = 0; i < adders.length; i ++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static LatencyHistogram[] histograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[COMMANDS.length];
+        for (int i = 0; i < histograms.length; i ++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Gets the counters for a command.
+     *
+     * @param command	the command (e.g. {@link Command#COMMAND_UPDATE}).
+     * @return the index of the counters.
+     */
+    private static int indexOf(String command) {
+        for (int i = 0; i < OTHER; i ++) {
+            if (COMMANDS[i].equals(command)) {
+                return i;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Records a command that was sent and answered (or failed).
+     *
+     * @param command	the command that was sent.
+     * @param nanos		the time from connecting to reading the whole response.
+     */
+    public static void sent(String command, long nanos) {
+        int i = indexOf(command);
+        SENT[i].increment();
+        SEND_LATENCY[i].record(nanos);
+    }
+
+    /**
+     * Records a command that was received and handled.
+     *
+     * @param command	the command that was received.
+     * @param nanos		the time from reading it to sending the response.
+     */
+    public static void received(String command, long nanos) {
+        int i = indexOf(command);
+        RECEIVED[i].increment();
+        HANDLE_LATENCY[i].record(nanos);
+    }
+
+    /**
+     * Records a connection that was accepted by a listener. It stays open
+     * until {@link #inboundClosed()} is called.
+     */
+    public static void inboundOpened() {
+        ACCEPTED.increment();
+        OPEN_INBOUND.increment();
+    }
+
+    public static void inboundClosed() {
+        OPEN_INBOUND.decrement();
+    }
+
+    public static void outboundOpened() {
+        OPEN_OUTBOUND.increment();
+    }
+
+    public static void outboundClosed() {
+        OPEN_OUTBOUND.decrement();
+    }
+
+    public static void bytesIn(long n) {
+        BYTES_IN.add(n);
+    }
+
+    public static void bytesOut(long n) {
+        BYTES_OUT.add(n);
+    }
+
+    /**
+     * Records a failure.
+     *
+     * @param cause	the exception that caused it.
+     */
+    public static void failure(Throwable cause) {
+        failure(cause == null? "Unknown" : cause.getClass().getSimpleName());
+    }
+
+    /**
+     * Records a failure that was not caused by an exception.
+     *
+     * @param name	the name of the cause.
+     */
+    public static void failure(String name) {
+        LongAdder count = FAILURES.get(name);
+        if (count == null) {
+            count = FAILURES.computeIfAbsent(name, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Gets the number of commands that were sent.
+     *
+     * @param command	the command.
+     */
+    public static long getSent(String command) {
+        return SENT[indexOf(command)].sum();
+    }
+
+    /**
+     * Gets the number of commands that were received.
+     *
+     * @param command	the command.
+     */
+    public static long getReceived(String command) {
+        return RECEIVED[indexOf(command)].sum();
+    }
+
+    public static LatencyHistogram getSendLatency(String command) {
+        return SEND_LATENCY[indexOf(command)];
+    }
+
+    public static LatencyHistogram getHandleLatency(String command) {
+        return HANDLE_LATENCY[indexOf(command)];
+    }
+
+    public static long getOpenConnections() {
+        return OPEN_INBOUND.sum() + OPEN_OUTBOUND.sum();
+    }
+
+    public static long getBytesIn() {
+        return BYTES_IN.sum();
+    }
+
+    public static long getBytesOut() {
+        return BYTES_OUT.sum();
+    }
+
+    /**
+     * Gets the number of failures with a cause.
+     *
+     * @param cause	the simple name of the exception class.
+     */
+    public static long getFailures(String cause) {
+        LongAdder count = FAILURES.get(cause);
+        return (count == null)? 0 : count.sum();
+    }
+
+    /**
+     * Clears all the counters except the open connections.
+     */
+    public static void reset() {
+        for (int i = 0; i < COMMANDS.length; i ++) {
+            SENT[i].reset();
+            RECEIVED[i].reset();
+            SEND_LATENCY[i].reset();
+            HANDLE_LATENCY[i].reset();
+        }
+        ACCEPTED.reset();
+        BYTES_IN.reset();
+        BYTES_OUT.reset();
+        FAILURES.clear();
+    }
+
+    /**
+     * Writes all the counters as plain text, one per line, in the form
+     * "name value" (histograms are followed by their summary).
+     *
+     * @return the counters.
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("connections.open.inbound ").append(OPEN_INBOUND.sum());
+        out.append("\nconnections.open.outbound ")
+                .append(OPEN_OUTBOUND.sum());
+        out.append("\nconnections.accepted ").append(ACCEPTED.sum());
+        out.append("\nbytes.in ").append(BYTES_IN.sum());
+        out.append("\nbytes.out ").append(BYTES_OUT.sum());
+        for (int i = 0; i < COMMANDS.length; i ++) {
+            String name = COMMANDS[i].toLowerCase();
+            out.append("\ncommand.").append(name).append(".sent ")
+                    .append(SENT[i].sum());
+            out.append("\ncommand.").append(name).append(".received ")
+                    .append(RECEIVED[i].sum());
+            if (SENT[i].sum() > 0) {
+                out.append("\ncommand.").append(name).append(".send.latency ")
+                        .append(SEND_LATENCY[i]);
+            }
+            if (RECEIVED[i].sum() > 0) {
+                out.append("\ncommand.").append(name)
+                        .append(".handle.latency ").append(HANDLE_LATENCY[i]);
+            }
+        }
+
+        // Sort the failures so the output is stable
+        Map<String, LongAdder> failures = new TreeMap<>(FAILURES);
+        for (Map.Entry<String, LongAdder> e : failures.entrySet()) {
+            out.append("\nfailures.").append(e.getKey()).append(' ')
+                    .append(e.getValue().sum());
+        }
+
+        return out.toString();
+    }
+}
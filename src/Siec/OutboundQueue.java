@@ -0,0 +1,136 @@
+package Siec;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The updates waiting to be sent to the peer of a session. Offering an
+ * update never blocks: the update is left for a sender thread, and the
+ * caller goes on at once, so a slow or dead peer only holds up its own
+ * queue. Each update carries the whole game state, so only the latest one
+ * matters: an update offered while another is still waiting replaces it,
+ * and a peer that falls behind is sent the newest state instead of every
+ * state in between.
+ * <p>
+ * The senders come from one pool shared by all the queues. A queue uses at
+ * most one of them at a time, so its updates are sent in order.
+ */
+public class OutboundQueue {
+
+    /** The threads sending the updates of all the queues. */
+    private static final ExecutorService SENDERS =
+            Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "peer-sender");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Session session;
+
+    /** The game state waiting to be sent, or null if there is none. */
+    private final AtomicReference<String> pending = new AtomicReference<>();
+
+    /** The flag set while a sender is draining this queue. */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Creates a queue for a session.
+     *
+     * @param session	the session whose peer the updates are sent to.
+     */
+    public OutboundQueue(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Queues a game state to be sent to the peer with a
+     * {@link Command#COMMAND_UPDATE}, replacing any state still waiting.
+     *
+     * @param state	the game state.
+     */
+    public void offer(String state) {
+        if (state == null) {
+            return;
+        }
+        if (pending.getAndSet(state) != null) {
+            coalesced.increment();
+        }
+        schedule();
+    }
+
+    /**
+     * Starts a sender on this queue if none is running.
+     */
+    private void schedule() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            SENDERS.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends the waiting states until there are none left.
+     */
+    private void drain() {
+        try {
+            String state;
+            while ((state = pending.getAndSet(null)) != null) {
+                send(state);
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // A state may have been offered after the last check but before the
+        // flag was cleared, while this sender still seemed to be running
+        if (pending.get() != null) {
+            schedule();
+        }
+    }
+
+    private void send(String state) {
+        String sid = session.getSid();
+        if (!session.isConnected()) {
+            return;
+        }
+        Command update = new Command(Command.COMMAND_UPDATE, sid, state);
+        update.send(session.getDestinationHost(),
+                session.getDestinationPort());
+        sent.increment();
+    }
+
+    /**
+     * Gets the number of updates sent to the peer.
+     */
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * Gets the number of updates that were replaced by a newer one before
+     * they were sent.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Checks if an update is waiting to be sent.
+     */
+    public boolean isPending() {
+        return pending.get() != null;
+    }
+}
@@ -6,13 +6,23 @@ public class Session {
     private ConnectionListener listener;
 
     /** The session ID used for correspondence between the two clients. */
-    private String sid;
+    private volatile String sid;
 
     /** The destination host name or IP. */
-    private String destinationHost;
+    private volatile String destinationHost;
 
     /** The destination port. */
-    private int destinationPort;
+    private volatile int destinationPort;
+
+    /** The registry the session is kept in by its ID, or null. */
+    private SessionRegistry registry;
+
+    /** The time (from {@link System#currentTimeMillis()}) the peer was last
+     * heard from. */
+    private volatile long lastSeen = System.currentTimeMillis();
+
+    /** The updates waiting to be sent to the peer. */
+    private final OutboundQueue outbound = new OutboundQueue(this);
 
     public Session(ConnectionListener listener, String sid,
                    String destinationHost, int destinationPort) {
@@ -42,8 +52,71 @@ public class Session {
         return sid;
     }
 
+    /**
+     * Sets the session ID. A new session counts as having just heard from
+     * its peer.
+     *
+     * @param sid	the session ID, or null if not connected.
+     */
     public void setSid(String sid) {
+        SessionRegistry r = registry;
+        String old = this.sid;
         this.sid = sid;
+        touch();
+        if (r != null) {
+            if (old != null) {
+                r.remove(old, this);
+            }
+            if (sid != null) {
+                r.put(this);
+            }
+        }
+    }
+
+    public SessionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sets the registry that keeps this session by its ID. The session is
+     * moved to it, and is kept up to date with {@link #setSid(String)}.
+     *
+     * @param registry	the registry, or null for none.
+     */
+    public void setRegistry(SessionRegistry registry) {
+        if (this.registry != null && sid != null) {
+            this.registry.remove(sid, this);
+        }
+        this.registry = registry;
+        if (registry != null && sid != null) {
+            registry.put(this);
+        }
+    }
+
+    /**
+     * Checks if the session has a peer.
+     *
+     * @return true if the session ID is set.
+     */
+    public boolean isConnected() {
+        String s = sid;
+        return s != null && !s.isEmpty();
+    }
+
+    /**
+     * Records that the peer was just heard from.
+     */
+    public void touch() {
+        this.lastSeen = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the time the peer was last heard from.
+     *
+     * @return the time from {@link System#currentTimeMillis()}.
+     */
+    public long getLastSeen() {
+        return lastSeen;
     }
 
     public String getDestinationHost() {
@@ -62,6 +135,15 @@ public class Session {
         this.destinationPort = destinationPort;
     }
 
+    /**
+     * Gets the queue of updates to send to the peer.
+     *
+     * @return the queue, which sends on its own thread.
+     */
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
     public int getSourcePort() {
         return (listener == null? -1 : listener.getPort());
     }
@@ -0,0 +1,540 @@
+package Siec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Watches connected sessions for dead peers. A session that has not heard
+ * from its peer for the heartbeat interval is sent a
+ * {@link Command#COMMAND_PING}, and a session that has not heard from its
+ * peer for the idle timeout is reaped: its listener is told and it is no
+ * longer watched. A ping gives up after the connect and read timeouts of
+ * {@link Command}, and a session is not reaped while its ping is in flight.
+ * <p>
+ * All the sessions share one thread and one hashed timer wheel: a ring of
+ * {@value #WHEEL_SIZE} buckets, one per tick, each holding the sessions due
+ * in that tick (plus whole turns of the wheel for later ones). A tick only
+ * looks at its own bucket, so adding, checking and reaping a session is
+ * constant time however many sessions there are. Sessions are added and
+ * removed through a queue the wheel thread drains, so the wheel itself needs
+ * no locks.
+ * <p>
+ * The pings are sent by the same thread with non-blocking channels: it
+ * waits for the next tick on a selector, so a slow or unreachable peer
+ * only holds a socket, never a thread. At most {@value #MAX_PINGS} pings
+ * are in flight at once. A ping that would go over that is tried again on
+ * the next tick, and its session is not reaped until a ping has been sent.
+ */
+public class SessionMonitor {
+
+    /** The default time without hearing from a peer before it is pinged. */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
+
+    /** The default time without hearing from a peer before it is reaped. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 20000;
+
+    /** The length of a tick of the wheel (in ms). */
+    private static final long TICK = 100;
+
+    /** The number of buckets in the wheel. */
+    private static final int WHEEL_SIZE = 512;
+
+    /** The most pings in flight at once, each holding a socket. */
+    private static final int MAX_PINGS = 1024;
+
+    /** The longest a ping can wait for its answer (in ms). */
+    private static final long PING_TIMEOUT = Command.DEFAULT_CONNECT_TIMEOUT
+            + Command.DEFAULT_READ_TIMEOUT;
+
+    /** The start of the answer to an accepted ping. */
+    private static final byte[] ACCEPTED =
+            CheckersNetworkHandler.RESPONSE_ACCEPTED.getBytes();
+
+    /**
+     * Is told when a session is reaped.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the wheel thread when a session's peer has not been
+         * heard from for the idle timeout. It should be quick.
+         *
+         * @param session	the dead session.
+         */
+        void sessionDead(Session session);
+    }
+
+    /**
+     * A watched session in the wheel.
+     */
+    private static final class Entry {
+
+        final Session session;
+
+        /** The turns of the wheel left before the entry is due. */
+        int rounds;
+
+        /** The next entry in the same bucket. */
+        Entry next;
+
+        volatile boolean cancelled;
+
+        /** The flag set while a ping to the peer is in flight. */
+        boolean pinging;
+
+        /** The flag set if the last ping could not be sent, as too many
+         * were in flight. */
+        boolean skipped;
+
+        Entry(Session session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * A ping in flight: its channel, the command still to write and the
+     * start of the answer read so far.
+     */
+    private static final class Ping {
+
+        final Entry entry;
+
+        final SocketChannel channel;
+
+        final ByteBuffer out;
+
+        final ByteBuffer in = ByteBuffer.allocate(ACCEPTED.length);
+
+        /** The time (from {@link System#currentTimeMillis()}) to give up. */
+        final long deadline;
+
+        /** The time (from {@link System#nanoTime()}) it was started. */
+        final long start = System.nanoTime();
+
+        boolean done;
+
+        Ping(Entry entry, SocketChannel channel, ByteBuffer out) {
+            this.entry = entry;
+            this.channel = channel;
+            this.out = out;
+            this.deadline = System.currentTimeMillis() + PING_TIMEOUT;
+        }
+    }
+
+    private final Entry[] wheel = new Entry[WHEEL_SIZE];
+
+    /** The entries waiting to be put in the wheel. */
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+
+    /** The entries of the sessions watched. */
+    private final Map<Session, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Listener listener;
+
+    private final Thread thread;
+
+    /** The selector of the pings' channels, or null if pings cannot be
+     * sent. */
+    private final Selector selector;
+
+    /** The pings in the order they were sent, which is also the order they
+     * time out in (only used by the wheel thread). */
+    private final ArrayDeque<Ping> pings = new ArrayDeque<>();
+
+    /** The number of pings in flight (only used by the wheel thread). */
+    private int pingsInFlight;
+
+    private volatile long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private volatile boolean running = true;
+
+    /** The tick the wheel is at (only used by the wheel thread). */
+    private long tick;
+
+    /**
+     * Creates a monitor and starts its thread. If no selector can be opened,
+     * no pings are sent and sessions are only reaped by the idle timeout.
+     *
+     * @param listener	the listener to tell of dead sessions, or null.
+     */
+    public SessionMonitor(Listener listener) {
+        this.listener = listener;
+        Selector s = null;
+        try {
+            s = Selector.open();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.selector = s;
+        this.thread = new Thread(this::run, "session-monitor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Starts watching a session. Sessions without an ID are checked again
+     * every heartbeat interval, so a session can be added before it is
+     * connected.
+     *
+     * @param session	the session to watch.
+     */
+    public void add(Session session) {
+        Entry e = new Entry(session);
+        if (entries.putIfAbsent(session, e) == null) {
+            added.add(e);
+        }
+    }
+
+    /**
+     * Stops watching a session.
+     *
+     * @param session	the session.
+     */
+    public void remove(Session session) {
+        Entry e = entries.remove(session);
+        if (e != null) {
+            e.cancelled = true;
+        }
+    }
+
+    /**
+     * Gets the number of sessions watched.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void run() {
+        long next = System.currentTimeMillis() + TICK;
+        try {
+            while (running) {
+
+                // Wait for the next tick, handling the pings meanwhile
+                long wait = next - System.currentTimeMillis();
+                if (!await(wait)) {
+                    return;
+                }
+                expirePings();
+                if (System.currentTimeMillis() < next) {
+                    continue;
+                }
+                next += TICK;
+
+                // Put the new entries in the wheel
+                Entry e;
+                while ((e = added.poll()) != null) {
+                    schedule(e, 0);
+                }
+
+                // Check the entries that are due
+                int bucket = (int) (tick % WHEEL_SIZE);
+                Entry head = wheel[bucket];
+                wheel[bucket] = null;
+                this.tick ++;
+                while (head != null) {
+                    e = head;
+                    head = head.next;
+                    e.next = null;
+                    if (e.cancelled) {
+                        continue;
+                    }
+                    if (e.rounds > 0) {
+                        e.rounds --;
+                        e.next = wheel[bucket];
+                        wheel[bucket] = e;
+                        continue;
+                    }
+                    check(e);
+                }
+            }
+        } finally {
+            for (Ping p : pings) {
+                finish(p, false);
+            }
+            pings.clear();
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for up to a time, handling the pings that are ready.
+     *
+     * @param wait	the time in ms (nothing is waited for if not positive).
+     * @return false if the thread was interrupted.
+     */
+    private boolean await(long wait) {
+        if (selector == null) {
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        try {
+            if (wait > 0) {
+                selector.select(wait);
+            } else {
+                selector.selectNow();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            handle(key, (Ping) key.attachment());
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Checks a session that is due, reaping it, pinging it or putting it back
+     * in the wheel until it next needs checking.
+     */
+    private void check(Entry e) {
+        Session session = e.session;
+        long heartbeat = heartbeatInterval;
+        if (!session.isConnected()) {
+            schedule(e, heartbeat);
+            return;
+        }
+        long idle = System.currentTimeMillis() - session.getLastSeen();
+
+        // Don't reap a session before its ping is answered or gives up, or
+        // while its ping waits for room to be sent
+        long timeout = idleTimeout;
+        if (idle >= timeout && e.skipped) {
+            ping(e);
+        }
+        if (idle >= timeout && (e.pinging || e.skipped)) {
+            schedule(e, e.skipped? TICK : Math.min(heartbeat / 2,
+                    PING_TIMEOUT));
+            return;
+        }
+
+        // Reap the session if the peer has been quiet too long
+        if (idle >= timeout) {
+            entries.remove(session, e);
+            e.cancelled = true;
+            NetworkMetrics.failure("DeadPeer");
+            if (listener != null) {
+                try {
+                    listener.sessionDead(session);
+                } catch (RuntimeException err) {
+                    err.printStackTrace();
+                }
+            }
+            return;
+        }
+
+        // Ping the peer if it has not been heard from for a while
+        long delay = heartbeat - idle;
+        if (idle >= heartbeat) {
+            if (!e.pinging) {
+                ping(e);
+            }
+            delay = e.skipped? TICK : heartbeat;
+        }
+        schedule(e, Math.min(delay, timeout - idle));
+    }
+
+    /**
+     * Starts a ping of a session's peer, unless too many are in flight.
+     */
+    private void ping(Entry e) {
+        if (selector == null) {
+            return;
+        }
+        if (pingsInFlight >= MAX_PINGS) {
+            e.skipped = true;
+            return;
+        }
+        e.skipped = false;
+        Session session = e.session;
+        String out = new Command(Command.COMMAND_PING, session.getSid())
+                .getOutput() + "\n";
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Ping p = new Ping(e, channel, ByteBuffer.wrap(out.getBytes()));
+            boolean connected = channel.connect(new InetSocketAddress(
+                    session.getDestinationHost(),
+                    session.getDestinationPort()));
+            channel.register(selector, connected? SelectionKey.OP_WRITE
+                    : SelectionKey.OP_CONNECT, p);
+            NetworkMetrics.outboundOpened();
+            e.pinging = true;
+            pingsInFlight ++;
+            pings.add(p);
+        } catch (IOException | RuntimeException err) {
+            NetworkMetrics.failure(err);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Moves a ping on once its channel is ready: finishes connecting, writes
+     * the command or reads the answer.
+     */
+    private void handle(SelectionKey key, Ping p) {
+        try {
+            if (key.isConnectable()) {
+                p.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                NetworkMetrics.bytesOut(p.channel.write(p.out));
+                if (!p.out.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                int n = p.channel.read(p.in);
+                if (n > 0) {
+                    NetworkMetrics.bytesIn(n);
+                }
+
+                // Only the start of the answer is needed
+                if (n < 0 || !p.in.hasRemaining()) {
+                    finish(p, isAccepted(p.in));
+                }
+            }
+        } catch (IOException | RuntimeException err) {
+            NetworkMetrics.failure(err);
+            finish(p, false);
+        }
+    }
+
+    private static boolean isAccepted(ByteBuffer in) {
+        if (in.position() < ACCEPTED.length) {
+            return false;
+        }
+        for (int i = 0; i < ACCEPTED.length; i ++) {
+            if (in.get(i) != ACCEPTED[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ends the pings that have run out of time. They time out in the order
+     * they were sent, so only the oldest ones need to be looked at.
+     */
+    private void expirePings() {
+        long now = System.currentTimeMillis();
+        Ping p;
+        while ((p = pings.peek()) != null && (p.done || p.deadline <= now)) {
+            pings.poll();
+            if (!p.done) {
+                NetworkMetrics.failure("PingTimeout");
+                finish(p, false);
+            }
+        }
+    }
+
+    /**
+     * Closes the channel of a ping, touching its session if it was accepted.
+     */
+    private void finish(Ping p, boolean accepted) {
+        if (p.done) {
+            return;
+        }
+        p.done = true;
+        p.entry.pinging = false;
+        pingsInFlight --;
+        if (accepted) {
+            p.entry.session.touch();
+        }
+        try {
+            p.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        NetworkMetrics.outboundClosed();
+        NetworkMetrics.sent(Command.COMMAND_PING, System.nanoTime() - p.start);
+    }
+
+    /**
+     * Puts an entry in the bucket of the tick a delay from now.
+     */
+    private void schedule(Entry e, long delay) {
+        long ticks = Math.max(1, (delay + TICK - 1) / TICK);
+        e.rounds = (int) ((ticks - 1) / WHEEL_SIZE);
+        int bucket = (int) ((tick + ticks - 1) % WHEEL_SIZE);
+        e.next = wheel[bucket];
+        wheel[bucket] = e;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Sets the time without hearing from a peer before it is pinged.
+     *
+     * @param heartbeatInterval	the time in ms.
+     */
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = Math.max(TICK, heartbeatInterval);
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time without hearing from a peer before its session is
+     * reaped. It should be a few heartbeat intervals, so a few lost pings
+     * do not end the session.
+     *
+     * @param idleTimeout	the time in ms.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = Math.max(TICK, idleTimeout);
+    }
+
+    /**
+     * Stops the monitor's thread, closing the pings in flight. The sessions
+     * are not changed.
+     */
+    public void close() {
+        this.running = false;
+        thread.interrupt();
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package Siec;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The sessions of a client by their session ID, so any number of sessions
+ * can share a listener. A session ID is 128 random bits written as
+ * {@value #SID_LENGTH} hex digits, and is kept as two longs, so a lookup
+ * parses the ID without allocating and compares two pairs of longs.
+ * <p>
+ * The table uses open addressing with linear probing. Lookups take no lock:
+ * they read optimistically and only retry under the read lock if a change
+ * was made at the same time. Changes take the write lock.
+ */
+public class SessionRegistry {
+
+    /** The number of hex digits in a session ID. */
+    public static final int SID_LENGTH = 32;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The value of each ASCII hex digit, or -1 for other characters. */
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < 16; i ++) {
+            DIGITS[HEX[i]] = (byte) i;
+            DIGITS[Character.toUpperCase(HEX[i])] = (byte) i;
+        }
+    }
+
+    /** The source of the seeds of the per-thread generators. */
+    private static final SecureRandom SEEDS = new SecureRandom();
+
+    /** The generator of each thread, seeded from {@link #SEEDS}. */
+    private static final ThreadLocal<SplittableRandom> RANDOM =
+            ThreadLocal.withInitial(() -> new SplittableRandom(
+                    SEEDS.nextLong()));
+
+    private final StampedLock lock = new StampedLock();
+
+    /** The high and low halves of the ID of each slot. */
+    private long[] keys = new long[INITIAL_CAPACITY * 2];
+
+    /** The session in each slot, or null if the slot is empty. */
+    private Session[] values = new Session[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Generates a new random session ID.
+     *
+     * @return {@value #SID_LENGTH} lower-case hex digits.
+     */
+    public static String newSid() {
+        SplittableRandom r = RANDOM.get();
+        char[] sid = new char[SID_LENGTH];
+        toHex(r.nextLong(), sid, 0);
+        toHex(r.nextLong(), sid, SID_LENGTH / 2);
+        return new String(sid);
+    }
+
+    private static void toHex(long value, char[] to, int offset) {
+        for (int i = SID_LENGTH / 2 - 1; i >= 0; i --) {
+            to[offset + i] = HEX[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * Checks if a session ID is well formed.
+     *
+     * @param sid	the session ID.
+     * @return true if it has {@value #SID_LENGTH} hex digits.
+     */
+    public static boolean isValid(CharSequence sid) {
+        if (sid == null || sid.length() != SID_LENGTH) {
+            return false;
+        }
+        int bad = 0;
+        for (int i = 0; i < SID_LENGTH; i ++) {
+            char c = sid.charAt(i);
+            bad |= (c < 128)? DIGITS[c] : -1;
+        }
+        return bad >= 0;
+    }
+
+    /**
+     * Parses one half of a well formed session ID.
+     *
+     * @param sid		the session ID.
+     * @param offset	0 for the high half, {@value #SID_LENGTH} / 2 for the
+     * low half.
+     * @return the half.
+     */
+    private static long parseHalf(CharSequence sid, int offset) {
+        long value = 0;
+        for (int i = 0; i < SID_LENGTH / 2; i ++) {
+            value = (value << 4) | DIGITS[sid.charAt(offset + i)];
+        }
+        return value;
+    }
+
+    /**
+     * Adds a session by its current ID, replacing any session with the same
+     * ID.
+     *
+     * @param session	the session.
+     * @return false if the session has no valid ID.
+     */
+    public boolean put(Session session) {
+        String sid = session.getSid();
+        if (!isValid(sid)) {
+            return false;
+        }
+        long high = parseHalf(sid, 0), low = parseHalf(sid, SID_LENGTH / 2);
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 4 > values.length * 3) {
+                resize(values.length * 2);
+            }
+            int i = find(keys, values, high, low);
+            if (values[i] == null) {
+                this.size ++;
+            }
+            keys[2 * i] = high;
+            keys[2 * i + 1] = low;
+            values[i] = session;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the session with an ID.
+     *
+     * @param sid	the session ID.
+     * @return the session, or null if there is none or the ID is not valid.
+     */
+    public Session get(CharSequence sid) {
+        if (!isValid(sid)) {
+            return null;
+        }
+        return get(parseHalf(sid, 0), parseHalf(sid, SID_LENGTH / 2));
+    }
+
+    /**
+     * Gets the session with an ID.
+     *
+     * @param high	the high half of the ID.
+     * @param low	the low half of the ID.
+     * @return the session, or null if there is none.
+     */
+    public Session get(long high, long low) {
+        long stamp = lock.tryOptimisticRead();
+        Session session = lookup(high, low);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                session = lookup(high, low);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return session;
+    }
+
+    private Session lookup(long high, long low) {
+        long[] k = keys;
+        Session[] v = values;
+        if (k.length != v.length * 2) {
+            return null;
+        }
+        int i = find(k, v, high, low);
+        return (((k[2 * i] ^ high) | (k[2 * i + 1] ^ low)) == 0)? v[i] : null;
+    }
+
+    /**
+     * Removes a session if it is still the one with an ID.
+     *
+     * @param sid		the session ID.
+     * @param session	the session.
+     * @return true if it was removed.
+     */
+    public boolean remove(CharSequence sid, Session session) {
+        if (!isValid(sid)) {
+            return false;
+        }
+        long high = parseHalf(sid, 0), low = parseHalf(sid, SID_LENGTH / 2);
+        long stamp = lock.writeLock();
+        try {
+            int i = find(keys, values, high, low);
+            if (values[i] == null || values[i] != session) {
+                return false;
+            }
+
+            // Shift the following entries back over the hole
+            int mask = values.length - 1;
+            int hole = i;
+            for (int j = (i + 1) & mask; values[j] != null;
+                    j = (j + 1) & mask) {
+                int home = slot(keys[2 * j], keys[2 * j + 1], mask);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[2 * hole] = keys[2 * j];
+                    keys[2 * hole + 1] = keys[2 * j + 1];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            values[hole] = null;
+            this.size --;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the number of sessions.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Finds the slot of an ID, or the empty slot it would go in. The
+     * comparison does not stop at the first differing half.
+     */
+    private static int find(long[] keys, Session[] values, long high,
+                            long low) {
+        int mask = values.length - 1;
+        int i = slot(high, low, mask);
+        for (int n = 0; n <= mask && values[i] != null; n ++) {
+            if (((keys[2 * i] ^ high) | (keys[2 * i + 1] ^ low)) == 0) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static int slot(long high, long low, int mask) {
+        long h = (high ^ (low * 0x9E3779B97F4A7C15L));
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Session[] oldValues = values;
+        long[] newKeys = new long[capacity * 2];
+        Session[] newValues = new Session[capacity];
+        for (int i = 0; i < oldValues.length; i ++) {
+            if (oldValues[i] != null) {
+                long high = oldKeys[2 * i], low = oldKeys[2 * i + 1];
+                int j = find(newKeys, newValues, high, low);
+                newKeys[2 * j] = high;
+                newKeys[2 * j + 1] = low;
+                newValues[j] = oldValues[i];
+            }
+        }
+        this.keys = newKeys;
+        this.values = newValues;
+    }
+}
@@ -0,0 +1,678 @@
+package Silnik;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Model.Gra;
+
+/**
+ * Plays engine configurations against each other without a user interface,
+ * for tuning the computer player. Games are played in parallel, one per
+ * thread, and each opening is played twice with the colours swapped. The
+ * openings are taken from the opening book (or are random moves without one).
+ * <p>
+ * The results are summed up as an Elo difference, and the match can be run
+ * as a sequential probability ratio test (SPRT) that stops once it is clear
+ * whether the first engine is {@code elo1} stronger than the second rather
+ * than only {@code elo0}. Games can be written to an {@link ArenaLog}.
+ */
+public class Arena {
+
+    /** The number of plies after which a game is a draw. */
+    public static final int MAX_PLIES = 200;
+
+    /** The default number of plies taken from the book for an opening. */
+    public static final int DEFAULT_OPENING_PLIES = 6;
+
+    /** The number of games between progress reports. */
+    private static final int REPORT_GAMES = 20;
+
+    /** The number of games before the SPRT may stop the match, as the normal
+     * approximation of its ratio is poor for only a few games. */
+    private static final int SPRT_MIN_GAMES = 40;
+
+    /** The two engines playing. */
+    private final Engine[] engines;
+
+    /** The number of games to play (rounded up to an even number). */
+    private int games = 100;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private OpeningBook book;
+
+    private int openingPlies = DEFAULT_OPENING_PLIES;
+
+    private EndgameTablebase tablebase;
+
+    /** The log to write games to, or null for none. */
+    private ArenaLog.Writer log;
+
+    /** The SPRT hypotheses (Elo), used if {@link #sprt} is set. */
+    private double elo0, elo1;
+
+    private boolean sprt;
+
+    /** The error rates of the SPRT. */
+    private double alpha = 0.05, beta = 0.05;
+
+    private long seed = System.nanoTime();
+
+    private Listener listener;
+
+    private final Stats stats = new Stats();
+
+    private volatile boolean stop;
+
+    public Arena(Engine first, Engine second) {
+        this.engines = new Engine[] {first, second};
+    }
+
+    /**
+     * Plays the match on the arena's threads and waits for it to finish.
+     *
+     * @return the results for the first engine.
+     */
+    public Stats run() {
+        final int pairs = (games + 1) / 2;
+        final AtomicInteger next = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < Math.max(1, threads); t ++) {
+            final int table = t;
+            Thread w = new Thread(() -> {
+                Table tab = new Table(table);
+                try {
+                    int pair;
+                    while (!stop && (pair = next.getAndIncrement()) < pairs) {
+                        long[] opening = opening(
+                                new SplittableRandom(seed + pair));
+                        for (int black = 0; black < 2 && !stop; black ++) {
+                            play(tab, opening, black);
+                        }
+                    }
+                } finally {
+                    tab.close();
+                }
+            }, "arena-" + t);
+            w.setDaemon(true);
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+                break;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Tells a running match to stop after the games being played.
+     */
+    public void stop() {
+        this.stop = true;
+    }
+
+    /**
+     * Gets an opening: moves from the book, or random moves if there is no
+     * book or it has no moves for a position.
+     */
+    private long[] opening(SplittableRandom random) {
+        Position pos = new Position();
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        long[] opening = new long[openingPlies];
+        int len = 0;
+        while (len < openingPlies) {
+            long m = (book == null)? PackedMove.NONE : book.lookup(pos, random);
+            if (m == PackedMove.NONE) {
+                int n = MoveGenerator.generate(pos, moves, 0);
+                if (n == 0) {
+                    break;
+                }
+                m = moves[random.nextInt(n)];
+            }
+            opening[len ++] = m;
+            pos.make(m);
+        }
+        return (len == openingPlies)? opening : Arrays.copyOf(opening, len);
+    }
+
+    /**
+     * Plays one game on a table and records it.
+     *
+     * @param tab		the table of the thread playing the game.
+     * @param opening	the moves of the opening.
+     * @param black		the engine playing black.
+     */
+    private void play(Table tab, long[] opening, int black) {
+        Position pos = tab.position;
+        pos.reset();
+        tab.newGame();
+        long[] moves = tab.moves;
+        byte[] record = tab.record;
+        int plies = 0, result = ArenaLog.DRAW;
+        while (plies < MAX_PLIES) {
+            int n = MoveGenerator.generate(pos, moves, 0);
+            if (n == 0) {
+                result = pos.isBlackToMove()?
+                        ArenaLog.WHITE_WIN : ArenaLog.BLACK_WIN;
+                break;
+            }
+
+            // Take the move from the opening or the engine to move
+            long move;
+            if (plies < opening.length) {
+                move = opening[plies];
+            } else {
+                int engine = pos.isBlackToMove()? black : 1 - black;
+                move = tab.move(engine, pos.copy());
+            }
+            int index = 0;
+            while (index < n && moves[index] != move) {
+                index ++;
+            }
+            if (index == n) {
+                throw new IllegalStateException("Illegal move "
+                        + PackedMove.toString(move));
+            }
+            record[plies ++] = (byte) index;
+            pos.make(move);
+            if (listener != null) {
+                listener.update(tab.index, pos, false);
+            }
+
+            // Stop drawn games early
+            if (pos.repetitions() >= Gra.DRAW_REPETITIONS
+                    || pos.getQuietPlies() >= 2 * Gra.DEFAULT_DRAW_MOVES) {
+                break;
+            }
+        }
+        if (listener != null) {
+            listener.update(tab.index, pos, true);
+        }
+
+        // Record the result for the first engine
+        int score = (result == ArenaLog.DRAW)? 0
+                : ((result == ArenaLog.BLACK_WIN) == (black == 0))? 1 : -1;
+        if (log != null) {
+            try {
+                log.write(black, result, opening.length, record, plies);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        record(score);
+    }
+
+    /**
+     * Adds a result, reports the progress and checks the SPRT.
+     */
+    private synchronized void record(int score) {
+        stats.add(score);
+        int n = stats.getGames();
+        boolean done = false;
+        if (sprt && n >= SPRT_MIN_GAMES && !stop) {
+            double llr = stats.llr(elo0, elo1);
+            done = llr <= Math.log(beta / (1 - alpha))
+                    || llr >= Math.log((1 - beta) / alpha);
+        }
+        if ((n % REPORT_GAMES == 0 || done) && listener != null) {
+            listener.progress(stats);
+        }
+        if (done) {
+            stop();
+        }
+    }
+
+    /**
+     * Gets a line with the current results.
+     */
+    public String report() {
+        String line = String.format("Games %d: +%d -%d =%d  Elo %.1f +/- %.1f",
+                stats.getGames(), stats.getWins(), stats.getLosses(),
+                stats.getDraws(), stats.elo(), stats.eloError());
+        if (sprt) {
+            line += String.format("  LLR %.2f (%.2f, %.2f)",
+                    stats.llr(elo0, elo1), Math.log(beta / (1 - alpha)),
+                    Math.log((1 - beta) / alpha));
+        }
+        return line;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    public Engine[] getEngines() {
+        return engines.clone();
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public void setGames(int games) {
+        this.games = Math.max(1, games);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public void setOpeningPlies(int openingPlies) {
+        this.openingPlies = Math.max(0, Math.min(255, openingPlies));
+    }
+
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public void setLog(ArenaLog.Writer log) {
+        this.log = log;
+    }
+
+    /**
+     * Makes the match a sequential probability ratio test.
+     *
+     * @param elo0	the Elo difference of the null hypothesis.
+     * @param elo1	the Elo difference of the alternative hypothesis.
+     * @param alpha	the chance of accepting elo1 when elo0 is true.
+     * @param beta	the chance of accepting elo0 when elo1 is true.
+     */
+    public void setSprt(double elo0, double elo1, double alpha, double beta) {
+        this.sprt = true;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Receives each position of the games being played, for showing them,
+     * and the results every few games.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the thread playing a game after each move. The position
+         * is changed once this returns, so anything needed must be copied.
+         *
+         * @param table		the index of the thread playing the game.
+         * @param pos		the position after the move.
+         * @param gameOver	the flag indicating if the game has ended.
+         */
+        void update(int table, Position pos, boolean gameOver);
+
+        /**
+         * Called on the thread that finished a game every
+         * {@value Arena#REPORT_GAMES} games, and when the SPRT ends the
+         * match.
+         *
+         * @param stats	the results so far.
+         */
+        void progress(Stats stats);
+    }
+
+    /**
+     * An engine configuration: an alpha-beta search with a depth, time and
+     * table size, or a Monte Carlo tree search with a time.
+     */
+    public static class Engine {
+
+        private final String name;
+
+        private final boolean mcts;
+
+        private final int depth;
+
+        private final long time;
+
+        private final int hashMb;
+
+        public Engine(String name, boolean mcts, int depth, long time,
+                      int hashMb) {
+            this.name = name;
+            this.mcts = mcts;
+            this.depth = depth;
+            this.time = time;
+            this.hashMb = hashMb;
+        }
+
+        /**
+         * Parses an engine from the command line, such as
+         * {@code ab:depth=8,time=100,hash=16} or {@code mcts:time=50}. A
+         * time of 0 searches to the depth without a time limit.
+         *
+         * @param spec	the engine specification.
+         * @return the engine.
+         * @throws IllegalArgumentException if the specification is invalid.
+         */
+        public static Engine parse(String spec) {
+            String[] parts = spec.split(":", 2);
+            boolean mcts = parts[0].equalsIgnoreCase("mcts");
+            if (!mcts && !parts[0].equalsIgnoreCase("ab")) {
+                throw new IllegalArgumentException("Unknown engine: " + spec);
+            }
+            String name = spec;
+            int depth = Search.MAX_PLY - 1, hash = 16;
+            long time = 100;
+            if (parts.length > 1) {
+                for (String option : parts[1].split(",")) {
+                    String[] kv = option.split("=", 2);
+                    String value = kv.length > 1? kv[1] : "";
+                    switch (kv[0]) {
+                        case "depth":
+                            depth = Integer.parseInt(value);
+                            break;
+                        case "time":
+                            time = Long.parseLong(value);
+                            break;
+                        case "hash":
+                            hash = Integer.parseInt(value);
+                            break;
+                        case "name":
+                            name = value;
+                            break;
+                        default:
+                            throw new IllegalArgumentException(
+                                    "Unknown engine option: " + option);
+                    }
+                }
+            }
+            return new Engine(name, mcts, depth, time, hash);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The engines and buffers of one thread, reused for each of its games.
+     */
+    private class Table {
+
+        private final int index;
+
+        private final Search[] searches = new Search[2];
+
+        private final MctsSearch[] trees = new MctsSearch[2];
+
+        private final Position position = new Position();
+
+        private final long[] moves = new long[MoveGenerator.MAX_MOVES];
+
+        private final byte[] record = new byte[MAX_PLIES];
+
+        private Table(int index) {
+            this.index = index;
+            for (int i = 0; i < 2; i ++) {
+                Engine e = engines[i];
+                if (e.mcts) {
+                    trees[i] = new MctsSearch(1 << 18, 1);
+                } else {
+                    searches[i] = new Search(new TranspositionTable(e.hashMb));
+                    searches[i].setTablebase(tablebase);
+                }
+            }
+        }
+
+        /**
+         * Stops the threads of the tree searches once the table is done.
+         */
+        private void close() {
+            for (MctsSearch tree : trees) {
+                if (tree != null) {
+                    tree.close();
+                }
+            }
+        }
+
+        /**
+         * Clears what the engines remember from the last game.
+         */
+        private void newGame() {
+            for (Search s : searches) {
+                if (s != null) {
+                    s.getTranspositionTable().clear();
+                }
+            }
+        }
+
+        private long move(int engine, Position pos) {
+            Engine e = engines[engine];
+            if (e.mcts) {
+                return trees[engine].search(pos, e.time);
+            } else if (e.time > 0) {
+                return searches[engine].search(pos, e.depth,
+                        TimeManager.forMove(e.time));
+            }
+            return searches[engine].search(pos, e.depth, 0);
+        }
+    }
+
+    /**
+     * The results of a match for the first engine.
+     */
+    public static class Stats {
+
+        private int wins, losses, draws;
+
+        /**
+         * Adds a result: 1 for a win, -1 for a loss and 0 for a draw.
+         */
+        public synchronized void add(int score) {
+            if (score > 0) {
+                wins ++;
+            } else if (score < 0) {
+                losses ++;
+            } else {
+                draws ++;
+            }
+        }
+
+        public synchronized int getWins() {
+            return wins;
+        }
+
+        public synchronized int getLosses() {
+            return losses;
+        }
+
+        public synchronized int getDraws() {
+            return draws;
+        }
+
+        public synchronized int getGames() {
+            return wins + losses + draws;
+        }
+
+        /**
+         * Gets the average score per game (1 for a win, 1/2 for a draw).
+         */
+        public synchronized double score() {
+            int n = getGames();
+            return n == 0? 0.5 : (wins + draws / 2.0) / n;
+        }
+
+        /**
+         * Gets the Elo difference matching the score.
+         */
+        public double elo() {
+            return elo(score());
+        }
+
+        /**
+         * Gets half the width of the 95% confidence interval of the Elo
+         * difference.
+         */
+        public synchronized double eloError() {
+            int n = getGames();
+            if (n == 0) {
+                return 0;
+            }
+            double s = score();
+            double se = Math.sqrt(variance(s) / n);
+            return (elo(s + 1.96 * se) - elo(s - 1.96 * se)) / 2;
+        }
+
+        /**
+         * Gets the log-likelihood ratio of elo1 against elo0, using the normal
+         * approximation of the score per game.
+         */
+        public synchronized double llr(double elo0, double elo1) {
+            int n = getGames();
+            double s = score(), var = variance(s);
+            if (n == 0 || var == 0) {
+                return 0;
+            }
+            double s0 = expected(elo0), s1 = expected(elo1);
+            return n * (s1 - s0) * (2 * s - s0 - s1) / (2 * var);
+        }
+
+        /**
+         * Gets the variance of the score of one game.
+         */
+        private double variance(double s) {
+            int n = getGames();
+            return (wins * (1 - s) * (1 - s) + losses * s * s
+                    + draws * (0.5 - s) * (0.5 - s)) / n;
+        }
+
+        /**
+         * Converts a score to an Elo difference.
+         */
+        public static double elo(double score) {
+            score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        /**
+         * Converts an Elo difference to the expected score.
+         */
+        public static double expected(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+    }
+
+    /**
+     * Parses an arena from the command line:
+     * {@code Arena <engine> <engine> [-games n] [-threads t] [-book file]
+     * [-plies p] [-tablebase dir] [-log file] [-sprt elo0 elo1] [-seed s]}
+     *
+     * @return the arena, or null if the arguments are invalid (the usage is
+     * printed).
+     * @throws IOException if a file cannot be opened.
+     */
+    public static Arena parse(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: Arena <engine> <engine> [-games n]"
+                    + " [-threads t] [-book file] [-plies p] [-tablebase dir]"
+                    + " [-log file] [-sprt elo0 elo1] [-seed s]");
+            System.err.println("Engines: ab[:depth=d,time=ms,hash=mb,name=n]"
+                    + " or mcts[:time=ms,name=n]");
+            return null;
+        }
+        Arena arena = new Arena(Engine.parse(args[0]), Engine.parse(args[1]));
+        Path logFile = null;
+        for (int i = 2; i < args.length; i ++) {
+            switch (args[i]) {
+                case "-games":
+                    arena.setGames(Integer.parseInt(args[++ i]));
+                    break;
+                case "-threads":
+                    arena.setThreads(Integer.parseInt(args[++ i]));
+                    break;
+                case "-book":
+                    arena.setBook(OpeningBook.open(Paths.get(args[++ i])));
+                    break;
+                case "-plies":
+                    arena.setOpeningPlies(Integer.parseInt(args[++ i]));
+                    break;
+                case "-tablebase":
+                    arena.setTablebase(EndgameTablebase.open(
+                            Paths.get(args[++ i])));
+                    break;
+                case "-log":
+                    logFile = Paths.get(args[++ i]);
+                    break;
+                case "-sprt":
+                    arena.setSprt(Double.parseDouble(args[++ i]),
+                            Double.parseDouble(args[++ i]), 0.05, 0.05);
+                    break;
+                case "-seed":
+                    arena.setSeed(Long.parseLong(args[++ i]));
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return null;
+            }
+        }
+        if (logFile != null) {
+            arena.setLog(new ArenaLog.Writer(logFile, new String[] {
+                    arena.engines[0].name, arena.engines[1].name}));
+        }
+        return arena;
+    }
+
+    /**
+     * Runs a match from the command line (see {@link #parse(String[])}).
+     */
+    public static void main(String[] args) throws IOException {
+        final Arena arena = parse(args);
+        if (arena == null) {
+            return;
+        }
+        arena.setListener(new Listener() {
+
+            @Override
+            public void update(int table, Position pos, boolean gameOver) {}
+
+            @Override
+            public void progress(Stats stats) {
+                System.out.println(arena.report());
+            }
+        });
+        long start = System.currentTimeMillis();
+        arena.run();
+        if (arena.log != null) {
+            arena.log.close();
+        }
+        long ms = System.currentTimeMillis() - start;
+        System.out.println(arena.report());
+        System.out.printf("%s vs %s: %d games in %.1f s (%.0f games/hour)%n",
+                arena.engines[0], arena.engines[1], arena.stats.getGames(),
+                ms / 1000.0, arena.stats.getGames() * 3600000.0 / Math.max(1, ms));
+    }
+}
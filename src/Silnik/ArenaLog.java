@@ -0,0 +1,143 @@
+package Silnik;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The compact game log written by the {@link Arena}. Moves are not stored
+ * as squares but as their index in the list from {@link MoveGenerator},
+ * which is one byte per move and is replayed by generating the moves again.
+ * <p>
+ * The file starts with int magic, int version, a short with the number of
+ * engines and each engine name (modified UTF-8). Each game is then a byte
+ * with the engine playing black, a byte with the result (0 draw, 1 black
+ * won, 2 white won), a byte with the number of opening plies, a short with
+ * the number of plies and one byte per ply.
+ */
+public final class ArenaLog {
+
+    /** The magic number at the start of the file ("WARL"). */
+    public static final int MAGIC = 0x5741524C;
+
+    public static final int VERSION = 1;
+
+    public static final int DRAW = 0, BLACK_WIN = 1, WHITE_WIN = 2;
+
+    private ArenaLog() {}
+
+    /**
+     * Reads every game in a log.
+     *
+     * @param file		the log file.
+     * @param visitor	the visitor called for each game.
+     * @throws IOException if the file cannot be read or is not a log.
+     */
+    public static void read(Path file, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an arena log: " + file);
+            }
+            String[] engines = new String[in.readShort()];
+            for (int i = 0; i < engines.length; i ++) {
+                engines[i] = in.readUTF();
+            }
+
+            // Replay each game
+            Position pos = new Position();
+            long[] buffer = new long[MoveGenerator.MAX_MOVES];
+            while (true) {
+                int black;
+                try {
+                    black = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int result = in.readUnsignedByte();
+                int openingPlies = in.readUnsignedByte();
+                long[] moves = new long[in.readUnsignedShort()];
+                pos.reset();
+                for (int i = 0; i < moves.length; i ++) {
+                    int index = in.readUnsignedByte();
+                    int n = MoveGenerator.generate(pos, buffer, 0);
+                    if (index >= n) {
+                        throw new IOException("Illegal move in " + file);
+                    }
+                    moves[i] = buffer[index];
+                    pos.make(moves[i]);
+                }
+                visitor.game(engines, black, result, openingPlies, moves);
+            }
+        }
+    }
+
+    /**
+     * Receives the games read from a log.
+     */
+    public interface Visitor {
+
+        /**
+         * Handles one game.
+         *
+         * @param engines		the names of the engines in the log.
+         * @param black			the engine that played black.
+         * @param result		the result ({@link #DRAW}, {@link #BLACK_WIN}
+         * or {@link #WHITE_WIN}).
+         * @param openingPlies	the number of plies of the opening.
+         * @param moves			the moves of the game.
+         */
+        void game(String[] engines, int black, int result, int openingPlies,
+                  long[] moves);
+    }
+
+    /**
+     * Appends games to a new log. Games may be written from several threads.
+     */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        public Writer(Path file, String[] engines) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeShort(engines.length);
+            for (String e : engines) {
+                out.writeUTF(e);
+            }
+        }
+
+        /**
+         * Writes one game.
+         *
+         * @param black			the engine that played black.
+         * @param result		the result of the game.
+         * @param openingPlies	the number of plies of the opening.
+         * @param moves			the index of each move in the generated list.
+         * @param plies			the number of moves.
+         * @throws IOException if the game cannot be written.
+         */
+        public synchronized void write(int black, int result, int openingPlies,
+                                       byte[] moves, int plies)
+                throws IOException {
+            out.writeByte(black);
+            out.writeByte(result);
+            out.writeByte(openingPlies);
+            out.writeShort(plies);
+            out.write(moves, 0, plies);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package Silnik;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import Model.Gra;
+import Zapis.PdnReader;
+
+/**
+ * Scores many positions at once for bulk analysis. The positions are split
+ * over a work-stealing {@link ForkJoinPool}, each worker thread searching
+ * with its own {@link Search} while all of them share one
+ * {@link TranspositionTable}. Every result is passed to a listener as soon as
+ * its position is done, so results stream back in the order they complete,
+ * not the order they were given in.
+ * <p>
+ * The positions are given packed two longs each (see
+ * {@link Position#pack(long[], int)}) so millions of them can be held without
+ * millions of objects, or as {@link Gra#getGameState()} strings.
+ */
+public class BatchEvaluator implements AutoCloseable {
+
+    /** The default depth each position is searched to. */
+    public static final int DEFAULT_DEPTH = 8;
+
+    /** The number of positions below which a range is not split further. */
+    private static final int SPLIT_SIZE = 8;
+
+    /**
+     * Receives the results. It is called from the worker threads, so it
+     * must be thread-safe.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a position has been searched.
+         *
+         * @param index	the index of the position in the batch.
+         * @param score	the score for the side to move (see
+         * {@link Search#MATE}).
+         * @param move	the best move, or {@link PackedMove#NONE} if there
+         * are no legal moves.
+         */
+        void result(int index, int score, long move);
+    }
+
+    private final ForkJoinPool pool;
+
+    private final TranspositionTable tt;
+
+    /** The search of each worker thread. */
+    private final ThreadLocal<Search> searches;
+
+    private int depth = DEFAULT_DEPTH;
+
+    /** The time allowed per position (in ms), or 0 for no limit. */
+    private long timePerPosition;
+
+    public BatchEvaluator() {
+        this(Runtime.getRuntime().availableProcessors(), 64, null);
+    }
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param threads	the number of worker threads.
+     * @param hashMb	the size of the shared transposition table.
+     * @param tablebase	the endgame tablebase to probe, or null for none.
+     */
+    public BatchEvaluator(int threads, int hashMb,
+                          final EndgameTablebase tablebase) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.tt = new TranspositionTable(hashMb);
+        this.searches = ThreadLocal.withInitial(() -> {
+            Search s = new Search(tt);
+            s.setTablebase(tablebase);
+            return s;
+        });
+    }
+
+    /**
+     * Scores packed positions, waiting until all of them are done.
+     *
+     * @param positions	the positions, two longs each.
+     * @param listener	the listener to pass each result to.
+     */
+    public void evaluate(long[] positions, Listener listener) {
+        submit(positions, listener).join();
+    }
+
+    /**
+     * Scores packed positions in the background.
+     *
+     * @param positions	the positions, two longs each (not to be changed
+     * until the task is done).
+     * @param listener	the listener to pass each result to.
+     * @return the task, which is done once every result was passed on.
+     */
+    public ForkJoinTask<Void> submit(long[] positions, Listener listener) {
+        return pool.submit(new Batch(positions, 0, positions.length / 2,
+                listener));
+    }
+
+    /**
+     * Scores positions given as game state strings, waiting until all of
+     * them are done.
+     *
+     * @param states	the game states.
+     * @param listener	the listener to pass each result to.
+     */
+    public void evaluate(String[] states, Listener listener) {
+        evaluate(pack(states), listener);
+    }
+
+    /**
+     * Packs positions given as game state strings.
+     *
+     * @param states	the game states.
+     * @return the packed positions, two longs each.
+     */
+    public static long[] pack(String[] states) {
+        long[] packed = new long[states.length * 2];
+        Position pos = new Position();
+        for (int i = 0; i < states.length; i ++) {
+            pos.set(new Gra(states[i]));
+            pos.pack(packed, i * 2);
+        }
+        return packed;
+    }
+
+    /**
+     * Searches one position on the calling worker thread.
+     */
+    private void evaluate(long[] positions, int index, Position pos,
+                          Listener listener) {
+        pos.unpack(positions, index * 2);
+        Search search = searches.get();
+        long move = search.search(pos, depth, timePerPosition);
+        int score = (move == PackedMove.NONE)? -Search.MATE
+                : search.getBestScore();
+        listener.result(index, score, move);
+    }
+
+    /**
+     * A range of positions, split in half until it is small enough to be
+     * searched by one worker. Idle workers steal the halves not yet started.
+     */
+    private class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] positions;
+
+        private final int from, to;
+
+        private final Listener listener;
+
+        Batch(long[] positions, int from, int to, Listener listener) {
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(positions, from, middle, listener),
+                        new Batch(positions, middle, to, listener));
+                return;
+            }
+            Position pos = new Position();
+            for (int i = from; i < to; i ++) {
+                evaluate(positions, i, pos, listener);
+            }
+        }
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = Math.max(1, depth);
+    }
+
+    public long getTimePerPosition() {
+        return timePerPosition;
+    }
+
+    /**
+     * Sets the time allowed for each position. The best move of the last
+     * completed iteration is used when it runs out.
+     *
+     * @param timePerPosition	the time in ms, or 0 for no limit.
+     */
+    public void setTimePerPosition(long timePerPosition) {
+        this.timePerPosition = Math.max(0, timePerPosition);
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stops the worker threads once the running batches are done.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Scores the positions in a file (or the standard input), one game state
+     * string or PDN FEN per line, and writes "index score move" lines as the
+     * results come in:
+     * {@code BatchEvaluator [file] [-threads t] [-depth d] [-hash mb]
+     * [-time ms]}
+     */
+    public static void main(String[] args) throws IOException {
+        String file = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = DEFAULT_DEPTH, hashMb = 64;
+        long time = 0;
+        for (int i = 0; i < args.length; i ++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++ i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++ i]);
+                    break;
+                case "-hash":
+                    hashMb = Integer.parseInt(args[++ i]);
+                    break;
+                case "-time":
+                    time = Long.parseLong(args[++ i]);
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+
+        // Read the positions
+        List<Gra> games = new ArrayList<>();
+        try (BufferedReader in = (file == null)? new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Gra game = line.contains(":")? PdnReader.parseFen(line)
+                        : new Gra(line);
+                if (game != null) {
+                    games.add(game);
+                }
+            }
+        }
+        final long[] positions = new long[games.size() * 2];
+        Position pos = new Position();
+        for (int i = 0; i < games.size(); i ++) {
+            pos.set(games.get(i));
+            pos.pack(positions, i * 2);
+        }
+
+        // Score them, printing the results as they come
+        long start = System.currentTimeMillis();
+        try (BatchEvaluator evaluator = new BatchEvaluator(threads, hashMb,
+                null)) {
+            evaluator.setDepth(depth);
+            evaluator.setTimePerPosition(time);
+            evaluator.evaluate(positions, (index, score, move) -> {
+                Position p = new Position();
+                p.unpack(positions, index * 2);
+                String text = index + " " + score + " "
+                        + (move == PackedMove.NONE? "none"
+                        : Notation.format(p, move));
+                synchronized (System.out) {
+                    System.out.println(text);
+                }
+            });
+        }
+        long ms = Math.max(1, System.currentTimeMillis() - start);
+        System.err.printf("%d positions in %.1f s (%.0f positions/s)%n",
+                games.size(), ms / 1000.0, games.size() * 1000.0 / ms);
+    }
+}
@@ -0,0 +1,255 @@
+package Silnik;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Probes the endgame tablebase files written by {@link TablebaseGenerator}.
+ * Each material signature has two files, memory-mapped on first use:
+ * <ul>
+ *  <li>{@code <signature>.wld} with 2 bits per position (draw, win or loss
+ *  for the side to move),</li>
+ *  <li>{@code <signature>.dtw} with 1 byte per position: the number of plies
+ *  until the game is won or lost, saturated at 255.</li>
+ * </ul>
+ * Both start with a 16 byte header: int magic, int signature, long count.
+ * The tablebase is safe to use from several threads.
+ */
+public class EndgameTablebase {
+
+    /** The magic number at the start of each tablebase file ("WTB1"). */
+    public static final int MAGIC = 0x57544231;
+
+    /** The number of bytes before the data in each file. */
+    public static final int HEADER_SIZE = 16;
+
+    /** The probe result when the position is not in the tablebase. */
+    public static final int UNKNOWN = -1;
+
+    public static final int DRAW = 0;
+
+    public static final int WIN = 1;
+
+    public static final int LOSS = 2;
+
+    /** The directory with the tablebase files. */
+    private final Path dir;
+
+    /** The loaded tables (a table with no files is kept as {@link #MISSING}). */
+    private final ConcurrentHashMap<Integer, Table> tables =
+            new ConcurrentHashMap<>();
+
+    /** The largest number of pieces of any table in the directory. */
+    private final int maxPieces;
+
+    private static final Table MISSING = new Table(null, null, null);
+
+    private EndgameTablebase(Path dir, int maxPieces) {
+        this.dir = dir;
+        this.maxPieces = maxPieces;
+    }
+
+    /**
+     * Opens a tablebase directory. The tables are mapped when first probed.
+     *
+     * @param dir	the directory with the tablebase files.
+     * @return the tablebase.
+     * @throws IOException if the directory cannot be read.
+     */
+    public static EndgameTablebase open(Path dir) throws IOException {
+        int max = 0;
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files =
+                         Files.newDirectoryStream(dir, "*.wld")) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    try {
+                        int sig = Integer.parseInt(
+                                name.substring(0, name.length() - 4), 16);
+                        max = Math.max(max, TablebaseIndex.pieces(sig));
+                    } catch (NumberFormatException e) {}
+                }
+            }
+        }
+        return new EndgameTablebase(dir, max);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param pos	the position to look up.
+     * @return {@link #UNKNOWN}, or the result and distance packed as
+     * {@code result << 16 | distance}.
+     * @see {@link #result(int)}, {@link #distance(int)}
+     */
+    public int probe(Position pos) {
+        if (pos.getForcedFrom() >= 0 || pos.pieceCount() > maxPieces) {
+            return UNKNOWN;
+        }
+        if (pos.isBlackToMove()) {
+            return probe(pos.getBlack(), pos.getWhite(), pos.getKings());
+        }
+        return probe(TablebaseIndex.flip(pos.getWhite()),
+                TablebaseIndex.flip(pos.getBlack()),
+                TablebaseIndex.flip(pos.getKings()));
+    }
+
+    /**
+     * Looks up a position with black to move.
+     *
+     * @param black	the mask of black checkers and kings.
+     * @param white	the mask of white checkers and kings.
+     * @param kings	the mask of kings.
+     * @return {@link #UNKNOWN}, or the result and distance.
+     */
+    public int probe(int black, int white, int kings) {
+        if (black == 0) {
+            return LOSS << 16;
+        }
+        Table t = table(TablebaseIndex.signatureOf(black, white, kings));
+        if (t == MISSING) {
+            return UNKNOWN;
+        }
+        long i = t.index.index(black, white, kings);
+        int code = (t.wld.get(HEADER_SIZE + (int) (i >>> 2))
+                >>> ((int) (i & 3) * 2)) & 3;
+        int dist = t.dtw.get(HEADER_SIZE + (int) i) & 0xFF;
+        return (code << 16) | dist;
+    }
+
+    public static int result(int probe) {
+        return probe >>> 16;
+    }
+
+    public static int distance(int probe) {
+        return probe & 0xFFFF;
+    }
+
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Checks if the tables for a signature are in the directory.
+     */
+    public boolean has(int signature) {
+        return table(signature) != MISSING;
+    }
+
+    private Table table(int signature) {
+        return tables.computeIfAbsent(signature, this::load);
+    }
+
+    private Table load(int signature) {
+        Path wld = dir.resolve(fileName(signature, "wld"));
+        Path dtw = dir.resolve(fileName(signature, "dtw"));
+        if (!Files.isRegularFile(wld) || !Files.isRegularFile(dtw)) {
+            return MISSING;
+        }
+        try {
+            return new Table(new TablebaseIndex(signature), map(wld, signature),
+                    map(dtw, signature));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return MISSING;
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, int signature)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                    0, ch.size());
+            buf.order(ByteOrder.BIG_ENDIAN);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != signature) {
+                throw new IOException("Not a tablebase file: " + file);
+            }
+            return buf;
+        }
+    }
+
+    /**
+     * Gets the file name for a signature.
+     */
+    static String fileName(int signature, String extension) {
+        return String.format("%04x.%s", signature, extension);
+    }
+
+    /**
+     * Writes the files for one signature. The values are encoded as by
+     * {@link TablebaseGenerator}: positive for a win in that many plies,
+     * negative for a loss in {@code -value - 1} plies, anything else a draw.
+     *
+     * @param dir		the tablebase directory.
+     * @param signature	the signature of the table.
+     * @param values	the value of each position.
+     * @throws IOException if the files cannot be written.
+     */
+    static void write(Path dir, int signature, short[] values)
+            throws IOException {
+        Files.createDirectories(dir);
+        try (DataOutputStream wld = open(dir, signature, "wld", values.length);
+             DataOutputStream dtw = open(dir, signature, "dtw", values.length)) {
+            int packed = 0;
+            for (int i = 0; i < values.length; i ++) {
+                short v = values[i];
+                int code = DRAW, dist = 0;
+                if (v > 0 && v != Short.MAX_VALUE) {
+                    code = WIN;
+                    dist = v;
+                } else if (v < 0) {
+                    code = LOSS;
+                    dist = -v - 1;
+                }
+                packed |= code << ((i & 3) * 2);
+                if ((i & 3) == 3 || i == values.length - 1) {
+                    wld.writeByte(packed);
+                    packed = 0;
+                }
+                dtw.writeByte(Math.min(dist, 255));
+            }
+        }
+    }
+
+    private static DataOutputStream open(Path dir, int signature,
+                                         String extension, long count)
+            throws IOException {
+        OutputStream os = Files.newOutputStream(
+                dir.resolve(fileName(signature, extension)));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(os, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(signature);
+        out.writeLong(count);
+        return out;
+    }
+
+    /**
+     * The mapped files for one signature.
+     */
+    private static class Table {
+
+        private final TablebaseIndex index;
+
+        private final MappedByteBuffer wld;
+
+        private final MappedByteBuffer dtw;
+
+        private Table(TablebaseIndex index, MappedByteBuffer wld,
+                      MappedByteBuffer dtw) {
+            this.index = index;
+            this.wld = wld;
+            this.dtw = dtw;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package Silnik;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+import Model.Gra;
+import Zapis.PdnReader;
+
+/**
+ * Runs the engine as a headless process driven through a line-based text
+ * protocol on its standard input and output, modelled on UCI, so other
+ * programs (GUIs, bots, tournament runners) can play against it over pipes.
+ * <p>
+ * The commands are:
+ * <ul>
+ *  <li>{@code engine}: replies with the engine's name and options, then
+ *  {@code engineok}.</li>
+ *  <li>{@code isready}: replies {@code readyok} (also while searching).</li>
+ *  <li>{@code setoption name hash value <mb>}: resizes the transposition
+ *  table; {@code setoption name tablebase value <dir>} opens a tablebase.</li>
+ *  <li>{@code newgame}: clears the transposition table and sets the start
+ *  position.</li>
+ *  <li>{@code position (startpos | state <state> | fen <fen>) [moves
+ *  <move>...]}: sets the position, from the start, a
+ *  {@link Gra#getGameState()} string or a PDN FEN, followed by whole-turn
+ *  moves in standard notation.</li>
+ *  <li>{@code go [depth d] [movetime ms] [btime ms] [wtime ms] [binc ms]
+ *  [winc ms] [movestogo n] [infinite] [ponder]}: searches the position. An
+ *  {@code info} line is written for each completed iteration and then
+ *  {@code bestmove <move> [ponder <move>]} (or {@code bestmove none}). An
+ *  infinite or pondering search only writes its best move after
+ *  {@code stop} or {@code ponderhit}.</li>
+ *  <li>{@code ponderhit}: the expected move was played, so the pondering
+ *  search goes on as a normal timed search.</li>
+ *  <li>{@code stop}: ends the search, which writes its best move.</li>
+ *  <li>{@code quit}: stops the search and exits.</li>
+ * </ul>
+ * Invalid input is reported with an {@code info string} line.
+ */
+public class EngineServer {
+
+    /** The name of the engine. */
+    public static final String NAME = "Java Checkers";
+
+    /** How often the info lines of a running search are written (in ms). */
+    private static final long INFO_INTERVAL = 10;
+
+    private final BufferedReader in;
+
+    private final PrintStream out;
+
+    private final SearchInfoRing ring = new SearchInfoRing();
+
+    private final SearchInfoRing.Reader reader = ring.newReader();
+
+    private Search search;
+
+    /** The position to search, with the moves played to reach it. */
+    private Position position = new Position();
+
+    /** The thread of the running search, or null if none was started. */
+    private Thread searchThread;
+
+    /** The flag set while a search runs on the opponent's time. */
+    private boolean pondering;
+
+    /** The time manager of the pondering search, put in force on
+     * {@code ponderhit}, or null for none. */
+    private TimeManager ponderTime;
+
+    /** The flag set while an infinite or pondering search must hold back
+     * its best move. */
+    private boolean holdBestMove;
+
+    private int hashMb = 16;
+
+    public EngineServer(InputStream in, OutputStream out) {
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = new PrintStream(out, false);
+        this.search = newSearch(null);
+    }
+
+    private Search newSearch(EndgameTablebase tablebase) {
+        Search s = new Search(new TranspositionTable(hashMb));
+        s.setInfoRing(ring);
+        s.setTablebase(tablebase);
+        return s;
+    }
+
+    /**
+     * Reads and runs commands until {@code quit} or the end of the input.
+     *
+     * @throws IOException if the input cannot be read.
+     */
+    public void run() throws IOException {
+
+        // Load and initialise the search classes before any clock runs
+        new Search(new TranspositionTable(1)).search(new Position(), 1, 0);
+
+        Thread reporter = new Thread(this::report, "engine-info");
+        reporter.setDaemon(true);
+        reporter.start();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line.trim())) {
+                break;
+            }
+        }
+        stopSearch();
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param line	the command line.
+     * @return false if the server should exit.
+     */
+    boolean handle(String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0].toLowerCase()) {
+            case "":
+                break;
+            case "engine":
+                write("id name " + NAME);
+                write("option name hash type spin default " + hashMb
+                        + " min 1 max 4096");
+                write("option name tablebase type string default <empty>");
+                write("engineok");
+                break;
+            case "isready":
+                write("readyok");
+                break;
+            case "setoption":
+                stopSearch();
+                setOption(words);
+                break;
+            case "newgame":
+                stopSearch();
+                this.search = newSearch(search.getTablebase());
+                this.position = new Position();
+                break;
+            case "position":
+                stopSearch();
+                setPosition(words);
+                break;
+            case "go":
+                stopSearch();
+                go(words);
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "quit":
+                return false;
+            default:
+                write("info string unknown command '" + words[0] + "'");
+        }
+        return true;
+    }
+
+    private void setOption(String[] words) {
+        String name = "", value = "";
+        for (int i = 1; i < words.length - 1; i ++) {
+            if (words[i].equalsIgnoreCase("name")) {
+                name = words[i + 1].toLowerCase();
+            } else if (words[i].equalsIgnoreCase("value")) {
+                value = line(words, i + 1);
+                break;
+            }
+        }
+        try {
+            if (name.equals("hash")) {
+                this.hashMb = Math.max(1, Math.min(4096,
+                        Integer.parseInt(value)));
+                this.search = newSearch(search.getTablebase());
+            } else if (name.equals("tablebase")) {
+                EndgameTablebase tb = value.isEmpty()? null
+                        : EndgameTablebase.open(Paths.get(value));
+                search.setTablebase(tb != null && tb.getMaxPieces() > 0?
+                        tb : null);
+            } else {
+                write("info string unknown option '" + name + "'");
+            }
+        } catch (NumberFormatException e) {
+            write("info string invalid value '" + value + "'");
+        } catch (IOException e) {
+            write("info string cannot open '" + value + "': "
+                    + e.getMessage());
+        }
+    }
+
+    private void setPosition(String[] words) {
+        if (words.length < 2) {
+            write("info string missing position");
+            return;
+        }
+
+        // Get the start position
+        Gra game = null;
+        int i = 2;
+        switch (words[1].toLowerCase()) {
+            case "startpos":
+                game = new Gra();
+                break;
+            case "state":
+                if (words.length > 2) {
+                    game = new Gra(words[2]);
+                    i = 3;
+                }
+                break;
+            case "fen":
+                if (words.length > 2) {
+                    game = PdnReader.parseFen(words[2]);
+                    i = 3;
+                }
+                break;
+        }
+        if (game == null) {
+            write("info string invalid position");
+            return;
+        }
+        Position pos = Position.from(game);
+
+        // Play the moves, keeping them for detecting repetitions
+        if (i < words.length && words[i].equalsIgnoreCase("moves")) {
+            for (i ++; i < words.length; i ++) {
+                long move = Notation.parse(pos, words[i]);
+                if (move == PackedMove.NONE) {
+                    write("info string illegal move '" + words[i] + "'");
+                    return;
+                }
+                pos.make(move);
+            }
+        }
+        this.position = pos;
+    }
+
+    private void go(String[] words) {
+        int depth = Search.MAX_PLY - 1, movesToGo = 0;
+        long moveTime = 0, blackTime = 0, whiteTime = 0;
+        long blackInc = 0, whiteInc = 0;
+        boolean infinite = false, ponder = false;
+        try {
+            for (int i = 1; i < words.length; i ++) {
+                switch (words[i].toLowerCase()) {
+                    case "depth":
+                        depth = Integer.parseInt(words[++ i]);
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(words[++ i]);
+                        break;
+                    case "btime":
+                        blackTime = Long.parseLong(words[++ i]);
+                        break;
+                    case "wtime":
+                        whiteTime = Long.parseLong(words[++ i]);
+                        break;
+                    case "binc":
+                        blackInc = Long.parseLong(words[++ i]);
+                        break;
+                    case "winc":
+                        whiteInc = Long.parseLong(words[++ i]);
+                        break;
+                    case "movestogo":
+                        movesToGo = Integer.parseInt(words[++ i]);
+                        break;
+                    case "infinite":
+                        infinite = true;
+                        break;
+                    case "ponder":
+                        ponder = true;
+                        break;
+                    default:
+                        write("info string unknown go option '"
+                                + words[i] + "'");
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            write("info string invalid go command");
+            return;
+        }
+
+        // Budget the time of the side to move
+        boolean black = position.isBlackToMove();
+        long clock = black? blackTime : whiteTime;
+        TimeManager time = null;
+        if (moveTime > 0) {
+            time = TimeManager.forMove(moveTime);
+        } else if (clock > 0) {
+            time = TimeManager.forClock(clock, black? blackInc : whiteInc,
+                    movesToGo > 0? movesToGo : TimeManager.DEFAULT_MOVES_TO_GO);
+        }
+
+        // Search on a new thread so this one can take stop and ponderhit
+        final Position root = position.copy();
+        final Search s = search;
+        final int maxDepth = Math.max(1, depth);
+        final TimeManager manager = (infinite || time == null)? null
+                : ponder? time.ponder() : time;
+        synchronized (this) {
+            this.holdBestMove = infinite || ponder;
+            this.pondering = ponder;
+            this.ponderTime = ponder? time : null;
+        }
+        this.searchThread = new Thread(() -> {
+            long move = (manager != null)? s.search(root, maxDepth, manager)
+                    : s.search(root, maxDepth, 0);
+            waitForRelease();
+            writeBestMove(s, root, move);
+        }, "engine-search");
+        this.searchThread.start();
+    }
+
+    /**
+     * Turns a pondering search into a timed one. The time spent pondering
+     * counts against the move, as the opponent's clock was running. The
+     * search was given the time manager when it was started, so this takes
+     * hold even if the search thread has not got going yet.
+     */
+    private synchronized void ponderHit() {
+        if (searchThread == null || !pondering) {
+            return;
+        }
+        if (ponderTime != null) {
+            ponderTime.ponderHit();
+        }
+        this.pondering = false;
+        this.ponderTime = null;
+        this.holdBestMove = false;
+        notifyAll();
+    }
+
+    /**
+     * Waits while an infinite or pondering search that has ended by itself
+     * must hold back its best move.
+     */
+    private synchronized void waitForRelease() {
+        while (holdBestMove) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the running search and waits for it to write its best move.
+     * The stop request is repeated in case the search had not started yet
+     * and cleared it.
+     */
+    private void stopSearch() {
+        Thread t = searchThread;
+        if (t == null) {
+            return;
+        }
+        synchronized (this) {
+            this.holdBestMove = false;
+            this.pondering = false;
+            this.ponderTime = null;
+            notifyAll();
+        }
+        while (t.isAlive()) {
+            search.stop();
+            try {
+                t.join(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        this.searchThread = null;
+    }
+
+    private void writeBestMove(Search s, Position root, long move) {
+        writeInfo();
+        if (move == PackedMove.NONE) {
+            write("bestmove none");
+            return;
+        }
+        String line = "bestmove " + Notation.format(root, move);
+        long[] pv = s.getPrincipalVariation(root, 2);
+        if (pv.length == 2 && pv[0] == move) {
+            Position next = root.copy();
+            next.make(move);
+            line += " ponder " + Notation.format(next, pv[1]);
+        }
+        write(line);
+    }
+
+    /**
+     * Writes the info lines of the running search every
+     * {@value #INFO_INTERVAL} ms.
+     */
+    private void report() {
+        while (true) {
+            writeInfo();
+            try {
+                Thread.sleep(INFO_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the info lines published since the last call.
+     */
+    private void writeInfo() {
+        synchronized (out) {
+            SearchInfo info;
+            boolean any = false;
+            while ((info = reader.poll()) != null) {
+                out.println(info);
+                any = true;
+            }
+            if (any) {
+                out.flush();
+            }
+        }
+    }
+
+    private void write(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    /**
+     * Joins the words from an index back into a line.
+     */
+    private static String line(String[] words, int from) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = from; i < words.length; i ++) {
+            if (i > from) {
+                sb.append(' ');
+            }
+            sb.append(words[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the engine on the standard input and output.
+     */
+    public static void main(String[] args) throws IOException {
+        new EngineServer(System.in, System.out).run();
+    }
+}
@@ -0,0 +1,67 @@
+package Silnik;
+
+/**
+ * A static evaluation of a position. The score is from the point of view of
+ * the side to move, in hundredths of a checker.
+ */
+public final class Evaluator {
+
+    /** The value of a regular checker. */
+    public static final int CHECKER = 100;
+
+    /** The value of a king. */
+    public static final int KING = 150;
+
+    /** The bonus per row a checker has advanced towards being crowned. */
+    private static final int ADVANCE = 3;
+
+    /** The bonus for each checker still guarding its own back row. */
+    private static final int BACK_ROW = 10;
+
+    /** The bonus for each checker on one of the central tiles. */
+    private static final int CENTRE = 6;
+
+    /** The central tiles (rows 3 and 4, not on the edges). */
+    private static final int CENTRE_MASK = 0x00066000;
+
+    private Evaluator() {}
+
+    /**
+     * Evaluates a position.
+     *
+     * @param pos	the position to evaluate.
+     * @return the score for the side to move.
+     */
+    public static int evaluate(Position pos) {
+        int score = evaluateBlack(pos.getBlack(), pos.getWhite(),
+                pos.getKings());
+        return pos.isBlackToMove()? score : -score;
+    }
+
+    /**
+     * Evaluates a position from black's point of view.
+     */
+    private static int evaluateBlack(int black, int white, int kings) {
+        int blackMen = black & ~kings, whiteMen = white & ~kings;
+        int score = CHECKER * (Integer.bitCount(blackMen)
+                - Integer.bitCount(whiteMen));
+        score += KING * (Integer.bitCount(black & kings)
+                - Integer.bitCount(white & kings));
+
+        // Advancement of the regular checkers (black moves down the rows)
+        for (int m = blackMen; m != 0; m &= m - 1) {
+            score += ADVANCE * (Integer.numberOfTrailingZeros(m) >> 2);
+        }
+        for (int m = whiteMen; m != 0; m &= m - 1) {
+            score -= ADVANCE * (7 - (Integer.numberOfTrailingZeros(m) >> 2));
+        }
+
+        // Back row guards and centre control
+        score += BACK_ROW * (Integer.bitCount(blackMen & 0xF)
+                - Integer.bitCount(whiteMen & 0xF0000000));
+        score += CENTRE * (Integer.bitCount(black & CENTRE_MASK)
+                - Integer.bitCount(white & CENTRE_MASK));
+
+        return score;
+    }
+}
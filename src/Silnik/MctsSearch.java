@@ -0,0 +1,382 @@
+package Silnik;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A parallel Monte Carlo tree search using UCT. The tree lives in an arena of
+ * primitive arrays indexed by node number instead of one object per node, and
+ * the children of a node are allocated next to each other. Several threads
+ * grow the same tree without locks: a node is expanded by whichever thread
+ * wins a compare-and-set on its state, and a thread going down the tree adds
+ * a virtual loss to each node it passes so the others spread out.
+ * <p>
+ * The tree is kept between moves. When the next search starts from a
+ * position one or two plies further on, the matching child or grandchild
+ * becomes the root; the arena is cleared once it is mostly used.
+ */
+public class MctsSearch {
+
+    /** The default number of nodes in the arena. */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /** The exploration constant of UCT. */
+    private static final double EXPLORATION = 1.4;
+
+    /** The number of visits a thread adds as a virtual loss. */
+    private static final int VIRTUAL_LOSS = 3;
+
+    /** The number of random plies in a rollout before it is scored. */
+    private static final int ROLLOUT_PLIES = 80;
+
+    /** The evaluation needed at the end of a rollout to count as a win. */
+    private static final int ROLLOUT_MARGIN = 60;
+
+    private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2, TERMINAL = 3;
+
+    private static final VarHandle INTS =
+            MethodHandles.arrayElementVarHandle(int[].class);
+
+    /** The move leading to each node. */
+    private final long[] move;
+
+    /** The hash of the position at each node. */
+    private final long[] hash;
+
+    /** The first child of each node (children are consecutive). */
+    private final int[] firstChild;
+
+    /** The number of children of each node. */
+    private final int[] childCount;
+
+    /** The expansion state of each node. */
+    private final int[] state;
+
+    /** The number of visits of each node (including virtual losses). */
+    private final int[] visits;
+
+    /** The score of each node in half points, for the player who made the
+     * move leading to it (2 for a win, 1 for a draw). */
+    private final int[] score;
+
+    /** The next free node in the arena. */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /** The threads running the playouts. */
+    private final ExecutorService pool;
+
+    private final int threads;
+
+    /** The current root node and its position. */
+    private int root;
+
+    private Position rootPosition;
+
+    private volatile boolean stop;
+
+    private final AtomicInteger playouts = new AtomicInteger();
+
+    public MctsSearch() {
+        this(DEFAULT_CAPACITY, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MctsSearch(int capacity, int threads) {
+        this.move = new long[capacity];
+        this.hash = new long[capacity];
+        this.firstChild = new int[capacity];
+        this.childCount = new int[capacity];
+        this.state = new int[capacity];
+        this.visits = new int[capacity];
+        this.score = new int[capacity];
+        this.threads = Math.max(1, threads);
+        this.pool = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "mcts");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Searches a position for the specified time and returns the most visited
+     * move.
+     *
+     * @param pos		the position to search.
+     * @param timeMs	the time to search for.
+     * @return the best move, or {@link PackedMove#NONE} if there are no moves.
+     */
+    public long search(Position pos, long timeMs) {
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generate(pos, moves, 0);
+        if (n <= 1) {
+            return n == 0? PackedMove.NONE : moves[0];
+        }
+
+        setRoot(pos);
+        this.stop = false;
+        this.playouts.set(0);
+        final long deadline = System.currentTimeMillis() + timeMs;
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i ++) {
+            workers.add(() -> {
+                Position p = new Position();
+                int[] path = new int[Search.MAX_PLY + 2];
+                long[] buffer = new long[MoveGenerator.MAX_MOVES];
+                SplittableRandom random = new SplittableRandom(
+                        ThreadLocalRandom.current().nextLong());
+                int count = 0;
+                while (!stop && ((count ++ & 63) != 0
+                        || System.currentTimeMillis() < deadline)) {
+                    playout(p, path, buffer, random);
+                }
+                return null;
+            });
+        }
+        try {
+            pool.invokeAll(workers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // The time may run out before the root is expanded, as the threads
+        // only check it every so often from their first playout
+        long best = bestMove();
+        return (best == PackedMove.NONE)? moves[0] : best;
+    }
+
+    /**
+     * Tells a running search to stop.
+     */
+    public void stop() {
+        this.stop = true;
+    }
+
+    /**
+     * Stops the search and its threads for good. The search cannot be used
+     * afterwards.
+     */
+    public void close() {
+        this.stop = true;
+        pool.shutdownNow();
+    }
+
+    public int getPlayouts() {
+        return playouts.get();
+    }
+
+    /**
+     * Gets the number of arena nodes in use.
+     */
+    public int getNodes() {
+        return next.get();
+    }
+
+    /**
+     * Moves the root to the node for the position if it is the same as or up
+     * to two plies after the last root, otherwise starts a new tree.
+     */
+    private void setRoot(Position pos) {
+        long h = pos.getHash();
+        int found = -1;
+        if (rootPosition != null && pos.getForcedFrom() < 0
+                && next.get() < move.length / 4 * 3) {
+            if (hash[root] == h) {
+                found = root;
+            }
+            for (int c = 0; found < 0 && c < childCount[root]; c ++) {
+                int child = firstChild[root] + c;
+                if (hash[child] == h) {
+                    found = child;
+                    break;
+                }
+                for (int g = 0; g < childCount[child]; g ++) {
+                    if (hash[firstChild[child] + g] == h) {
+                        found = firstChild[child] + g;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Start a new tree
+        if (found < 0) {
+            int used = next.get();
+            Arrays.fill(firstChild, 0, used, 0);
+            Arrays.fill(childCount, 0, used, 0);
+            Arrays.fill(state, 0, used, LEAF);
+            Arrays.fill(visits, 0, used, 0);
+            Arrays.fill(score, 0, used, 0);
+            found = 0;
+            hash[0] = h;
+            move[0] = PackedMove.NONE;
+            next.set(1);
+        }
+        this.root = found;
+        this.rootPosition = pos.copy();
+    }
+
+    /**
+     * Runs one selection, expansion, rollout and back-propagation.
+     */
+    private void playout(Position p, int[] path, long[] buffer,
+                         SplittableRandom random) {
+        p.set(rootPosition);
+        int node = root, len = 0;
+        path[len ++] = node;
+        INTS.getAndAdd(visits, node, VIRTUAL_LOSS);
+
+        // Go down the tree to a leaf
+        int result;
+        while (true) {
+            int s = (int) INTS.getAcquire(state, node);
+            if (s == TERMINAL) {
+                result = 0;
+                break;
+            }
+            if (s == LEAF && INTS.compareAndSet(state, node, LEAF, EXPANDING)) {
+                s = expand(node, p, buffer);
+                if (s == TERMINAL) {
+                    result = 0;
+                    break;
+                }
+            }
+            if (s != EXPANDED || len >= path.length) {
+                result = rollout(p, buffer, random);
+                break;
+            }
+            node = select(node);
+            INTS.getAndAdd(visits, node, VIRTUAL_LOSS);
+            p.make(move[node]);
+            path[len ++] = node;
+        }
+
+        // Back-propagate, flipping the point of view at each ply: result is
+        // for the side to move at the leaf, and a node's score is for the
+        // side that moved into it
+        for (int i = len - 1; i >= 0; i --) {
+            result = 2 - result;
+            INTS.getAndAdd(visits, path[i], 1 - VIRTUAL_LOSS);
+            INTS.getAndAdd(score, path[i], result);
+        }
+        playouts.incrementAndGet();
+    }
+
+    /**
+     * Adds the children of a node that this thread is expanding.
+     *
+     * @return the new state of the node.
+     */
+    private int expand(int node, Position p, long[] moves) {
+        int n = MoveGenerator.generate(p, moves, 0);
+        if (n == 0) {
+            INTS.setRelease(state, node, TERMINAL);
+            return TERMINAL;
+        }
+
+        // The arena is full, so the node stays a leaf
+        int first = claim(n);
+        if (first < 0) {
+            INTS.setRelease(state, node, LEAF);
+            return LEAF;
+        }
+        for (int i = 0; i < n; i ++) {
+            int c = first + i;
+            move[c] = moves[i];
+            p.make(moves[i]);
+            hash[c] = p.getHash();
+            p.unmake(moves[i]);
+        }
+        firstChild[node] = first;
+        childCount[node] = n;
+        INTS.setRelease(state, node, EXPANDED);
+        return EXPANDED;
+    }
+
+    /**
+     * Takes consecutive free nodes from the arena. The free node is never
+     * moved past the end, however long a search keeps trying to expand a
+     * full tree.
+     *
+     * @param n	the number of nodes.
+     * @return the first node taken, or -1 if there is not enough room.
+     */
+    private int claim(int n) {
+        int first;
+        do {
+            first = next.get();
+            if (first > move.length - n) {
+                return -1;
+            }
+        } while (!next.compareAndSet(first, first + n));
+        return first;
+    }
+
+    /**
+     * Picks the child with the best UCT value.
+     */
+    private int select(int node) {
+        int first = firstChild[node], n = childCount[node];
+        double logParent = Math.log(Math.max(1, visits[node]));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = first; c < first + n; c ++) {
+            int v = visits[c];
+            if (v == 0) {
+                return c;
+            }
+            double value = score[c] / (2.0 * v)
+                    + EXPLORATION * Math.sqrt(logParent / v);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays random moves and scores the result.
+     *
+     * @return the result in half points for the side to move at the start.
+     */
+    private static int rollout(Position p, long[] moves,
+                               SplittableRandom random) {
+        boolean startBlack = p.isBlackToMove();
+        for (int ply = 0; ply < ROLLOUT_PLIES; ply ++) {
+            int n = MoveGenerator.generate(p, moves, 0);
+            if (n == 0) {
+                return p.isBlackToMove() == startBlack? 0 : 2;
+            }
+            p.make(moves[random.nextInt(n)]);
+        }
+        int eval = Evaluator.evaluate(p);
+        if (p.isBlackToMove() != startBlack) {
+            eval = -eval;
+        }
+        return eval > ROLLOUT_MARGIN? 2 : eval < -ROLLOUT_MARGIN? 0 : 1;
+    }
+
+    /**
+     * Gets the most visited move at the root.
+     */
+    private long bestMove() {
+        int first = firstChild[root], n = childCount[root];
+        long best = PackedMove.NONE;
+        int most = -1;
+        for (int c = first; c < first + n; c ++) {
+            if (visits[c] > most) {
+                most = visits[c];
+                best = move[c];
+            }
+        }
+        return best;
+    }
+}
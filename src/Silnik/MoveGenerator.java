@@ -0,0 +1,210 @@
+package Silnik;
+
+import java.awt.Point;
+
+import Model.Plansza;
+
+/**
+ * A table driven move generator working on the bit masks of a
+ * {@link Position}. It follows the same rules as {@link Logika.LogikaRuchu}:
+ * skips are mandatory, a skip must be continued while possible and a checker
+ * that is crowned ends the turn. Unlike {@link Logika.GenerujRuch}, a move
+ * here is a whole turn, so a multi-skip is generated as one move.
+ */
+public final class MoveGenerator {
+
+    /** A buffer size that is large enough for any position. */
+    public static final int MAX_MOVES = 128;
+
+    /** The tile one step away in each direction, or -1. The directions are
+     * down-right, down-left, up-right and up-left. */
+    private static final int[][] STEP = new int[4][32];
+
+    /** The tile two steps away in each direction, or -1. */
+    private static final int[][] JUMP = new int[4][32];
+
+    private static final int[] DX = {1, -1, 1, -1};
+
+    private static final int[] DY = {1, 1, -1, -1};
+
+    /** The mask of the tiles where black checkers are crowned. */
+    public static final int BLACK_KING_ROW = 0xF0000000;
+
+    /** The mask of the tiles where white checkers are crowned. */
+    public static final int WHITE_KING_ROW = 0x0000000F;
+
+    static {
+        for (int i = 0; i < 32; i ++) {
+            Point p = Plansza.toPoint(i);
+            for (int d = 0; d < 4; d ++) {
+                STEP[d][i] = Plansza.toIndex(p.x + DX[d], p.y + DY[d]);
+                JUMP[d][i] = Plansza.toIndex(p.x + 2 * DX[d], p.y + 2 * DY[d]);
+            }
+        }
+    }
+
+    private MoveGenerator() {}
+
+    /**
+     * Generates all legal moves for the side to move. If any skip is
+     * available, only skips are generated.
+     *
+     * @param pos	the position to generate moves for.
+     * @param moves	the buffer to write the packed moves to.
+     * @param start	the offset in the buffer to start writing at.
+     * @return the number of moves written.
+     */
+    public static int generate(Position pos, long[] moves, int start) {
+        int n = generateCaptures(pos, moves, start);
+        if (n > 0 || pos.getForcedFrom() >= 0) {
+            return n;
+        }
+
+        // No skips, so look for regular moves
+        boolean black = pos.isBlackToMove();
+        int own = black? pos.getBlack() : pos.getWhite();
+        int empty = ~(pos.getBlack() | pos.getWhite());
+        int kings = pos.getKings();
+        int crown = black? BLACK_KING_ROW : WHITE_KING_ROW;
+        int i = start;
+        for (int m = own; m != 0; m &= m - 1) {
+            int from = Integer.numberOfTrailingZeros(m);
+            boolean king = (kings & (1 << from)) != 0;
+            int d0 = (king || black)? 0 : 2, d1 = (king || !black)? 4 : 2;
+            for (int d = d0; d < d1; d ++) {
+                int to = STEP[d][from];
+                if (to >= 0 && (empty & (1 << to)) != 0) {
+                    moves[i ++] = PackedMove.of(from, to, 0,
+                            !king && (crown & (1 << to)) != 0);
+                }
+            }
+        }
+
+        return i - start;
+    }
+
+    /**
+     * Generates only the skips available to the side to move.
+     *
+     * @param pos	the position to generate skips for.
+     * @param moves	the buffer to write the packed moves to.
+     * @param start	the offset in the buffer to start writing at.
+     * @return the number of moves written.
+     */
+    public static int generateCaptures(Position pos, long[] moves, int start) {
+        boolean black = pos.isBlackToMove();
+        int own = black? pos.getBlack() : pos.getWhite();
+        int enemies = black? pos.getWhite() : pos.getBlack();
+        int kings = pos.getKings();
+        if (pos.getForcedFrom() >= 0) {
+            own &= 1 << pos.getForcedFrom();
+        }
+        int i = start;
+        for (int m = own; m != 0; m &= m - 1) {
+            int from = Integer.numberOfTrailingZeros(m);
+            int empty = ~(pos.getBlack() | pos.getWhite()) | (1 << from);
+            boolean king = (kings & (1 << from)) != 0;
+            i = addSkips(moves, i, from, from, king, black, empty, enemies, 0);
+        }
+        return i - start;
+    }
+
+    /**
+     * Checks if the side to move has any legal move.
+     *
+     * @param pos	the position to check.
+     * @return true if at least one move is available.
+     */
+    public static boolean hasMoves(Position pos) {
+        return generate(pos, new long[MAX_MOVES], 0) > 0;
+    }
+
+    /**
+     * Recursively adds the skips starting at the specified tile.
+     */
+    private static int addSkips(long[] moves, int n, int from, int at,
+                                boolean king, boolean black, int empty,
+                                int enemies, int captured) {
+        int d0 = (king || black)? 0 : 2, d1 = (king || !black)? 4 : 2;
+        int crown = black? BLACK_KING_ROW : WHITE_KING_ROW;
+        for (int d = d0; d < d1; d ++) {
+            int over = STEP[d][at], land = JUMP[d][at];
+            if (land < 0 || (enemies & ~captured & (1 << over)) == 0
+                    || (empty & (1 << land)) == 0) {
+                continue;
+            }
+
+            // Skipped checkers are removed straight away, as in Gra.move
+            int nowCaptured = captured | (1 << over);
+            int nowEmpty = (empty | (1 << over)) & ~(1 << land);
+            if (!king && (crown & (1 << land)) != 0) {
+                moves[n ++] = PackedMove.of(from, land, nowCaptured, true);
+                continue;
+            }
+            int before = n;
+            n = addSkips(moves, n, from, land, king, black, nowEmpty,
+                    enemies, nowCaptured);
+            if (n == before) {
+                moves[n ++] = PackedMove.of(from, land, nowCaptured, false);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Gets the tiles a move passes through, so it can be played one step at a
+     * time on a {@link Model.Gra}.
+     *
+     * @param pos	the position the move is made from.
+     * @param move	the packed move.
+     * @return the indices visited, starting with the start index and ending
+     * with the end index.
+     */
+    public static int[] path(Position pos, long move) {
+        int from = PackedMove.from(move), to = PackedMove.to(move);
+        int captured = PackedMove.captured(move);
+        if (captured == 0) {
+            return new int[] {from, to};
+        }
+        int[] path = new int[Integer.bitCount(captured) + 1];
+        path[0] = from;
+        boolean black = pos.isBlackToMove();
+        boolean king = (pos.getKings() & (1 << from)) != 0;
+        int empty = ~(pos.getBlack() | pos.getWhite()) | (1 << from);
+        findPath(path, 1, from, to, captured, 0, king, black, empty);
+        return path;
+    }
+
+    private static boolean findPath(int[] path, int n, int at, int to,
+                                    int captured, int done, boolean king,
+                                    boolean black, int empty) {
+        if (done == captured) {
+            return at == to;
+        }
+        int d0 = (king || black)? 0 : 2, d1 = (king || !black)? 4 : 2;
+        for (int d = d0; d < d1; d ++) {
+            int over = STEP[d][at], land = JUMP[d][at];
+            if (land < 0 || (captured & ~done & (1 << over)) == 0
+                    || (empty & (1 << land)) == 0) {
+                continue;
+            }
+            path[n] = land;
+            if (findPath(path, n + 1, land, to, captured, done | (1 << over),
+                    king, black, (empty | (1 << over)) & ~(1 << land))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the tile one step away from a tile in a direction.
+     *
+     * @param direction	0 to 3 for down-right, down-left, up-right, up-left.
+     * @param index		the tile index.
+     * @return the neighbouring tile index, or -1 if off the board.
+     */
+    public static int step(int direction, int index) {
+        return STEP[direction][index];
+    }
+}
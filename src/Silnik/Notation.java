@@ -0,0 +1,122 @@
+package Silnik;
+
+/**
+ * Converts between packed moves and the standard checkers notation used in
+ * PDN files, where the black tiles are numbered 1 to 32 (tile index + 1), a
+ * regular move is written "11-15" and a skip "15x24" or "15x24x31".
+ */
+public final class Notation {
+
+    private Notation() {}
+
+    /**
+     * Formats a move, listing every tile of a multi-skip.
+     *
+     * @param pos	the position the move is made from.
+     * @param move	the packed move.
+     * @return the move in standard notation.
+     */
+    public static String format(Position pos, long move) {
+        if (move == PackedMove.NONE) {
+            return "";
+        }
+        if (!PackedMove.isCapture(move)) {
+            return PackedMove.toString(move);
+        }
+        int[] path = MoveGenerator.path(pos, move);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < path.length; i ++) {
+            if (i > 0) {
+                sb.append('x');
+            }
+            sb.append(path[i] + 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a move in standard notation and matches it against the legal
+     * moves of the position. A skip may be given with only its start and end
+     * tiles (e.g. "15x31") as long as that is not ambiguous.
+     *
+     * @param pos	the position the move is made from.
+     * @param text	the move text.
+     * @return the matching legal move, or {@link PackedMove#NONE}.
+     */
+    public static long parse(Position pos, CharSequence text) {
+        int[] tiles = new int[16];
+        int count = 0, value = -1, len = text.length();
+        for (int i = 0; i <= len && count < tiles.length; i ++) {
+            char c = i < len? text.charAt(i) : '-';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0? 0 : value * 10) + (c - '0');
+            } else if (c == '-' || c == 'x' || c == 'X' || c == ':') {
+                if (value < 1 || value > 32) {
+                    return PackedMove.NONE;
+                }
+                tiles[count ++] = value - 1;
+                value = -1;
+            } else {
+                return PackedMove.NONE;
+            }
+        }
+        return match(pos, tiles, count, new long[MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * Finds the legal move through a list of tiles. A skip may be given with
+     * only its start and end tiles as long as that is not ambiguous.
+     *
+     * @param pos		the position the move is made from.
+     * @param tiles		the tile indices of the move (from 0 to 31).
+     * @param count		the number of tiles.
+     * @param moves		a buffer of {@link MoveGenerator#MAX_MOVES} moves.
+     * @return the matching legal move, or {@link PackedMove#NONE}.
+     */
+    public static long match(Position pos, int[] tiles, int count,
+                             long[] moves) {
+        if (count < 2) {
+            return PackedMove.NONE;
+        }
+
+        // Find the legal move that matches
+        int n = MoveGenerator.generate(pos, moves, 0);
+        long found = PackedMove.NONE;
+        for (int i = 0; i < n; i ++) {
+            long m = moves[i];
+            if (PackedMove.from(m) != tiles[0]
+                    || PackedMove.to(m) != tiles[count - 1]) {
+                continue;
+            }
+
+            // Two tiles are the whole path of a move or a single skip, but
+            // only the start and end of a longer skip, which is ambiguous if
+            // another skip joins them
+            if (count == 2) {
+                if (Integer.bitCount(PackedMove.captured(m)) <= 1) {
+                    return m;
+                }
+                if (found != PackedMove.NONE && found != m) {
+                    return PackedMove.NONE;
+                }
+                found = m;
+                continue;
+            }
+            int[] path = MoveGenerator.path(pos, m);
+            if (path.length == count && matches(path, tiles, count)) {
+                return m;
+            }
+        }
+
+        return found;
+    }
+
+    private static boolean matches(int[] path, int[] tiles, int count) {
+        for (int i = 0; i < count; i ++) {
+            if (path[i] != tiles[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
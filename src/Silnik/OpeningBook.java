@@ -0,0 +1,167 @@
+package Silnik;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * A read-only opening book. The book file is memory-mapped and searched in
+ * place: entries are sorted by position hash, so a lookup is a binary search
+ * over the mapped bytes and nothing is deserialized up front.
+ * <p>
+ * The file layout (big-endian) is a header followed by the entries:
+ * <pre>
+ *  header:	int magic, int version, long entry count
+ *  entry:	long position hash, long packed move, int weight, int games
+ * </pre>
+ * Several entries may share a hash, one per book move. The book is safe to
+ * use from several threads.
+ *
+ * @see {@link OpeningBookBuilder}
+ */
+public class OpeningBook {
+
+    /** The magic number at the start of a book file ("WBOK"). */
+    public static final int MAGIC = 0x57424F4B;
+
+    /** The version of the file layout. */
+    public static final int VERSION = 1;
+
+    /** The number of bytes before the first entry. */
+    public static final int HEADER_SIZE = 16;
+
+    /** The number of bytes in each entry. */
+    public static final int ENTRY_SIZE = 24;
+
+    /** The mapped book file. */
+    private final MappedByteBuffer buffer;
+
+    /** The number of entries in the book. */
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Opens and maps a book file.
+     *
+     * @param file	the book file.
+     * @return the opened book.
+     * @throws IOException if the file cannot be read or is not a book.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = ch.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                    0, length);
+            buf.order(ByteOrder.BIG_ENDIAN);
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("Not an opening book: " + file);
+            }
+            long count = buf.getLong(8);
+            if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE > length) {
+                throw new IOException("Truncated opening book: " + file);
+            }
+            return new OpeningBook(buf, (int) count);
+        }
+    }
+
+    /**
+     * Picks a book move for a position, at random in proportion to the
+     * weights of the moves stored for it.
+     *
+     * @param pos		the position to look up.
+     * @param random	the source of randomness.
+     * @return a legal move, or {@link PackedMove#NONE} if the position is not
+     * in the book.
+     */
+    public long lookup(Position pos, SplittableRandom random) {
+        long hash = pos.getHash();
+        int first = lowerBound(hash);
+
+        // Sum the weights of the moves for this position
+        long total = 0;
+        int last = first;
+        while (last < size && keyAt(last) == hash) {
+            total += Math.max(0, weightAt(last));
+            last ++;
+        }
+        if (total <= 0) {
+            return PackedMove.NONE;
+        }
+
+        // Pick a move and check that it is legal here (guards against hash
+        // collisions and stale books)
+        long pick = random.nextLong(total);
+        for (int i = first; i < last; i ++) {
+            pick -= Math.max(0, weightAt(i));
+            if (pick < 0) {
+                return legal(pos, moveAt(i));
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    /**
+     * Checks if the book has any move for the position.
+     *
+     * @param pos	the position to look up.
+     * @return true if the position is in the book.
+     */
+    public boolean contains(Position pos) {
+        int i = lowerBound(pos.getHash());
+        return i < size && keyAt(i) == pos.getHash();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first entry with a hash not less than the specified hash.
+     */
+    private int lowerBound(long hash) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long keyAt(int i) {
+        return buffer.getLong(HEADER_SIZE + i * ENTRY_SIZE);
+    }
+
+    private long moveAt(int i) {
+        return buffer.getLong(HEADER_SIZE + i * ENTRY_SIZE + 8);
+    }
+
+    private int weightAt(int i) {
+        return buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE + 16);
+    }
+
+    private static long legal(Position pos, long move) {
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generate(pos, moves, 0);
+        for (int i = 0; i < n; i ++) {
+            if (moves[i] == move) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+}
@@ -0,0 +1,282 @@
+package Silnik;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import Zapis.PdnReader;
+
+/**
+ * Builds an {@link OpeningBook} file from games, either played by the engine
+ * against itself or imported from PDN game records. Every position in the
+ * first {@link #getMaxPly()} plies of a game is added with the move that was
+ * played; moves that were played more often and won more often get a larger
+ * weight.
+ */
+public class OpeningBookBuilder {
+
+    /** The default number of plies from the start of a game to record. */
+    public static final int DEFAULT_MAX_PLY = 12;
+
+    /** The number of plies a self-play game may last before it is a draw. */
+    private static final int SELF_PLAY_MAX_PLY = 200;
+
+    /** The number of plies at the start of a self-play game that are random,
+     * so the games do not all follow the same line. */
+    private static final int SELF_PLAY_RANDOM_PLY = 4;
+
+    /** The statistics per position, then per move: {games, score}. */
+    private final Map<Long, Map<Long, int[]>> stats = new HashMap<>();
+
+    /** The number of plies from the start of a game to record. */
+    private int maxPly;
+
+    /** The number of games added. */
+    private int games;
+
+    public OpeningBookBuilder() {
+        this(DEFAULT_MAX_PLY);
+    }
+
+    public OpeningBookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    /**
+     * Adds a game played from the start position.
+     *
+     * @param moves		the packed moves of the game, in order.
+     * @param count		the number of moves in the array to use.
+     * @param result	1 if black (player 1) won, -1 if white won, 0 for a draw.
+     */
+    public void addGame(long[] moves, int count, int result) {
+        Position pos = new Position();
+        long[] legal = new long[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < count && i < maxPly; i ++) {
+            long m = moves[i];
+
+            // Stop at the first move that is not legal
+            int n = MoveGenerator.generate(pos, legal, 0);
+            boolean found = false;
+            for (int j = 0; j < n && !found; j ++) {
+                found = (legal[j] == m);
+            }
+            if (!found) {
+                break;
+            }
+
+            // Score the move from the point of view of the side making it
+            int sign = pos.isBlackToMove()? 1 : -1;
+            int[] s = stats.computeIfAbsent(pos.getHash(), k -> new HashMap<>())
+                    .computeIfAbsent(m, k -> new int[2]);
+            s[0] ++;
+            s[1] += 1 + result * sign;
+            pos.make(m);
+        }
+        this.games ++;
+    }
+
+    /**
+     * Plays games of the engine against itself and adds them to the book.
+     *
+     * @param count	the number of games to play.
+     * @param depth	the search depth for each move.
+     * @param seed	the seed for the random opening moves.
+     */
+    public void addSelfPlayGames(int count, int depth, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Search search = new Search();
+        long[] legal = new long[MoveGenerator.MAX_MOVES];
+        long[] played = new long[SELF_PLAY_MAX_PLY];
+        for (int g = 0; g < count; g ++) {
+            Position pos = new Position();
+            int ply = 0, result = 0;
+            while (ply < SELF_PLAY_MAX_PLY) {
+                int n = MoveGenerator.generate(pos, legal, 0);
+                if (n == 0) {
+                    result = pos.isBlackToMove()? -1 : 1;
+                    break;
+                }
+                long m = ply < SELF_PLAY_RANDOM_PLY? legal[random.nextInt(n)]
+                        : search.search(pos, depth, 0);
+                played[ply ++] = m;
+                pos.make(m);
+            }
+            addGame(played, ply, result);
+        }
+    }
+
+    /**
+     * Imports the games from PDN text. The text is read one game at a time,
+     * so it may be of any size. Games set up from a {@code FEN} tag are
+     * skipped, and games with a move that cannot be parsed are added up to
+     * that move.
+     *
+     * @param in	the PDN text.
+     * @return the number of games imported.
+     * @throws IOException if the text cannot be read.
+     */
+    public int importPdn(Reader in) throws IOException {
+        PdnReader reader = new PdnReader(in);
+        PdnImporter importer = new PdnImporter();
+        int imported = 0;
+        while (reader.readGame(importer)) {
+            if (importer.valid) {
+                addGame(importer.moves, importer.ply, importer.result);
+                imported ++;
+            }
+            importer.reset();
+        }
+        return imported;
+    }
+
+    /**
+     * Writes the book file, sorted by position hash.
+     *
+     * @param file	the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+
+        // Flatten and sort the entries
+        int count = 0;
+        for (Map<Long, int[]> m : stats.values()) {
+            count += m.size();
+        }
+        long[][] entries = new long[count][];
+        int i = 0;
+        for (Map.Entry<Long, Map<Long, int[]>> pos : stats.entrySet()) {
+            for (Map.Entry<Long, int[]> mv : pos.getValue().entrySet()) {
+                int[] s = mv.getValue();
+                entries[i ++] = new long[] {pos.getKey(), mv.getKey(),
+                        s[0] + s[1], s[0]};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> a[0] != b[0]? Long.compare(a[0], b[0])
+                : Long.compare(a[1], b[1]));
+
+        // Write the header and entries
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeLong(count);
+            for (long[] e : entries) {
+                out.writeLong(e[0]);
+                out.writeLong(e[1]);
+                out.writeInt((int) Math.min(Integer.MAX_VALUE, e[2]));
+                out.writeInt((int) e[3]);
+            }
+        }
+    }
+
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    public void setMaxPly(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Collects the first moves of each game read from PDN.
+     */
+    private class PdnImporter implements PdnReader.Handler {
+
+        private final Position pos = new Position();
+
+        private final long[] moves = new long[Math.max(0, maxPly)];
+
+        private final int[] tiles = new int[32];
+
+        private final long[] legal = new long[MoveGenerator.MAX_MOVES];
+
+        private int ply, result;
+
+        private boolean valid = true;
+
+        private void reset() {
+            pos.reset();
+            this.ply = 0;
+            this.result = 0;
+            this.valid = true;
+        }
+
+        @Override
+        public void tag(CharSequence name, CharSequence value) {
+            if ("FEN".contentEquals(name)) {
+                this.valid = false;
+            }
+        }
+
+        @Override
+        public boolean move(int[] squares, int count, boolean capture) {
+            if (!valid || ply >= moves.length || count > tiles.length) {
+                return false;
+            }
+            for (int i = 0; i < count; i ++) {
+                tiles[i] = squares[i] - 1;
+            }
+            long m = Notation.match(pos, tiles, count, legal);
+            if (m == PackedMove.NONE) {
+                return false;
+            }
+            moves[ply ++] = m;
+            pos.make(m);
+            return true;
+        }
+
+        @Override
+        public void end(int result) {
+            this.result = (result == PdnReader.UNKNOWN)? 0 : result;
+        }
+    }
+
+    /**
+     * Builds a book from the command line:
+     * {@code OpeningBookBuilder <book> [-selfplay n] [-depth d] [-plies p]
+     * [-pdn file]...}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBookBuilder <book> [-selfplay n]"
+                    + " [-depth d] [-plies p] [-pdn file]...");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        int selfPlay = 0, depth = 6;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-selfplay": selfPlay = Integer.parseInt(args[i + 1]); break;
+                case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+                case "-plies": builder.setMaxPly(Integer.parseInt(args[i + 1])); break;
+                case "-pdn":
+                    try (Reader r = Files.newBufferedReader(Paths.get(args[i + 1]),
+                            StandardCharsets.ISO_8859_1)) {
+                        builder.importPdn(r);
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+            }
+        }
+        if (selfPlay > 0) {
+            builder.addSelfPlayGames(selfPlay, depth, System.nanoTime());
+        }
+        builder.write(Paths.get(args[0]));
+        System.out.println("Wrote " + builder.getGames() + " games to " + args[0]);
+    }
+}
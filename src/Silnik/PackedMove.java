@@ -0,0 +1,80 @@
+package Silnik;
+
+/**
+ * Helpers for moves packed into a single {@code long}. A packed move is a
+ * whole turn (including every skip of a multi-skip) and is laid out as:
+ * <pre>
+ *  bits  0..31	mask of the captured checkers
+ *  bits 32..36	start index
+ *  bits 40..44	end index
+ *  bit  48		set if the checker is crowned by the move
+ * </pre>
+ * The value {@link #NONE} never describes a legal move.
+ */
+public final class PackedMove {
+
+    /** The value used when there is no move. */
+    public static final long NONE = 0L;
+
+    private static final int FROM_SHIFT = 32;
+
+    private static final int TO_SHIFT = 40;
+
+    private static final long PROMOTES = 1L << 48;
+
+    private PackedMove() {}
+
+    /**
+     * Packs a move.
+     *
+     * @param from		the start index of the move.
+     * @param to		the end index of the move.
+     * @param captured	the mask of the checkers skipped by the move.
+     * @param promotes	true if the checker is crowned by the move.
+     * @return the packed move.
+     */
+    public static long of(int from, int to, int captured, boolean promotes) {
+        long m = (captured & 0xFFFFFFFFL) | ((long) from << FROM_SHIFT)
+                | ((long) to << TO_SHIFT);
+        return promotes? m | PROMOTES : m;
+    }
+
+    public static int from(long move) {
+        return (int) (move >>> FROM_SHIFT) & 31;
+    }
+
+    public static int to(long move) {
+        return (int) (move >>> TO_SHIFT) & 31;
+    }
+
+    public static int captured(long move) {
+        return (int) move;
+    }
+
+    public static boolean isCapture(long move) {
+        return (int) move != 0;
+    }
+
+    public static boolean promotes(long move) {
+        return (move & PROMOTES) != 0;
+    }
+
+    /**
+     * Gets the 10-bit start/end key of a move. This is what is kept in the
+     * transposition table; it is matched against the generated moves to
+     * recover the full move.
+     *
+     * @param move	the packed move.
+     * @return the start index in the low 5 bits and end index in the next 5.
+     */
+    public static int fromTo(long move) {
+        return from(move) | (to(move) << 5);
+    }
+
+    public static String toString(long move) {
+        if (move == NONE) {
+            return "none";
+        }
+        return (from(move) + 1) + (isCapture(move)? "x" : "-") + (to(move) + 1);
+    }
+}
@@ -0,0 +1,340 @@
+package Silnik;
+
+import Logika.Zobrist;
+import Model.Gra;
+import Model.Plansza;
+
+/**
+ * A mutable position used by the engine. The board is kept as the same bit
+ * masks that {@link Plansza} stores (one bit per black tile) so conversions
+ * are cheap, and moves are made and unmade in place with an incrementally
+ * updated Zobrist hash.
+ */
+public class Position {
+
+    /** The maximum number of moves that can be made without unmaking. */
+    private static final int MAX_PLY = 1024;
+
+    /** The mask of black checkers and kings. */
+    private int black;
+
+    /** The mask of white checkers and kings. */
+    private int white;
+
+    /** The mask of kings of both colours. */
+    private int kings;
+
+    /** The flag indicating if it is player 1's (black's) turn. */
+    private boolean blackToMove;
+
+    /** The index of the checker that must continue skipping, or -1. This is
+     * only set for positions taken from a game in the middle of a turn. */
+    private int forcedFrom;
+
+    /** The Zobrist hash of the position. */
+    private long hash;
+
+    /** The number of moves made since the position was set. */
+    private int ply;
+
+    /** The number of moves since the last capture or checker (man) move, or
+     * since the position was set. */
+    private int quiet;
+
+    private final long[] hashStack = new long[MAX_PLY];
+
+    private final int[] kingStack = new int[MAX_PLY];
+
+    private final int[] forcedStack = new int[MAX_PLY];
+
+    private final int[] quietStack = new int[MAX_PLY];
+
+    public Position() {
+        reset();
+    }
+
+    public Position(int black, int white, int kings, boolean blackToMove) {
+        set(black, white, kings, blackToMove, -1);
+    }
+
+    /**
+     * Creates a position from the current state of a game.
+     *
+     * @param game	the game to copy.
+     * @return a new position matching the game.
+     */
+    public static Position from(Gra game) {
+        Position p = new Position();
+        p.set(game);
+        return p;
+    }
+
+    /**
+     * Resets the position to the start of a game.
+     */
+    public void reset() {
+        set(0x00000FFF, 0xFFF00000, 0, true, -1);
+    }
+
+    /**
+     * Sets the position to the current state of a game. The positions of the
+     * game since the last capture or checker move are kept as if they had
+     * been made here, so repetitions of them are found and the moves towards
+     * the draw are counted.
+     *
+     * @param game	the game to copy.
+     */
+    public void set(Gra game) {
+        Plansza b = game.getBoard();
+        set(b.getBlackMask(), b.getWhiteMask(), b.getKingMask(),
+                game.isP1Turn(), game.getSkipIndex());
+
+        // A quiet step always ends the turn, so each of them is one move
+        int steps = game.getStepCount();
+        int quiet = Math.min(game.getQuietPlies(), MAX_PLY / 2);
+        for (int i = 0; i < quiet; i ++) {
+            hashStack[i] = game.getHash(steps - quiet + i);
+        }
+        this.ply = quiet;
+        this.quiet = quiet;
+    }
+
+    public void set(int black, int white, int kings, boolean blackToMove,
+                    int forcedFrom) {
+        this.black = black;
+        this.white = white & ~black;
+        this.kings = kings & (black | white);
+        this.blackToMove = blackToMove;
+        this.forcedFrom = Plansza.isValidIndex(forcedFrom)? forcedFrom : -1;
+        this.hash = Zobrist.hash(this.black, this.white, this.kings,
+                blackToMove);
+        this.ply = 0;
+        this.quiet = 0;
+    }
+
+    /**
+     * Copies another position. Of its move stack only the positions since
+     * the last capture or checker move are kept, for finding repetitions.
+     *
+     * @param other	the position to copy.
+     */
+    public void set(Position other) {
+        this.black = other.black;
+        this.white = other.white;
+        this.kings = other.kings;
+        this.blackToMove = other.blackToMove;
+        this.forcedFrom = other.forcedFrom;
+        this.hash = other.hash;
+        int quiet = Math.min(other.quiet, Math.min(other.ply, MAX_PLY / 2));
+        System.arraycopy(other.hashStack, other.ply - quiet, hashStack, 0,
+                quiet);
+        this.ply = quiet;
+        this.quiet = quiet;
+    }
+
+    public Position copy() {
+        Position p = new Position();
+        p.set(this);
+        return p;
+    }
+
+    /**
+     * Makes a move generated by {@link MoveGenerator} for this position.
+     *
+     * @param move	the packed move.
+     * @see {@link #unmake(long)}
+     */
+    public void make(long move) {
+
+        // Save what is needed to unmake
+        int from = PackedMove.from(move), to = PackedMove.to(move);
+        int captured = PackedMove.captured(move);
+        hashStack[ply] = hash;
+        kingStack[ply] = kings & captured;
+        forcedStack[ply] = forcedFrom;
+        quietStack[ply] = quiet;
+        ply ++;
+
+        // Move the checker
+        int fromBit = 1 << from, toBit = 1 << to;
+        boolean wasKing = (kings & fromBit) != 0;
+        boolean isKing = wasKing || PackedMove.promotes(move);
+        long h = hash;
+        if (blackToMove) {
+            black = (black & ~fromBit) | toBit;
+            white &= ~captured;
+            h ^= Zobrist.key(wasKing? Plansza.BLACK_KING
+                    : Plansza.BLACK_CHECKER, from);
+            h ^= Zobrist.key(isKing? Plansza.BLACK_KING
+                    : Plansza.BLACK_CHECKER, to);
+        } else {
+            white = (white & ~fromBit) | toBit;
+            black &= ~captured;
+            h ^= Zobrist.key(wasKing? Plansza.WHITE_KING
+                    : Plansza.WHITE_CHECKER, from);
+            h ^= Zobrist.key(isKing? Plansza.WHITE_KING
+                    : Plansza.WHITE_CHECKER, to);
+        }
+
+        // Remove the skipped checkers
+        for (int m = captured; m != 0; m &= m - 1) {
+            int i = Integer.numberOfTrailingZeros(m);
+            boolean king = (kings & (1 << i)) != 0;
+            h ^= Zobrist.key(blackToMove? (king? Plansza.WHITE_KING
+                    : Plansza.WHITE_CHECKER) : (king? Plansza.BLACK_KING
+                    : Plansza.BLACK_CHECKER), i);
+        }
+        kings = (kings & ~captured & ~fromBit) | (isKing? toBit : 0);
+
+        this.blackToMove = !blackToMove;
+        this.forcedFrom = -1;
+        this.hash = h ^ Zobrist.BLACK_TO_MOVE;
+        this.quiet = (wasKing && captured == 0)? quiet + 1 : 0;
+    }
+
+    /**
+     * Unmakes the last move made with {@link #make(long)}.
+     *
+     * @param move	the packed move that was made last.
+     */
+    public void unmake(long move) {
+        ply --;
+        int from = PackedMove.from(move), to = PackedMove.to(move);
+        int captured = PackedMove.captured(move);
+        int fromBit = 1 << from, toBit = 1 << to;
+        boolean wasKing = (kings & toBit) != 0 && !PackedMove.promotes(move);
+        this.blackToMove = !blackToMove;
+        if (blackToMove) {
+            black = (black & ~toBit) | fromBit;
+            white |= captured;
+        } else {
+            white = (white & ~toBit) | fromBit;
+            black |= captured;
+        }
+        kings = (kings & ~toBit) | kingStack[ply] | (wasKing? fromBit : 0);
+        this.forcedFrom = forcedStack[ply];
+        this.hash = hashStack[ply];
+        this.quiet = quietStack[ply];
+    }
+
+    /**
+     * Counts how many times the current position has occurred since the
+     * last capture or checker move, including now. Only positions made since
+     * the position was set, or kept when it was set, are known.
+     *
+     * @return the number of times the position occurred (at least 1).
+     */
+    public int repetitions() {
+        int count = 1;
+        for (int i = ply - 4; i >= ply - quiet; i -= 2) {
+            if (hashStack[i] == hash) {
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the current position occurred before since the last capture
+     * or checker move.
+     *
+     * @return true if the position is a repetition.
+     */
+    public boolean isRepetition() {
+        for (int i = ply - 4; i >= ply - quiet; i -= 2) {
+            if (hashStack[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of moves since the last capture or checker move.
+     */
+    public int getQuietPlies() {
+        return quiet;
+    }
+
+    /**
+     * Writes this position to a board.
+     *
+     * @param plansza	the board to update.
+     */
+    public void toBoard(Plansza plansza) {
+        plansza.setMasks(black, white, kings);
+    }
+
+    /**
+     * Packs this position (without its move stack) into two longs: the black
+     * mask in the high and the white mask in the low int of the first, and
+     * the king mask in the high int of the second with the side to move in
+     * bit 0 and the forced index plus one in bits 1-6.
+     *
+     * @param to		the array to write to.
+     * @param offset	the index of the first of the two longs.
+     * @see {@link #unpack(long[], int)}
+     */
+    public void pack(long[] to, int offset) {
+        to[offset] = ((long) black << 32) | (white & 0xFFFFFFFFL);
+        to[offset + 1] = ((long) kings << 32) | ((forcedFrom + 1) << 1)
+                | (blackToMove? 1 : 0);
+    }
+
+    /**
+     * Sets this position from one packed with {@link #pack(long[], int)}.
+     *
+     * @param from		the array to read from.
+     * @param offset	the index of the first of the two longs.
+     */
+    public void unpack(long[] from, int offset) {
+        long a = from[offset], b = from[offset + 1];
+        set((int) (a >>> 32), (int) a, (int) (b >>> 32), (b & 1) != 0,
+                (int) ((b >>> 1) & 0x3F) - 1);
+    }
+
+    public int getBlack() {
+        return black;
+    }
+
+    public int getWhite() {
+        return white;
+    }
+
+    public int getKings() {
+        return kings;
+    }
+
+    public boolean isBlackToMove() {
+        return blackToMove;
+    }
+
+    public int getForcedFrom() {
+        return forcedFrom;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Gets the number of checkers of both colours on the board.
+     *
+     * @return the piece count.
+     */
+    public int pieceCount() {
+        return Integer.bitCount(black | white);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[black=" + Integer.toHexString(
+                black) + ", white=" + Integer.toHexString(white) + ", kings="
+                + Integer.toHexString(kings) + ", blackToMove=" + blackToMove
+                + "]";
+    }
+}
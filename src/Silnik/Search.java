@@ -0,0 +1,505 @@
+package Silnik;
+
+import java.util.Arrays;
+
+import Model.Gra;
+
+/**
+ * An iterative deepening alpha-beta search. Skips are forced in checkers, so
+ * the search does not stop at the horizon while the side to move has a skip
+ * available, which serves as the quiescence search.
+ * <p>
+ * A search instance is not thread-safe, but several instances may share one
+ * {@link TranspositionTable}.
+ */
+public class Search {
+
+    /** The score of a won position at the root. */
+    public static final int MATE = 30000;
+
+    /** A score larger than any real score. */
+    public static final int INFINITY = 32000;
+
+    /** The deepest ply the search will reach. */
+    public static final int MAX_PLY = 128;
+
+    /** How many nodes are searched between checks of the clock (less one,
+     * as a mask). Checking the clock is cheap, but not cheap enough to do
+     * at every node. */
+    private static final int CHECK_NODES = 1023;
+
+    /** The table shared with other searches (may be shared). */
+    private final TranspositionTable tt;
+
+    /** The move buffers for each ply, so no allocation is needed. */
+    private final long[][] moveStack = new long[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+
+    /** The endgame tablebase to probe, or null for none. */
+    private EndgameTablebase tablebase;
+
+    /** The ring the information of each iteration is published to, or
+     * null for none. */
+    private SearchInfoRing infoRing;
+
+    /** The number of moves by each side without a capture or checker move
+     * after which the game is drawn, or 0 for no limit. */
+    private int drawMoves = Gra.DEFAULT_DRAW_MOVES;
+
+    /** The flag telling the search to stop as soon as possible. */
+    private volatile boolean stop;
+
+    /** The time (from {@link System#currentTimeMillis()}) to stop at, or 0. */
+    private long deadline;
+
+    /** The time manager of the running search, or null if it has none. It
+     * is read again at every clock check, as a search on the opponent's time
+     * only gets its limits when the opponent moves. */
+    private TimeManager time;
+
+    private long nodes;
+
+    /** The probes of the transposition table and how many found an entry. */
+    private long ttProbes, ttHits;
+
+    private long bestMove;
+
+    private int bestScore;
+
+    private int completedDepth;
+
+    /** The deepest ply reached in the search. */
+    private int selDepth;
+
+    public Search() {
+        this(new TranspositionTable(16));
+    }
+
+    public Search(TranspositionTable tt) {
+        this.tt = tt;
+    }
+
+    /**
+     * Searches a position and returns the best move found.
+     *
+     * @param root			the position to search (restored before returning).
+     * @param maxDepth		the maximum depth to search to.
+     * @param timeLimitMs	the time allowed, or 0 for no limit.
+     * @return the best move, or {@link PackedMove#NONE} if there are no moves.
+     */
+    public long search(Position root, int maxDepth, long timeLimitMs) {
+        return search(root, maxDepth, timeLimitMs > 0?
+                System.currentTimeMillis() + timeLimitMs : 0, null);
+    }
+
+    /**
+     * Searches a position with the time given by a time manager. A move is
+     * returned at once if it is the only legal one, and no iteration is
+     * started that is not expected to finish in the soft limit.
+     *
+     * @param root		the position to search (restored before returning).
+     * @param maxDepth	the maximum depth to search to.
+     * @param time		the time manager for the move (already started). If it
+     * is pondering, the search has no limit until its
+     * {@link TimeManager#ponderHit()}.
+     * @return the best move, or {@link PackedMove#NONE} if there are no moves.
+     */
+    public long search(Position root, int maxDepth, TimeManager time) {
+        return search(root, maxDepth, time.getHardDeadline(), time);
+    }
+
+    private long search(Position root, int maxDepth, long deadline,
+                        TimeManager time) {
+
+        // Reset the search state
+        this.stop = false;
+        this.nodes = 0;
+        this.ttProbes = 0;
+        this.ttHits = 0;
+        this.completedDepth = 0;
+        this.selDepth = 0;
+        this.bestMove = PackedMove.NONE;
+        this.bestScore = 0;
+        this.deadline = deadline;
+        this.time = time;
+        tt.newSearch();
+
+        // Trivial cases
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generate(root, moves, 0);
+        if (n == 0) {
+            return PackedMove.NONE;
+        }
+        this.bestMove = moves[0];
+        if (n == 1 && time != null) {
+            return bestMove;
+        }
+
+        // Iterative deepening
+        long searchStart = System.nanoTime();
+        maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+        long lastTime = 0, previousTime = 0;
+        for (int depth = 1; depth <= maxDepth && !stop; depth ++) {
+            long iterationStart = System.currentTimeMillis();
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            long startNanos = System.nanoTime(), startNodes = nodes;
+            long startProbes = ttProbes, startHits = ttHits;
+            int alpha = -INFINITY, best = -INFINITY;
+            long iterationBest = PackedMove.NONE;
+            for (int i = 0; i < n; i ++) {
+                long m = moves[i];
+                root.make(m);
+                int score = -negamax(root, depth - 1, -INFINITY, -alpha, 1);
+                root.unmake(m);
+                if (stop) {
+                    break;
+                }
+                if (score > best) {
+                    best = score;
+                    iterationBest = m;
+                    alpha = Math.max(alpha, score);
+                }
+            }
+            if (stop) {
+                break;
+            }
+
+            // Keep the best move first for the next iteration
+            this.bestMove = iterationBest;
+            this.bestScore = best;
+            this.completedDepth = depth;
+            moveToFront(moves, n, iterationBest);
+            tt.store(root.getHash(), iterationBest, depth, best,
+                    TranspositionTable.EXACT);
+
+            // Report the iteration to a flight recording
+            if (event.shouldCommit()) {
+                long iterationNodes = nodes - startNodes;
+                long probes = ttProbes - startProbes;
+                long nanos = Math.max(1, System.nanoTime() - startNanos);
+                event.depth = depth;
+                event.nodes = iterationNodes;
+                event.nps = iterationNodes * 1000000000L / nanos;
+                event.bestMove = PackedMove.toString(iterationBest);
+                event.score = best;
+                event.ttHitRate = probes == 0? 0
+                        : (double) (ttHits - startHits) / probes;
+                event.hashfull = tt.hashfull();
+                event.commit();
+            }
+
+            if (infoRing != null) {
+                infoRing.publish(getInfo(root, searchStart));
+            }
+
+            // A forced win or loss within the searched depth was found, so
+            // looking deeper cannot find a shorter one
+            if (Math.abs(best) > MATE - MAX_PLY
+                    && MATE - Math.abs(best) <= depth) {
+                break;
+            }
+
+            // Don't start an iteration that won't finish in time
+            previousTime = lastTime;
+            lastTime = System.currentTimeMillis() - iterationStart;
+            if (time != null && !time.startIteration(lastTime, previousTime)) {
+                break;
+            }
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * The recursive negamax alpha-beta search.
+     */
+    private int negamax(Position pos, int depth, int alpha, int beta, int ply) {
+
+        // Check the clock every so often
+        if ((++ nodes & CHECK_NODES) == 0 && isTimeUp()) {
+            this.stop = true;
+        }
+        if (stop) {
+            return 0;
+        }
+        if (ply > selDepth) {
+            this.selDepth = ply;
+        }
+
+        // A repeated position is a draw, as is reaching the move limit
+        if (ply > 0 && (pos.isRepetition() || (drawMoves > 0
+                && pos.getQuietPlies() >= 2 * drawMoves))) {
+            return 0;
+        }
+
+        // No moves means the side to move has lost
+        long[] moves = moveStack[ply];
+        int n = MoveGenerator.generate(pos, moves, 0);
+        if (n == 0) {
+            return -MATE + ply;
+        }
+
+        // Use the exact result if the position is in the tablebase
+        if (tablebase != null && pos.pieceCount() <= tablebase.getMaxPieces()) {
+            int probe = tablebase.probe(pos);
+            if (probe != EndgameTablebase.UNKNOWN) {
+                return tablebaseScore(probe, ply);
+            }
+        }
+
+        // Stop at the horizon unless a skip is pending
+        if ((depth <= 0 && !PackedMove.isCapture(moves[0]))
+                || ply >= MAX_PLY) {
+            return Evaluator.evaluate(pos);
+        }
+
+        // Look in the transposition table
+        long hash = pos.getHash();
+        long entry = tt.probe(hash);
+        ttProbes ++;
+        if (entry != 0) {
+            ttHits ++;
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+            if (TranspositionTable.hasMove(entry)) {
+                moveToFront(moves, n, TranspositionTable.moveFromTo(entry));
+            }
+        }
+
+        // Search each move
+        int alpha0 = alpha, best = -INFINITY;
+        long bestHere = PackedMove.NONE;
+        for (int i = 0; i < n; i ++) {
+            long m = moves[i];
+            pos.make(m);
+            int score = -negamax(pos, depth - 1, -beta, -alpha, ply + 1);
+            pos.unmake(m);
+            if (stop) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestHere = m;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Remember the result
+        int bound = best >= beta? TranspositionTable.LOWER
+                : best > alpha0? TranspositionTable.EXACT
+                : TranspositionTable.UPPER;
+        tt.store(hash, bestHere, Math.max(depth, 0), toTable(best, ply), bound);
+
+        return best;
+    }
+
+    /**
+     * Gets the principal variation by following the best moves stored in the
+     * transposition table.
+     *
+     * @param root		the position the search started from.
+     * @param maxLength	the maximum number of moves to return.
+     * @return the moves of the principal variation.
+     */
+    public long[] getPrincipalVariation(Position root, int maxLength) {
+        Position pos = root.copy();
+        long[] pv = new long[maxLength];
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int len = 0;
+        long move = bestMove;
+        while (len < maxLength && move != PackedMove.NONE) {
+            pv[len ++] = move;
+            pos.make(move);
+
+            // Find the next move in the table
+            move = PackedMove.NONE;
+            long entry = tt.probe(pos.getHash());
+            if (entry != 0 && TranspositionTable.hasMove(entry)) {
+                int n = MoveGenerator.generate(pos, moves, 0);
+                int fromTo = TranspositionTable.moveFromTo(entry);
+                for (int i = 0; i < n; i ++) {
+                    if (PackedMove.fromTo(moves[i]) == fromTo) {
+                        move = moves[i];
+                        break;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(pv, len);
+    }
+
+    /**
+     * Gets the information of the last completed iteration.
+     *
+     * @param root	the position the search started from.
+     * @param start	the time (from {@link System#nanoTime()}) the search
+     * started at.
+     * @return the information.
+     */
+    private SearchInfo getInfo(Position root, long start) {
+        long nanos = Math.max(1, System.nanoTime() - start);
+        return new SearchInfo(completedDepth, Math.max(selDepth,
+                completedDepth), nodes, nodes * 1000000000L / nanos,
+                tt.hashfull(), bestScore, nanos / 1000000,
+                getPrincipalVariation(root, completedDepth));
+    }
+
+    /**
+     * Converts a tablebase result to a score, ranking wins by how soon they
+     * happen in the same way as found wins.
+     */
+    private static int tablebaseScore(int probe, int ply) {
+        int dist = EndgameTablebase.distance(probe);
+        switch (EndgameTablebase.result(probe)) {
+            case EndgameTablebase.WIN:
+                return Math.max(MATE - ply - dist, MATE / 2);
+            case EndgameTablebase.LOSS:
+                return Math.min(-MATE + ply + dist, -MATE / 2);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Tells a running search to stop. The best move of the last completed
+     * iteration is returned.
+     */
+    public void stop() {
+        this.stop = true;
+    }
+
+    /**
+     * Checks if the search has reached its deadline.
+     */
+    private boolean isTimeUp() {
+        long d = (time != null)? time.getHardDeadline() : deadline;
+        return d > 0 && System.currentTimeMillis() >= d;
+    }
+
+    public boolean isStopped() {
+        return stop;
+    }
+
+    public long getBestMove() {
+        return bestMove;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public int getSelDepth() {
+        return selDepth;
+    }
+
+    public SearchInfoRing getInfoRing() {
+        return infoRing;
+    }
+
+    /**
+     * Sets the ring the information of each completed iteration is
+     * published to.
+     *
+     * @param infoRing	the ring, or null to publish nothing.
+     */
+    public void setInfoRing(SearchInfoRing infoRing) {
+        this.infoRing = infoRing;
+    }
+
+    public int getDrawMoves() {
+        return drawMoves;
+    }
+
+    /**
+     * Sets the number of moves by each side without a capture or checker
+     * move after which the search scores a position as a draw, as by
+     * {@link Gra#setDrawMoves(int)}.
+     *
+     * @param drawMoves	the number of moves, or 0 for no limit.
+     */
+    public void setDrawMoves(int drawMoves) {
+        this.drawMoves = Math.max(0, drawMoves);
+    }
+
+    public EndgameTablebase getTablebase() {
+        return tablebase;
+    }
+
+    public void setTablebase(EndgameTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return tt;
+    }
+
+    /**
+     * Moves the specified move to the front of the list, keeping the order of
+     * the others.
+     */
+    private static void moveToFront(long[] moves, int n, long move) {
+        for (int i = 0; i < n; i ++) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the first move with the start/end key to the front of the list.
+     */
+    private static void moveToFront(long[] moves, int n, int fromTo) {
+        for (int i = 0; i < n; i ++) {
+            if (PackedMove.fromTo(moves[i]) == fromTo) {
+                long m = moves[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = m;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Converts a mate score relative to the root into one relative to the
+     * current ply for storage in the table.
+     */
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score + ply;
+        } else if (score < -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score - ply;
+        } else if (score < -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,147 @@
+package Silnik;
+
+/**
+ * What a {@link Search} found in one completed iteration, in the spirit of
+ * the "info" lines of the UCI protocol. It is immutable, so it can be handed
+ * from the search thread to any other thread through a
+ * {@link SearchInfoRing}.
+ */
+public final class SearchInfo {
+
+    private final int depth;
+
+    private final int selDepth;
+
+    private final long nodes;
+
+    private final long nps;
+
+    private final int hashfull;
+
+    private final int score;
+
+    private final long time;
+
+    private final long[] pv;
+
+    /**
+     * Creates the information of an iteration.
+     *
+     * @param depth		the depth searched to.
+     * @param selDepth	the deepest ply reached (skips go past the depth).
+     * @param nodes		the nodes searched so far in the search.
+     * @param nps		the nodes searched per second.
+     * @param hashfull	the use of the transposition table, per thousand.
+     * @param score		the score of the best move (see {@link Search#MATE}).
+     * @param time		the time since the search started (in ms).
+     * @param pv		the principal variation (packed moves).
+     */
+    public SearchInfo(int depth, int selDepth, long nodes, long nps,
+                      int hashfull, int score, long time, long[] pv) {
+        this.depth = depth;
+        this.selDepth = selDepth;
+        this.nodes = nodes;
+        this.nps = nps;
+        this.hashfull = hashfull;
+        this.score = score;
+        this.time = time;
+        this.pv = pv.clone();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSelDepth() {
+        return selDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNps() {
+        return nps;
+    }
+
+    public int getHashfull() {
+        return hashfull;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Checks if the score is a forced win or loss.
+     */
+    public boolean isMate() {
+        return Math.abs(score) > Search.MATE - Search.MAX_PLY;
+    }
+
+    /**
+     * Gets the number of moves to a forced win (positive) or loss
+     * (negative), counting the moves of the side to move only.
+     *
+     * @return the moves to mate, or 0 if the score is not a mate score.
+     */
+    public int getMateIn() {
+        if (!isMate()) {
+            return 0;
+        }
+        int plies = Search.MATE - Math.abs(score);
+        return score > 0? (plies + 1) / 2 : -(plies / 2);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the principal variation.
+     *
+     * @return a copy of the packed moves.
+     */
+    public long[] getPv() {
+        return pv.clone();
+    }
+
+    /**
+     * Gets the principal variation as text, e.g. "11-15 22-18".
+     *
+     * @return the moves separated by spaces.
+     */
+    public String getPvString() {
+        StringBuilder sb = new StringBuilder();
+        for (long move : pv) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(PackedMove.toString(move));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the information as a UCI-like line, e.g. "info depth 9 seldepth
+     * 14 score cp 35 nodes 81234 nps 950000 hashfull 12 time 85 pv 11-15
+     * 22-18".
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("info depth ").append(depth)
+                .append(" seldepth ").append(selDepth).append(" score ");
+        if (isMate()) {
+            sb.append("mate ").append(getMateIn());
+        } else {
+            sb.append("cp ").append(score);
+        }
+        sb.append(" nodes ").append(nodes).append(" nps ").append(nps)
+                .append(" hashfull ").append(hashfull)
+                .append(" time ").append(time);
+        if (pv.length > 0) {
+            sb.append(" pv ").append(getPvString());
+        }
+        return sb.toString();
+    }
+}
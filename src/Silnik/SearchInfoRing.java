@@ -0,0 +1,173 @@
+package Silnik;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free ring buffer of {@link SearchInfo} for searches to publish to
+ * and any number of readers (e.g. a status bar or a log) to follow. A search
+ * never waits for a reader: when a reader falls more than the capacity
+ * behind, the oldest entries are overwritten and the reader skips them.
+ * <p>
+ * Each slot holds the latest entry written to it with its sequence number.
+ * A publisher claims a sequence number and swaps its entry into the slot
+ * unless a later one is already there, so a publisher that was held up can
+ * never put an old entry back over a newer one. A reader only takes the
+ * entry from a slot if it has the sequence number it wants.
+ */
+public class SearchInfoRing {
+
+    /** The default number of entries kept. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final AtomicReferenceArray<Slot> slots;
+
+    /** The sequence number of the next entry to be published. */
+    private final AtomicLong head = new AtomicLong();
+
+    private final int mask;
+
+    public SearchInfoRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a ring buffer.
+     *
+     * @param capacity	the number of entries kept (rounded up to a power of
+     * two).
+     */
+    public SearchInfoRing(int capacity) {
+        int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /**
+     * Adds an entry, overwriting the oldest one if the ring is full. This
+     * never blocks.
+     *
+     * @param info	the entry to add.
+     */
+    public void publish(SearchInfo info) {
+        long seq = head.getAndIncrement();
+        int i = (int) seq & mask;
+        Slot slot = new Slot(seq, info);
+        while (true) {
+            Slot current = slots.get(i);
+            if (current != null && current.seq > seq) {
+                return;
+            }
+            if (slots.compareAndSet(i, current, slot)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the latest entry.
+     *
+     * @return the latest entry, or null if none was published.
+     */
+    public SearchInfo latest() {
+        long published = head.get();
+        for (long seq = published - 1; seq >= 0
+                && published - seq <= mask + 1; seq --) {
+            Slot slot = slots.get((int) seq & mask);
+            if (slot != null && slot.seq == seq) {
+                return slot.info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of entries published so far.
+     */
+    public long getPublished() {
+        return head.get();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Creates a reader that starts with the next entry to be published.
+     *
+     * @return the reader.
+     */
+    public Reader newReader() {
+        return new Reader(head.get());
+    }
+
+    /**
+     * An entry with its sequence number.
+     */
+    private static final class Slot {
+
+        final long seq;
+
+        final SearchInfo info;
+
+        Slot(long seq, SearchInfo info) {
+            this.seq = seq;
+            this.info = info;
+        }
+    }
+
+    /**
+     * Follows the entries of the ring in order. A reader is meant to be used
+     * by one thread.
+     */
+    public class Reader {
+
+        /** The sequence number of the next entry to read. */
+        private long next;
+
+        /** The number of entries that were overwritten before being read. */
+        private long missed;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Gets the next entry, skipping any that were overwritten.
+         *
+         * @return the next entry, or null if there is none yet.
+         */
+        public SearchInfo poll() {
+            while (true) {
+                long published = head.get();
+                if (next >= published) {
+                    return null;
+                }
+
+                // Jump over the entries that were overwritten
+                if (published - next > mask + 1) {
+                    long oldest = published - mask - 1;
+                    this.missed += oldest - next;
+                    this.next = oldest;
+                }
+                Slot slot = slots.get((int) next & mask);
+                if (slot != null && slot.seq == next) {
+                    this.next ++;
+                    return slot.info;
+                }
+
+                // The entry is still being written
+                if (slot == null || slot.seq < next) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Gets the entries that were overwritten before they were read.
+         */
+        public long getMissed() {
+            return missed;
+        }
+    }
+}
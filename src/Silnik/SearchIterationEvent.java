@@ -0,0 +1,46 @@
+package Silnik;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+/**
+ * The Java Flight Recorder event for a completed iteration of a
+ * {@link Search}. Its duration is the time of the iteration.
+ */
+@Name("checkers.SearchIteration")
+@Label("Search Iteration")
+@Category({"Checkers", "Engine"})
+@Description("An iteration of the iterative deepening search")
+class SearchIterationEvent extends jdk.jfr.Event {
+
+    @Label("Depth")
+    int depth;
+
+    /** The nodes searched in the iteration. */
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Nodes Per Second")
+    @Frequency
+    long nps;
+
+    @Label("Best Move")
+    String bestMove;
+
+    @Label("Score")
+    int score;
+
+    /** The part of the probes of the transposition table in the iteration
+     * that found an entry. */
+    @Label("TT Hit Rate")
+    @Percentage
+    double ttHitRate;
+
+    @Label("TT Used")
+    @Description("The part of the transposition table in use, in permille")
+    int hashfull;
+}
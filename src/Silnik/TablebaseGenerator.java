@@ -0,0 +1,315 @@
+package Silnik;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the endgame tablebase by retrograde analysis, for every
+ * material signature with up to a given number of pieces.
+ * <p>
+ * Signatures are solved in dependency order: fewer pieces first (skips lead
+ * there), then fewer regular checkers (crowning leads there). A signature
+ * and its colour-swapped twin are solved together, since a move in one
+ * leads to a position of the other. They are solved in passes: pass
+ * {@code k} marks the positions won in exactly {@code k} plies (a move
+ * reaches a position lost in {@code k - 1}) and lost in exactly {@code k}
+ * plies (every move reaches a position won in at most {@code k - 1}). Each
+ * pass is split over the cores with fork-join. Whatever is still unknown
+ * when the passes stop making progress is a draw.
+ */
+public class TablebaseGenerator {
+
+    /** The number of positions below which a pass is not split further. */
+    private static final int CHUNK = 4096;
+
+    /** The stored value of a draw (0 means unknown while generating). */
+    private static final short DRAW = Short.MAX_VALUE;
+
+    /** The directory to write the tablebase to. */
+    private final Path dir;
+
+    /** The largest number of pieces to generate tables for. */
+    private final int maxPieces;
+
+    /** The pool the passes are run on. */
+    private final ForkJoinPool pool;
+
+    /** The tables that are already written, for looking up dependencies. */
+    private EndgameTablebase solved;
+
+    public TablebaseGenerator(Path dir, int maxPieces) {
+        this(dir, maxPieces, ForkJoinPool.commonPool());
+    }
+
+    public TablebaseGenerator(Path dir, int maxPieces, ForkJoinPool pool) {
+        this.dir = dir;
+        this.maxPieces = maxPieces;
+        this.pool = pool;
+    }
+
+    /**
+     * Generates every missing table with up to the maximum number of pieces.
+     *
+     * @throws IOException if a table cannot be written.
+     */
+    public void generate() throws IOException {
+        Files.createDirectories(dir);
+        this.solved = EndgameTablebase.open(dir);
+
+        // List the signatures in the order they depend on each other
+        List<Integer> signatures = new ArrayList<>();
+        for (int bc = 0; bc <= maxPieces; bc ++) {
+            for (int bk = 0; bc + bk <= maxPieces; bk ++) {
+                for (int wc = 0; bc + bk + wc <= maxPieces; wc ++) {
+                    for (int wk = 0; bc + bk + wc + wk <= maxPieces; wk ++) {
+                        if (bc + bk > 0 && wc + wk > 0) {
+                            signatures.add(TablebaseIndex.signature(
+                                    bc, bk, wc, wk));
+                        }
+                    }
+                }
+            }
+        }
+        signatures.sort(Comparator.comparingInt(TablebaseIndex::pieces)
+                .thenComparingInt(TablebaseIndex::checkers)
+                .thenComparingInt(s -> s));
+
+        // Solve each signature with its twin
+        for (int sig : signatures) {
+            int twin = TablebaseIndex.swap(sig);
+            if (solved.has(sig) || twin < sig) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            solve(sig, twin);
+            System.out.println("Solved " + EndgameTablebase.fileName(sig, "")
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Solves a signature together with its colour-swapped twin (which may be
+     * the same signature) and writes both.
+     */
+    private void solve(int sig, int twin) throws IOException {
+        Slice a = new Slice(sig);
+        Slice b = (twin == sig)? a : new Slice(twin);
+        Pass pass = new Pass(a, b);
+
+        // Keep going until nothing changes and no dependency is left that
+        // could still be reached
+        for (int k = 0; ; k ++) {
+            pass.run(k);
+            if (pass.changed.get() == 0 && k > pass.maxDependency.get() + 1) {
+                break;
+            }
+        }
+
+        // Everything else is a draw
+        for (Slice s : (a == b)? new Slice[] {a} : new Slice[] {a, b}) {
+            short[] v = s.values;
+            for (int i = 0; i < v.length; i ++) {
+                if (v[i] == 0) {
+                    v[i] = DRAW;
+                }
+            }
+            EndgameTablebase.write(dir, s.signature, v);
+        }
+        this.solved = EndgameTablebase.open(dir);
+    }
+
+    /**
+     * The positions of one signature being solved.
+     */
+    private static class Slice {
+
+        private final int signature;
+
+        private final TablebaseIndex index;
+
+        /** The value of each position: 0 while unknown, {@code d} if won in
+         * {@code d} plies, {@code -d - 1} if lost in {@code d} plies. */
+        private final short[] values;
+
+        private Slice(int signature) {
+            this.signature = signature;
+            this.index = new TablebaseIndex(signature);
+            long size = index.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Table too large: "
+                        + Integer.toHexString(signature));
+            }
+            this.values = new short[(int) size];
+        }
+    }
+
+    /**
+     * One pass over a signature and its twin.
+     */
+    private class Pass {
+
+        private final Slice a, b;
+
+        private final AtomicInteger changed = new AtomicInteger();
+
+        /** The largest distance seen in an already solved table. */
+        private final AtomicInteger maxDependency = new AtomicInteger(-1);
+
+        private Pass(Slice a, Slice b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        private void run(int k) {
+            changed.set(0);
+            pool.invoke(new Task(a, k, 0, a.values.length));
+            if (b != a) {
+                pool.invoke(new Task(b, k, 0, b.values.length));
+            }
+        }
+
+        /**
+         * Solves the unknown positions in a range of one slice for pass k.
+         */
+        private class Task extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final Slice slice;
+
+            private final int k, from, to;
+
+            private Task(Slice slice, int k, int from, int to) {
+                this.slice = slice;
+                this.k = k;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > CHUNK) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Task(slice, k, from, mid),
+                            new Task(slice, k, mid, to));
+                    return;
+                }
+                int[] masks = new int[3];
+                long[] moves = new long[MoveGenerator.MAX_MOVES];
+                Position pos = new Position();
+                short[] values = slice.values;
+                int count = 0;
+                for (int i = from; i < to; i ++) {
+                    if (values[i] != 0) {
+                        continue;
+                    }
+                    slice.index.unindex(i, masks);
+                    pos.set(masks[0], masks[1], masks[2], true, -1);
+                    short v = solve(pos, moves, k);
+                    if (v != 0) {
+                        values[i] = v;
+                        count ++;
+                    }
+                }
+                changed.addAndGet(count);
+            }
+        }
+
+        /**
+         * Tries to solve a position with black to move in pass k.
+         *
+         * @return the new value, or 0 if it is still unknown.
+         */
+        private short solve(Position pos, long[] moves, int k) {
+            int n = MoveGenerator.generate(pos, moves, 0);
+            if (n == 0) {
+                return (short) (k == 0? -1 : 0);
+            }
+            if (k == 0) {
+                return 0;
+            }
+            boolean allWon = true;
+            for (int i = 0; i < n; i ++) {
+                pos.make(moves[i]);
+                int v = valueAfter(pos);
+                pos.unmake(moves[i]);
+
+                // A move to a position the opponent loses in k - 1 plies
+                if (v == -k) {
+                    return (short) k;
+                }
+                if (v <= 0 || v > k - 1) {
+                    allWon = false;
+                }
+            }
+            return (short) (allWon? -k - 1 : 0);
+        }
+
+        /**
+         * Gets the value of a position with white to move, from white's point
+         * of view, in the encoding of {@link Slice#values}.
+         */
+        private int valueAfter(Position pos) {
+            int black = TablebaseIndex.flip(pos.getWhite());
+            int white = TablebaseIndex.flip(pos.getBlack());
+            int kings = TablebaseIndex.flip(pos.getKings());
+            if (black == 0) {
+                return -1;
+            }
+
+            // A position of the signatures being solved
+            int sig = TablebaseIndex.signatureOf(black, white, kings);
+            Slice s = (sig == a.signature)? a : (sig == b.signature)? b : null;
+            if (s != null) {
+                return s.values[(int) s.index.index(black, white, kings)];
+            }
+
+            // A position of a table solved before
+            int probe = solved.probe(black, white, kings);
+            if (probe == EndgameTablebase.UNKNOWN) {
+                throw new IllegalStateException("Missing table "
+                        + EndgameTablebase.fileName(sig, "wld"));
+            }
+            int d = EndgameTablebase.distance(probe);
+            switch (EndgameTablebase.result(probe)) {
+                case EndgameTablebase.WIN:
+                    maxDependency.accumulateAndGet(d, Math::max);
+                    return d;
+                case EndgameTablebase.LOSS:
+                    maxDependency.accumulateAndGet(d, Math::max);
+                    return -d - 1;
+                default:
+                    return DRAW;
+            }
+        }
+    }
+
+    /**
+     * Generates the tablebase from the command line:
+     * {@code TablebaseGenerator <dir> <max pieces> [threads]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TablebaseGenerator <dir> <max pieces>"
+                    + " [threads]");
+            return;
+        }
+        int threads = args.length > 2? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            new TablebaseGenerator(Paths.get(args[0]),
+                    Integer.parseInt(args[1]), pool).generate();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package Silnik;
+
+/**
+ * A perfect index for the positions of one material signature in the
+ * endgame tablebase. Positions are always stored with black to move (a
+ * white-to-move position is looked up through {@link #flip(int)}), and every
+ * index from 0 to {@link #size()} - 1 maps to exactly one legal placement:
+ * <ul>
+ *  <li>black checkers on tiles 0 to 27 (a black checker on 28 to 31 would
+ *  already be a king),</li>
+ *  <li>white checkers on the tiles from 4 to 31 not holding a black checker,</li>
+ *  <li>black kings, then white kings, on the remaining tiles.</li>
+ * </ul>
+ * Each group is ranked with the combinatorial number system over the tiles
+ * still free for it. As the number of free tiles for the white checkers
+ * depends on where the black checkers are, the start of each black checker
+ * placement is kept in a table of offsets.
+ */
+public final class TablebaseIndex {
+
+    /** The tiles a black checker can be on. */
+    private static final int BLACK_CHECKER_TILES = 0x0FFFFFFF;
+
+    /** The tiles a white checker can be on. */
+    private static final int WHITE_CHECKER_TILES = 0xFFFFFFF0;
+
+    /** Binomial coefficients C(n, k) for n and k up to 32. */
+    private static final long[][] BINOMIAL = new long[33][33];
+
+    static {
+        for (int n = 0; n <= 32; n ++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k ++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private final int blackCheckers, blackKings, whiteCheckers, whiteKings;
+
+    /** The first index for each rank of the black checker placement. */
+    private final long[] offsets;
+
+    /** The number of ways to place the white kings after the black kings. */
+    private final long whiteKingPlacements;
+
+    /** The number of ways to place all of the kings. */
+    private final long kingPlacements;
+
+    public TablebaseIndex(int signature) {
+        this.blackCheckers = signature & 0xF;
+        this.blackKings = (signature >>> 4) & 0xF;
+        this.whiteCheckers = (signature >>> 8) & 0xF;
+        this.whiteKings = (signature >>> 12) & 0xF;
+        int free = 32 - blackCheckers - whiteCheckers;
+        this.whiteKingPlacements = binomial(free - blackKings, whiteKings);
+        this.kingPlacements = binomial(free, blackKings) * whiteKingPlacements;
+
+        // Count the white checker placements for each black placement
+        int ranks = (int) binomial(28, blackCheckers);
+        this.offsets = new long[ranks + 1];
+        for (int r = 0; r < ranks; r ++) {
+            int black = unrank(r, blackCheckers, BLACK_CHECKER_TILES);
+            int whiteFree = Integer.bitCount(WHITE_CHECKER_TILES & ~black);
+            offsets[r + 1] = offsets[r]
+                    + binomial(whiteFree, whiteCheckers) * kingPlacements;
+        }
+    }
+
+    /**
+     * Packs piece counts into a signature.
+     *
+     * @param blackCheckers	the number of black checkers (not kings).
+     * @param blackKings	the number of black kings.
+     * @param whiteCheckers	the number of white checkers (not kings).
+     * @param whiteKings	the number of white kings.
+     * @return the signature.
+     */
+    public static int signature(int blackCheckers, int blackKings,
+                                int whiteCheckers, int whiteKings) {
+        return blackCheckers | (blackKings << 4) | (whiteCheckers << 8)
+                | (whiteKings << 12);
+    }
+
+    /**
+     * Gets the signature of a position with black to move.
+     */
+    public static int signatureOf(int black, int white, int kings) {
+        return signature(Integer.bitCount(black & ~kings),
+                Integer.bitCount(black & kings),
+                Integer.bitCount(white & ~kings),
+                Integer.bitCount(white & kings));
+    }
+
+    /**
+     * Gets the signature with the colours swapped.
+     */
+    public static int swap(int signature) {
+        return ((signature & 0xFF) << 8) | ((signature >>> 8) & 0xFF);
+    }
+
+    /**
+     * Gets the total number of pieces in a signature.
+     */
+    public static int pieces(int signature) {
+        return (signature & 0xF) + ((signature >>> 4) & 0xF)
+                + ((signature >>> 8) & 0xF) + ((signature >>> 12) & 0xF);
+    }
+
+    /**
+     * Gets the number of regular checkers (not kings) in a signature.
+     */
+    public static int checkers(int signature) {
+        return (signature & 0xF) + ((signature >>> 8) & 0xF);
+    }
+
+    /**
+     * Rotates a mask by 180 degrees, so that with the colours swapped a
+     * white-to-move position becomes the same position with black to move.
+     *
+     * @param mask	the mask to rotate.
+     * @return the rotated mask (tile {@code i} becomes tile {@code 31 - i}).
+     */
+    public static int flip(int mask) {
+        return Integer.reverse(mask);
+    }
+
+    /**
+     * Gets the number of positions with this signature.
+     *
+     * @return the size of the index.
+     */
+    public long size() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Gets the index of a position with black to move and this signature.
+     *
+     * @param black	the mask of black checkers and kings.
+     * @param white	the mask of white checkers and kings.
+     * @param kings	the mask of kings.
+     * @return the index, from 0 to {@link #size()} - 1.
+     */
+    public long index(int black, int white, int kings) {
+        int bc = black & ~kings, wc = white & ~kings;
+        int bk = black & kings, wk = white & kings;
+        int whiteFree = WHITE_CHECKER_TILES & ~bc;
+        int kingFree = ~(bc | wc);
+        long bcRank = rank(bc, BLACK_CHECKER_TILES);
+        long wcRank = rank(wc, whiteFree);
+        long bkRank = rank(bk, kingFree);
+        long wkRank = rank(wk, kingFree & ~bk);
+        return offsets[(int) bcRank] + wcRank * kingPlacements
+                + bkRank * whiteKingPlacements + wkRank;
+    }
+
+    /**
+     * Gets the position for an index.
+     *
+     * @param index	the index, from 0 to {@link #size()} - 1.
+     * @param out	the array to write the black, white and king masks to.
+     */
+    public void unindex(long index, int[] out) {
+
+        // Find the black checker placement
+        int lo = 0, hi = offsets.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int bc = unrank(lo, blackCheckers, BLACK_CHECKER_TILES);
+        long rest = index - offsets[lo];
+
+        // The rest is a mixed radix number
+        int wc = unrank(rest / kingPlacements, whiteCheckers,
+                WHITE_CHECKER_TILES & ~bc);
+        rest %= kingPlacements;
+        int kingFree = ~(bc | wc);
+        int bk = unrank(rest / whiteKingPlacements, blackKings, kingFree);
+        int wk = unrank(rest % whiteKingPlacements, whiteKings, kingFree & ~bk);
+        out[0] = bc | bk;
+        out[1] = wc | wk;
+        out[2] = bk | wk;
+    }
+
+    /**
+     * Ranks a set of tiles among the allowed tiles (colexicographic order).
+     */
+    private static long rank(int set, int allowed) {
+        long r = 0;
+        int i = 0;
+        for (int m = set; m != 0; m &= m - 1) {
+            int tile = Integer.numberOfTrailingZeros(m);
+            int below = Integer.bitCount(allowed & ((1 << tile) - 1));
+            r += BINOMIAL[below][++ i];
+        }
+        return r;
+    }
+
+    /**
+     * Gets the set of {@code k} allowed tiles with the specified rank.
+     */
+    private static int unrank(long r, int k, int allowed) {
+        int set = 0;
+        int n = Integer.bitCount(allowed);
+        for (int i = k; i > 0; i --) {
+
+            // Find the largest position p with C(p, i) <= r
+            int p = i - 1;
+            while (p + 1 < n && BINOMIAL[p + 1][i] <= r) {
+                p ++;
+            }
+            r -= BINOMIAL[p][i];
+            set |= 1 << nthTile(allowed, p);
+            n = p;
+        }
+        return set;
+    }
+
+    /**
+     * Gets the tile of the n-th (from 0) set bit in a mask.
+     */
+    private static int nthTile(int mask, int n) {
+        for (int i = 0; i < n; i ++) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    private static long binomial(int n, int k) {
+        return (n < 0 || k < 0 || k > n)? 0 : BINOMIAL[n][k];
+    }
+}
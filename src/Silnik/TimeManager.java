@@ -0,0 +1,155 @@
+package Silnik;
+
+/**
+ * Decides how long a search may take. There are two limits:
+ * <ul>
+ *  <li>the soft limit, the time the search should normally use: a new
+ *  iteration is only started if it is expected to finish before it,</li>
+ *  <li>the hard limit, at which a running iteration is abandoned.</li>
+ * </ul>
+ * The time of the next iteration is predicted from the last two, as each
+ * iteration takes about as many times longer than the one before as the
+ * effective branching factor.
+ */
+public class TimeManager {
+
+    /** The number of moves a game clock is assumed to last for. */
+    public static final int DEFAULT_MOVES_TO_GO = 25;
+
+    /** The time kept back from the clock for the overhead of each move. */
+    private static final long SAFETY_MARGIN = 30;
+
+    /** The branching ratio used until two iterations have been timed. */
+    private static final double DEFAULT_RATIO = 4;
+
+    private static final double MIN_RATIO = 1.5, MAX_RATIO = 10;
+
+    /** The time the search should use (in ms). */
+    private final long softLimit;
+
+    /** The time the search must not go over (in ms). */
+    private final long hardLimit;
+
+    /** The time (from {@link System#currentTimeMillis()}) the move started. */
+    private long start;
+
+    /** The flag set while the search is on the opponent's time, when the
+     * limits are not in force. */
+    private volatile boolean pondering;
+
+    private TimeManager(long softLimit, long hardLimit) {
+        this.softLimit = Math.max(1, softLimit);
+        this.hardLimit = Math.max(this.softLimit, hardLimit);
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a time manager for a fixed amount of time per move. The time is
+     * never exceeded, but an iteration that would not finish in it is not
+     * started.
+     *
+     * @param moveTimeMs	the time for the move.
+     * @return the time manager.
+     */
+    public static TimeManager forMove(long moveTimeMs) {
+        return new TimeManager(moveTimeMs, moveTimeMs);
+    }
+
+    /**
+     * Creates a time manager for a move played on a game clock. The clock is
+     * shared out over the moves expected to be left, and a move may run over
+     * its share when an iteration takes longer than predicted.
+     *
+     * @param remainingMs	the time left on the clock.
+     * @param incrementMs	the time added to the clock after each move.
+     * @param movesToGo		the number of moves the clock has to last for.
+     * @return the time manager.
+     */
+    public static TimeManager forClock(long remainingMs, long incrementMs,
+                                       int movesToGo) {
+        long usable = Math.max(1, remainingMs - SAFETY_MARGIN);
+        long share = usable / Math.max(1, movesToGo) + incrementMs * 3 / 4;
+        long soft = Math.min(share, usable);
+        long hard = Math.min(soft * 4, usable / 3 + incrementMs);
+        return new TimeManager(soft, Math.min(hard, usable));
+    }
+
+    /**
+     * Holds off the limits of this time manager until {@link #ponderHit()},
+     * for a search started on the opponent's time. The search is given the
+     * time manager when it starts, so the limits reach it however soon the
+     * opponent's move comes. The time spent until then counts towards the
+     * move.
+     *
+     * @return this time manager.
+     */
+    public TimeManager ponder() {
+        this.pondering = true;
+        return this;
+    }
+
+    /**
+     * Puts the limits in force, as the move that was pondered on was played.
+     * A search running with this time manager stops at the hard deadline
+     * and starts no iteration past the soft limit from then on.
+     */
+    public void ponderHit() {
+        this.pondering = false;
+    }
+
+    public boolean isPondering() {
+        return pondering;
+    }
+
+    /**
+     * Restarts the clock of this move from now.
+     */
+    public void start() {
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the time since the move started (in ms).
+     */
+    public long elapsed() {
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Gets the time (from {@link System#currentTimeMillis()}) at which the
+     * search must stop.
+     *
+     * @return the deadline, or 0 while pondering.
+     */
+    public long getHardDeadline() {
+        return pondering? 0 : start + hardLimit;
+    }
+
+    /**
+     * Decides if another iteration should be started.
+     *
+     * @param lastMs		the time the last iteration took.
+     * @param previousMs	the time the iteration before it took, or 0.
+     * @return true if the next iteration is expected to finish within the
+     * soft limit.
+     */
+    public boolean startIteration(long lastMs, long previousMs) {
+        if (pondering) {
+            return true;
+        }
+        double ratio = DEFAULT_RATIO;
+        if (previousMs > 0 && lastMs > 0) {
+            ratio = Math.min(MAX_RATIO,
+                    Math.max(MIN_RATIO, (double) lastMs / previousMs));
+        }
+        return elapsed() + (long) (lastMs * ratio) <= softLimit;
+    }
+
+    public long getSoftLimit() {
+        return softLimit;
+    }
+
+    public long getHardLimit() {
+        return hardLimit;
+    }
+}
@@ -0,0 +1,149 @@
+package Silnik;
+
+import java.util.Arrays;
+
+/**
+ * A transposition table for the engine. Each entry is two {@code long}s: the
+ * position hash XOR-ed with the data, and the data itself. The XOR lets a
+ * torn entry (written by two threads at once) be detected on probe rather
+ * than trusted, so the table can be shared without locks.
+ * <p>
+ * The data is laid out as:
+ * <pre>
+ *  bits  0..15	score
+ *  bits 16..23	depth
+ *  bits 24..25	bound ({@link #EXACT}, {@link #LOWER} or {@link #UPPER})
+ *  bits 26..35	start/end of the best move ({@link PackedMove#fromTo(long)})
+ *  bit  36		set if there is a best move
+ *  bit  37		always set, so a stored entry is never 0
+ *  bits 40..47	search generation the entry was written in
+ * </pre>
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;
+
+    public static final int LOWER = 1;
+
+    public static final int UPPER = 2;
+
+    private static final long HAS_MOVE = 1L << 36;
+
+    private static final long VALID = 1L << 37;
+
+    private final long[] keys;
+
+    private final long[] data;
+
+    private final int mask;
+
+    /** The current search generation, used to prefer fresh entries. */
+    private int age;
+
+    /**
+     * Creates a table using roughly the specified amount of memory.
+     *
+     * @param sizeMb	the size of the table in megabytes.
+     */
+    public TranspositionTable(int sizeMb) {
+        long entries = Math.max(1024, (long) sizeMb * 1024 * 1024 / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 28));
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash	the hash of the position.
+     * @return the entry data, or 0 if the position is not in the table.
+     */
+    public long probe(long hash) {
+        int i = (int) hash & mask;
+        long d = data[i];
+        return (keys[i] ^ d) == hash? d : 0;
+    }
+
+    /**
+     * Stores a search result.
+     *
+     * @param hash	the hash of the position.
+     * @param move	the best move found, or {@link PackedMove#NONE}.
+     * @param depth	the remaining depth that was searched.
+     * @param score	the score (already adjusted for mate distance).
+     * @param bound	{@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+     */
+    public void store(long hash, long move, int depth, int score, int bound) {
+        int i = (int) hash & mask;
+        long old = data[i];
+
+        // Keep deeper results of the same generation for other positions
+        if (old != 0 && (keys[i] ^ old) != hash && age(old) == (age & 0xFF)
+                && depth(old) > depth) {
+            return;
+        }
+
+        long d = (score & 0xFFFFL) | ((long) (depth & 0xFF) << 16)
+                | ((long) bound << 24) | VALID | ((long) (age & 0xFF) << 40);
+        if (move != PackedMove.NONE) {
+            d |= ((long) PackedMove.fromTo(move) << 26) | HAS_MOVE;
+        }
+        this.data[i] = d;
+        this.keys[i] = hash ^ d;
+    }
+
+    /**
+     * Starts a new search generation so older entries are replaced first.
+     */
+    public void newSearch() {
+        this.age ++;
+    }
+
+    /**
+     * Clears all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Estimates how full the table is by sampling the first entries.
+     *
+     * @return the number of used entries per thousand (0 to 1000).
+     */
+    public int hashfull() {
+        int n = Math.min(1000, data.length), used = 0;
+        for (int i = 0; i < n; i ++) {
+            if (data[i] != 0 && age(data[i]) == (age & 0xFF)) {
+                used ++;
+            }
+        }
+        return used * 1000 / n;
+    }
+
+    public static int score(long data) {
+        return (short) data;
+    }
+
+    public static int depth(long data) {
+        return (byte) (data >>> 16);
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 24) & 3;
+    }
+
+    public static boolean hasMove(long data) {
+        return (data & HAS_MOVE) != 0;
+    }
+
+    public static int moveFromTo(long data) {
+        return (int) (data >>> 26) & 0x3FF;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> 40) & 0xFF;
+    }
+}
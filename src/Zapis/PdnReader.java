@@ -0,0 +1,467 @@
+package Zapis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import Model.Gra;
+import Model.Plansza;
+import Silnik.MoveGenerator;
+import Silnik.Notation;
+import Silnik.PackedMove;
+import Silnik.Position;
+
+/**
+ * Reads games in Portable Draughts Notation (PDN) one at a time from a
+ * stream, so files of any size can be read without holding them in memory.
+ * The reader keeps its own character buffer and reports tags and moves to a
+ * {@link Handler} as they are read: tags are passed as reused character
+ * sequences and moves as the numbers of their squares, so reading a game
+ * allocates nothing.
+ * <p>
+ * Comments ({@code {...}} and {@code ;...}), variations, move numbers,
+ * annotations and numeric annotation glyphs are skipped. Moves are not
+ * checked against the rules here; that is up to the handler.
+ */
+public class PdnReader implements Closeable {
+
+    /** The result of a game won by black (the first player), "2-0" or
+     * "1-0". */
+    public static final int BLACK_WIN = 1;
+
+    /** The result of a game won by white, "0-2" or "0-1". */
+    public static final int WHITE_WIN = -1;
+
+    /** The result of a drawn game, "1-1" or "1/2-1/2". */
+    public static final int DRAW = 0;
+
+    /** The result of an unfinished game, "*" or no result at all. */
+    public static final int UNKNOWN = 2;
+
+    /** The largest number of squares in one move. */
+    private static final int MAX_SQUARES = 32;
+
+    private final Reader in;
+
+    private final char[] buffer = new char[1 << 16];
+
+    private int pos, limit;
+
+    /** The squares of the move being read. */
+    private final int[] squares = new int[MAX_SQUARES];
+
+    /** The number of squares of the move being read. */
+    private int count;
+
+    /** The flag indicating if the move being read is written as a skip. */
+    private boolean capture;
+
+    /** The name and value of the tag being read. */
+    private final StringBuilder name = new StringBuilder(),
+            value = new StringBuilder();
+
+    private long games;
+
+    public PdnReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next game.
+     *
+     * @param handler	the handler to report the tags, moves and result to.
+     * @return true if a game was read, or false at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    public boolean readGame(Handler handler) throws IOException {
+        boolean started = false, inMoves = false, skipping = false;
+        while (true) {
+            int c = skipWhitespace();
+            if (c < 0) {
+                if (started) {
+                    endGame(handler, UNKNOWN);
+                }
+                return started;
+            }
+            started = true;
+
+            // A tag, or the start of the next game if this one had no result
+            if (c == '[') {
+                if (inMoves) {
+                    endGame(handler, UNKNOWN);
+                    return true;
+                }
+                pos ++;
+                readTag();
+                handler.tag(name, value);
+            }
+
+            // Comments, variations and annotation glyphs
+            else if (c == '{') {
+                skipPast('}');
+            } else if (c == ';' || c == '%') {
+                skipPast('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '*') {
+                pos ++;
+                endGame(handler, UNKNOWN);
+                return true;
+            }
+
+            // A move number, move or result
+            else if (c >= '0' && c <= '9') {
+                inMoves = true;
+                int result = readNumberToken();
+                if (result != Integer.MIN_VALUE) {
+                    endGame(handler, result);
+                    return true;
+                }
+                if (count > 0 && !skipping) {
+                    skipping = !handler.move(squares, count, capture);
+                }
+            }
+
+            // Anything else ($1, !?, "W" ...) is skipped
+            else {
+                skipToken();
+            }
+        }
+    }
+
+    /**
+     * Reads a token starting with a digit: a move number (count set to 0),
+     * a move (count set to its squares) or a result.
+     *
+     * @return the result, or {@link Integer#MIN_VALUE} if not a result.
+     */
+    private int readNumberToken() throws IOException {
+        this.count = 0;
+        this.capture = false;
+        boolean zero = false, half = false;
+        while (true) {
+            int n = readNumber();
+            if (n == 0) {
+                zero = true;
+            }
+            if (count < MAX_SQUARES) {
+                squares[count ++] = n;
+            }
+            int c = peek();
+            if (c == '.') {
+
+                // A move number ("12." or "12...")
+                while (peek() == '.') {
+                    pos ++;
+                }
+                this.count = 0;
+                return Integer.MIN_VALUE;
+            } else if (c == '/') {
+                half = true;
+                pos ++;
+            } else if (c == '-') {
+                pos ++;
+            } else if (c == 'x' || c == 'X' || c == ':') {
+                this.capture = true;
+                pos ++;
+            } else {
+                break;
+            }
+            c = peek();
+            if (c < '0' || c > '9') {
+                break;
+            }
+        }
+        skipToken();
+
+        // Results have a zero, a half or are "1-1"
+        if (half) {
+            return DRAW;
+        } else if (zero && count == 2) {
+            return squares[0] > squares[1]? BLACK_WIN
+                    : squares[0] < squares[1]? WHITE_WIN : UNKNOWN;
+        } else if (count == 2 && !capture && squares[0] == 1
+                && squares[1] == 1) {
+            return DRAW;
+        }
+        if (zero || count < 2) {
+            this.count = 0;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private int readNumber() throws IOException {
+        int n = 0, c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            n = Math.min(n * 10 + (c - '0'), 1 << 20);
+            pos ++;
+        }
+        return n;
+    }
+
+    /**
+     * Reads a tag after its '[' into the name and value.
+     */
+    private void readTag() throws IOException {
+        name.setLength(0);
+        value.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && c != ']' && c != '"'
+                && !Character.isWhitespace(c)) {
+            name.append((char) c);
+            pos ++;
+        }
+        while ((c = peek()) >= 0 && c != ']' && c != '"') {
+            pos ++;
+        }
+        if (c == '"') {
+            pos ++;
+            while ((c = read()) >= 0 && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                }
+                if (c >= 0) {
+                    value.append((char) c);
+                }
+            }
+        }
+        skipPast(']');
+    }
+
+    private void endGame(Handler handler, int result) {
+        this.games ++;
+        handler.end(result);
+    }
+
+    /**
+     * Gets the number of games read so far.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos ++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        this.pos = 0;
+        this.limit = Math.max(0, n);
+        return n > 0;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && Character.isWhitespace(c)) {
+            pos ++;
+        }
+        return c;
+    }
+
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != end) {}
+    }
+
+    private void skipToken() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && !Character.isWhitespace(c)
+                && c != '{' && c != '(' && c != '[' && c != ';') {
+            pos ++;
+        }
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0, c;
+        while ((c = read()) >= 0) {
+            if (c == '{') {
+                skipPast('}');
+            } else if (c == '(') {
+                depth ++;
+            } else if (c == ')' && -- depth == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Receives what is read from a PDN stream, one game at a time.
+     */
+    public interface Handler {
+
+        /**
+         * Handles a tag pair. The sequences are reused for the next tag, so
+         * they must be copied to be kept.
+         *
+         * @param name	the tag name.
+         * @param value	the tag value.
+         */
+        void tag(CharSequence name, CharSequence value);
+
+        /**
+         * Handles a move of the main line.
+         *
+         * @param squares	the squares of the move (numbered from 1), which
+         * are reused for the next move.
+         * @param count		the number of squares.
+         * @param capture	the flag indicating if the move was written as a
+         * skip.
+         * @return false to skip the rest of the moves of the game.
+         */
+        boolean move(int[] squares, int count, boolean capture);
+
+        /**
+         * Handles the end of a game.
+         *
+         * @param result	{@link PdnReader#BLACK_WIN},
+         * {@link PdnReader#WHITE_WIN}, {@link PdnReader#DRAW} or
+         * {@link PdnReader#UNKNOWN}.
+         */
+        void end(int result);
+    }
+
+    /**
+     * Reads the first game of a stream into a new game, playing its moves.
+     * A {@code FEN} tag gives the start position.
+     *
+     * @param in	the stream to read.
+     * @return the game, or null if there is no game or a move is illegal.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static Gra readGame(Reader in) throws IOException {
+        GameLoader loader = new GameLoader();
+        if (!new PdnReader(in).readGame(loader) || !loader.valid) {
+            return null;
+        }
+        return loader.game;
+    }
+
+    /**
+     * Parses a PDN {@code FEN} tag value, such as
+     * {@code B:W21,22,K30:B1,2,K5}, into a game.
+     *
+     * @param fen	the tag value.
+     * @return the game with that position, or null if it is invalid.
+     */
+    public static Gra parseFen(CharSequence fen) {
+        String[] parts = fen.toString().trim().split(":");
+        if (parts.length < 1 || parts[0].isEmpty()) {
+            return null;
+        }
+        boolean blackToMove = Character.toUpperCase(parts[0].charAt(0)) == 'B';
+        int black = 0, white = 0, kings = 0;
+        for (int i = 1; i < parts.length; i ++) {
+            String p = parts[i].trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            boolean isBlack = Character.toUpperCase(p.charAt(0)) == 'B';
+            for (String sq : p.substring(1).split(",")) {
+                sq = sq.trim();
+                boolean king = sq.startsWith("K") || sq.startsWith("k");
+                if (king) {
+                    sq = sq.substring(1);
+                }
+                if (sq.isEmpty()) {
+                    continue;
+                }
+                try {
+                    int dash = sq.indexOf('-');
+                    int from = Integer.parseInt(dash < 0? sq
+                            : sq.substring(0, dash));
+                    int to = dash < 0? from
+                            : Integer.parseInt(sq.substring(dash + 1));
+                    for (int s = from; s <= to; s ++) {
+                        if (s < 1 || s > 32) {
+                            return null;
+                        }
+                        int bit = 1 << (s - 1);
+                        if (isBlack) {
+                            black |= bit;
+                        } else {
+                            white |= bit;
+                        }
+                        if (king) {
+                            kings |= bit;
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        Plansza b = new Plansza();
+        b.setMasks(black, white, kings);
+        return new Gra(b, blackToMove, -1);
+    }
+
+    /**
+     * Plays the moves of a game on a {@link Gra} as they are read.
+     */
+    private static class GameLoader implements Handler {
+
+        private Gra game = new Gra();
+
+        private final Position pos = new Position();
+
+        private final int[] tiles = new int[MAX_SQUARES];
+
+        private final long[] moves = new long[MoveGenerator.MAX_MOVES];
+
+        private boolean valid = true;
+
+        private GameLoader() {
+            pos.set(game);
+        }
+
+        @Override
+        public void tag(CharSequence name, CharSequence value) {
+            if ("FEN".contentEquals(name)) {
+                Gra g = parseFen(value);
+                if (g == null) {
+                    this.valid = false;
+                } else {
+                    this.game = g;
+                    pos.set(g);
+                }
+            }
+        }
+
+        @Override
+        public boolean move(int[] squares, int count, boolean capture) {
+            for (int i = 0; i < count; i ++) {
+                tiles[i] = squares[i] - 1;
+            }
+            long m = Notation.match(pos, tiles, count, moves);
+            if (m == PackedMove.NONE) {
+                this.valid = false;
+                return false;
+            }
+            int[] path = MoveGenerator.path(pos, m);
+            for (int i = 1; i < path.length; i ++) {
+                game.move(path[i - 1], path[i]);
+            }
+            pos.make(m);
+            return true;
+        }
+
+        @Override
+        public void end(int result) {}
+    }
+}
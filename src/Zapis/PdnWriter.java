@@ -0,0 +1,174 @@
+package Zapis;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Model.Gra;
+import Model.MoveHistory;
+import Model.Plansza;
+
+/**
+ * Writes games in Portable Draughts Notation (PDN) from the steps recorded
+ * by {@link Gra} up to its current ply. The steps of a multiple skip are
+ * joined into one move ("9x18x27"), and a game that did not start from the
+ * initial position gets a {@code FEN} tag.
+ */
+public final class PdnWriter {
+
+    /** The column after which the move text is wrapped. */
+    private static final int LINE_LENGTH = 79;
+
+    private PdnWriter() {}
+
+    /**
+     * Gets a game as PDN text with the default tags.
+     *
+     * @param game	the game to write.
+     * @return the PDN text.
+     */
+    public static String toPdn(Gra game) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            write(sb, game, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a game as PDN.
+     *
+     * @param out	where to write the game.
+     * @param game	the game to write.
+     * @param tags	extra tags (e.g. Event, Black, White), or null for none.
+     * @throws IOException if the game cannot be written.
+     */
+    public static void write(Appendable out, Gra game, Map<String, String> tags)
+            throws IOException {
+
+        // Write the tags
+        String result = result(game);
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("Event", "?");
+        all.put("Black", "?");
+        all.put("White", "?");
+        if (tags != null) {
+            all.putAll(tags);
+        }
+        all.put("Result", result);
+        Gra start = new Gra(game.getStartState());
+        if (!game.getStartState().equals(new Gra().getGameState())) {
+            all.put("SetUp", "1");
+            all.put("FEN", fen(start));
+        }
+        for (Map.Entry<String, String> tag : all.entrySet()) {
+            out.append('[').append(tag.getKey()).append(" \"")
+                    .append(tag.getValue().replace("\\", "\\\\")
+                            .replace("\"", "\\\""))
+                    .append("\"]\n");
+        }
+        out.append('\n');
+
+        // Write the moves, a whole turn at a time
+        StringBuilder line = new StringBuilder();
+        boolean blackToMove = start.isP1Turn();
+        int number = 1, n = game.getStepCount();
+        for (int i = 0; i < n; ) {
+            StringBuilder move = new StringBuilder();
+            if (blackToMove) {
+                move.append(number).append(". ");
+            } else if (i == 0) {
+                move.append(number).append("... ");
+            }
+            int step = game.getStep(i);
+            move.append(MoveHistory.start(step) + 1);
+            while (true) {
+                boolean skip = isSkip(MoveHistory.start(step), MoveHistory.end(step));
+                move.append(skip? 'x' : '-').append(MoveHistory.end(step) + 1);
+                i ++;
+                if (MoveHistory.endsTurn(step) || i == n) {
+                    break;
+                }
+                step = game.getStep(i);
+            }
+            append(out, line, move);
+            if (!blackToMove) {
+                number ++;
+            }
+            blackToMove = !blackToMove;
+        }
+        append(out, line, result);
+        out.append(line).append("\n\n");
+    }
+
+    /**
+     * Adds a token to the line being written, writing out the line first if
+     * the token does not fit.
+     */
+    private static void append(Appendable out, StringBuilder line,
+                               CharSequence token) throws IOException {
+        if (line.length() > 0
+                && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.append(line).append('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private static boolean isSkip(int startIndex, int endIndex) {
+        return Math.abs(endIndex / 4 - startIndex / 4) == 2;
+    }
+
+    /**
+     * Gets the PDN result of a game: the side to move has lost if the game is
+     * over and not drawn, otherwise the game is unfinished.
+     *
+     * @param game	the game.
+     * @return "1-0" if black won, "0-1" if white won, "1/2-1/2" for a draw,
+     * or "*".
+     */
+    public static String result(Gra game) {
+        if (!game.isGameOver()) {
+            return "*";
+        } else if (game.isDraw()) {
+            return "1/2-1/2";
+        }
+        return game.isP1Turn()? "0-1" : "1-0";
+    }
+
+    /**
+     * Gets the PDN {@code FEN} tag value of a game's position, such as
+     * {@code B:W21,22,K30:B1,2,K5}.
+     *
+     * @param game	the game.
+     * @return the position in FEN.
+     */
+    public static String fen(Gra game) {
+        Plansza b = game.getBoard();
+        return (game.isP1Turn()? "B" : "W")
+                + ":W" + squares(b.getWhiteMask(), b.getKingMask())
+                + ":B" + squares(b.getBlackMask(), b.getKingMask());
+    }
+
+    private static String squares(int pieces, int kings) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 32; i ++) {
+            if ((pieces & (1 << i)) == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            if ((kings & (1 << i)) != 0) {
+                sb.append('K');
+            }
+            sb.append(i + 1);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package ui;
+
+import java.io.IOException;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+import Silnik.Arena;
+import Silnik.Position;
+
+/**
+ * Shows the games of an engine {@link Arena} on a {@link DashboardPanel}
+ * while the match is played, with one board for each of its threads.
+ */
+public class ArenaWindow extends JFrame {
+
+    private static final long serialVersionUID = -2263125417880317045L;
+
+    /** The dashboard showing the games. */
+    private final DashboardPanel dashboard = new DashboardPanel();
+
+    public ArenaWindow(Arena arena) {
+        super("Java Checkers - " + arena.getEngines()[0] + " vs "
+                + arena.getEngines()[1]);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLocationByPlatform(true);
+        add(dashboard);
+        pack();
+
+        // Publish each position to the board of the thread playing it, and
+        // show the results so far in the title
+        final DashboardPanel.Slot[] slots =
+                new DashboardPanel.Slot[arena.getThreads()];
+        for (int i = 0; i < slots.length; i ++) {
+            slots[i] = dashboard.addGame("Table " + (i + 1));
+        }
+        final String title = getTitle();
+        arena.setListener(new Arena.Listener() {
+
+            @Override
+            public void update(int table, Position pos, boolean gameOver) {
+                slots[table].publish(new BoardSnapshot(pos.getBlack(),
+                        pos.getWhite(), pos.getKings(), pos.isBlackToMove(),
+                        gameOver));
+            }
+
+            @Override
+            public void progress(Arena.Stats stats) {
+                final String report = arena.report();
+                SwingUtilities.invokeLater(
+                        () -> setTitle(title + " - " + report));
+            }
+        });
+    }
+
+    public DashboardPanel getDashboard() {
+        return dashboard;
+    }
+
+    /**
+     * Runs an arena match from the command line while showing it, with the
+     * same arguments as {@link Arena#parse(String[])}.
+     */
+    public static void main(String[] args) throws IOException {
+        final Arena arena = Arena.parse(args);
+        if (arena == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            new ArenaWindow(arena).setVisible(true);
+            Thread match = new Thread(() -> {
+                arena.run();
+                System.out.println(arena.report());
+            }, "arena");
+            match.setDaemon(true);
+            match.start();
+        });
+    }
+}
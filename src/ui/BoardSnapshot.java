@@ -0,0 +1,145 @@
+package ui;
+
+import java.awt.Point;
+
+import Model.Gra;
+import Model.Plansza;
+
+/**
+ * An immutable picture of a game of checkers and the selection on it. The
+ * thread that owns a game publishes these for the event dispatch thread to
+ * draw, so painting never reads a game while it is being changed.
+ */
+public final class BoardSnapshot {
+
+    /** The masks of the black pieces, white pieces and kings. */
+    private final int black, white, kings;
+
+    /** The flag indicating if it is player 1's turn. */
+    private final boolean p1Turn;
+
+    /** The flag indicating if the game is over. */
+    private final boolean gameOver;
+
+    /** The flag indicating if the game ended in a draw. */
+    private final boolean draw;
+
+    /** The selected point, or (-1, -1) if nothing is selected. */
+    private final int selectedX, selectedY;
+
+    /** The flag indicating if the selected tile is a valid one. */
+    private final boolean selectionValid;
+
+    public BoardSnapshot(Gra game, boolean gameOver) {
+        this(game, gameOver, null, false);
+    }
+
+    public BoardSnapshot(Gra game, boolean gameOver, Point selected,
+                         boolean selectionValid) {
+        Plansza b = game.getBoard();
+        this.black = b.getBlackMask();
+        this.white = b.getWhiteMask();
+        this.kings = b.getKingMask();
+        this.p1Turn = game.isP1Turn();
+        this.gameOver = gameOver;
+        this.draw = gameOver && game.isDraw();
+        this.selectedX = (selected == null)? -1 : selected.x;
+        this.selectedY = (selected == null)? -1 : selected.y;
+        this.selectionValid = selectionValid;
+    }
+
+    /**
+     * Creates a snapshot with no selection from the piece masks, for games
+     * that are not kept as a {@link Gra}.
+     *
+     * @param black		the mask of black checkers and kings.
+     * @param white		the mask of white checkers and kings.
+     * @param kings		the mask of kings.
+     * @param p1Turn	the flag indicating if it is player 1's turn.
+     * @param gameOver	the flag indicating if the game is over.
+     */
+    public BoardSnapshot(int black, int white, int kings, boolean p1Turn,
+                         boolean gameOver) {
+        this.black = black;
+        this.white = white & ~black;
+        this.kings = kings & (black | white);
+        this.p1Turn = p1Turn;
+        this.gameOver = gameOver;
+        this.draw = false;
+        this.selectedX = -1;
+        this.selectedY = -1;
+        this.selectionValid = false;
+    }
+
+    /**
+     * Gets the ID of the checker on a tile.
+     *
+     * @param x	the x-coordinate on the board (from 0 to 7 inclusive).
+     * @param y	the y-coordinate on the board (from 0 to 7 inclusive).
+     * @return the ID at the point, or {@link Plansza#INVALID} if the point is
+     * not a black tile.
+     * @see {@link Plansza#get(int, int)}
+     */
+    public int get(int x, int y) {
+        return get(Plansza.toIndex(x, y));
+    }
+
+    /**
+     * Gets the ID of the checker on a black tile.
+     *
+     * @param index	the index of the black tile (from 0 to 31 inclusive).
+     * @return the ID at the index, or {@link Plansza#INVALID} if the index is
+     * out of range.
+     * @see {@link Plansza#get(int)}
+     */
+    public int get(int index) {
+        if (!Plansza.isValidIndex(index)) {
+            return Plansza.INVALID;
+        }
+        int bit = 1 << index;
+        boolean king = (kings & bit) != 0;
+        if ((black & bit) != 0) {
+            return king? Plansza.BLACK_KING : Plansza.BLACK_CHECKER;
+        } else if ((white & bit) != 0) {
+            return king? Plansza.WHITE_KING : Plansza.WHITE_CHECKER;
+        }
+        return Plansza.EMPTY;
+    }
+
+    public int getBlackMask() {
+        return black;
+    }
+
+    public int getWhiteMask() {
+        return white;
+    }
+
+    public int getKingMask() {
+        return kings;
+    }
+
+    public boolean isP1Turn() {
+        return p1Turn;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public boolean isDraw() {
+        return draw;
+    }
+
+    /**
+     * Gets the selected point.
+     *
+     * @return a copy of the selected point, or null if there is none.
+     */
+    public Point getSelected() {
+        return selectedX < 0? null : new Point(selectedX, selectedY);
+    }
+
+    public boolean isSelectionValid() {
+        return selectionValid;
+    }
+}
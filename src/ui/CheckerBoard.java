@@ -5,46 +5,66 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.swing.JButton;
-import javax.swing.Timer;
 
 import Logika.GenerujRuch;
 import Model.HumanPlayer;
 import Model.NetworkPlayer;
 import Model.Gracz;
 import Model.Gra;
+import Model.MoveHistory;
 import Model.Plansza;
-import Siec.Command;
 import Siec.Session;
 
 public class CheckerBoard extends JButton{
 
     private static final long serialVersionUID = -6014690893709316364L;
 
-    /** The amount of milliseconds before a computer player takes a move. */
-    private static final int TIMER_DELAY = 1000;
+    /** The amount of milliseconds before a computer player takes a move, so
+     * the last move is drawn first. How long the computer then thinks for is
+     * up to its own time management. */
+    private static final int TIMER_DELAY = 50;
 
     /** The number of pixels of padding between this component's border and the
      * actual checker board that is drawn. */
     private static final int PADDING = 16;
 
-    /** The game of checkers that is being played on this component. */
+    /** The font of the game over sign. */
+    private static final Font GAME_OVER_FONT = new Font("Arial", Font.BOLD, 20);
+
+    /** The background colour of the game over sign. */
+    private static final Color GAME_OVER_BACKGROUND = new Color(240, 240, 255);
+
+    /** The game of checkers that is being played on this component. It is
+     * only used on the game logic thread. */
     private Gra game;
 
     /** The window containing this checker board UI component. */
     private CheckersWindow window;
 
     /** The player in control of the black checkers. */
-    private Gracz player1;
+    private volatile Gracz player1;
 
     /** The player in control of the white checkers. */
-    private Gracz player2;
+    private volatile Gracz player2;
 
     /** The last point that the current player selected on the checker board. */
     private Point selected;
@@ -63,8 +83,41 @@ public class CheckerBoard extends JButton{
     /** A convenience flag to check if the game is over. */
     private boolean isGameOver;
 
-    /** The timer to control how fast a computer player makes a move. */
-    private Timer timer;
+    /** The thread that owns the game. Computer moves, clicks and network
+     * updates are handled on it one at a time, so the event dispatch thread
+     * is only used for drawing. */
+    private volatile Thread logicThread;
+
+    /** The executor running tasks on the game logic thread. */
+    private final ScheduledExecutorService logic =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "game-logic");
+                t.setDaemon(true);
+                this.logicThread = t;
+                return t;
+            });
+
+    /** The executor computer players work out their moves on, so the game
+     * logic thread is free while they think. A player is only used by one of
+     * the two threads at a time. */
+    private final ExecutorService thinker =
+            Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "computer-player");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /** The computer move waiting to be made, or null if there is none. */
+    private ScheduledFuture<?> pendingMove;
+
+    /** The computer move being worked out, or null if there is none. */
+    private Future<int[]> thinking;
+
+    /** The player working out the move. */
+    private Gracz thinkingPlayer;
+
+    /** The last published picture of the game, which is what is drawn. */
+    private volatile BoardSnapshot snapshot;
 
     public CheckerBoard(CheckersWindow window) {
         this(window, new Gra(), null, null);
@@ -85,17 +138,21 @@ public class CheckerBoard extends JButton{
         this.lightTile = Color.WHITE;
         this.darkTile = Color.BLACK;
         this.window = window;
+        this.snapshot = new BoardSnapshot(this.game, false);
         setPlayer1(player1);
         setPlayer2(player2);
     }
 
     /**
-     * Checks if the game is over and redraws the component graphics.
+     * Checks if the game is over, lets a computer player move and redraws the
+     * component graphics. The work is done on the game logic thread.
      */
     public void update() {
-        runPlayer();
-        this.isGameOver = game.isGameOver();
-        repaint();
+        execute(() -> {
+            runPlayer();
+            this.isGameOver = game.isGameOver();
+            publish();
+        });
     }
 
     private void runPlayer() {
@@ -107,21 +164,199 @@ public class CheckerBoard extends JButton{
             return;
         }
 
-        // Set a timer to run
-        this.timer = new Timer(TIMER_DELAY, new ActionListener() {
+        // A move is already on its way
+        if ((pendingMove != null && !pendingMove.isDone())
+                || thinking != null) {
+            return;
+        }
 
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                getCurrentPlayer().updateGame(game);
-                timer.stop();
-                updateNetwork();
-                update();
+        // Start working out the move after a short delay
+        this.pendingMove = logic.schedule(() -> {
+            this.pendingMove = null;
+            startMove(getCurrentPlayer());
+        }, TIMER_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Has a computer player work out its move on a copy of the game, on the
+     * computer player thread. The steps it plays are then played on the game
+     * back on the game logic thread, unless the game changed meanwhile. This
+     * must be called on the game logic thread.
+     *
+     * @param player	the player whose turn it is.
+     */
+    private void startMove(final Gracz player) {
+        final Gra copy = game.copy();
+        final long version = copy.getVersion();
+        final int from = copy.getStepCount();
+        final FutureTask<int[]> move = new FutureTask<>(() -> {
+            player.updateGame(copy);
+            int[] steps = new int[2 * (copy.getStepCount() - from)];
+            for (int i = from; i < copy.getStepCount(); i ++) {
+                int step = copy.getStep(i);
+                steps[2 * (i - from)] = MoveHistory.start(step);
+                steps[2 * (i - from) + 1] = MoveHistory.end(step);
             }
+            return steps;
+        });
+        this.thinking = move;
+        this.thinkingPlayer = player;
+        thinker.execute(() -> {
+            move.run();
+            execute(() -> finishMove(move, version));
         });
-        this.timer.start();
     }
 
+    /**
+     * Plays the steps of a computer move that was worked out, if it was not
+     * dropped and the game is still at the version it was worked out from.
+     * This must be called on the game logic thread.
+     *
+     * @param move	the move that was worked out.
+     * @param version	the version of the game the move was worked out from.
+     */
+    private void finishMove(Future<int[]> move, long version) {
+
+        // The move was dropped
+        if (move != thinking) {
+            return;
+        }
+        this.thinking = null;
+        this.thinkingPlayer = null;
+
+        // Play the move
+        int[] steps = null;
+        try {
+            steps = move.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        if (steps != null && game.getVersion() == version) {
+            game.play(steps);
+        }
+        updateNetwork();
+        update();
+    }
+
+    /**
+     * Publishes a new snapshot of the game and selection and asks for the
+     * parts that changed to be drawn. This must be called on the game logic
+     * thread.
+     */
+    private void publish() {
+        BoardSnapshot old = this.snapshot;
+        this.snapshot = new BoardSnapshot(
+                game, isGameOver, selected, selectionValid);
+        repaintChanges(old, snapshot);
+    }
+
+    /**
+     * Repaints the tiles that differ between two snapshots: those whose
+     * checker changed, the old and new selection and the turn sign. The
+     * whole component is repainted if the game over sign appears or goes.
+     *
+     * @param old	the snapshot that was drawn before.
+     * @param now	the new snapshot.
+     */
+    private void repaintChanges(BoardSnapshot old, BoardSnapshot now) {
+
+        // Repaint everything for the game over sign
+        if (old == null || old.isGameOver() || now.isGameOver()) {
+            repaint();
+            return;
+        }
+
+        // Find the tiles with a different checker
+        int changed = (old.getBlackMask() ^ now.getBlackMask())
+                | (old.getWhiteMask() ^ now.getWhiteMask())
+                | (old.getKingMask() ^ now.getKingMask());
+        while (changed != 0) {
+            Point p = Plansza.toPoint(Integer.numberOfTrailingZeros(changed));
+            repaintTile(p.x, p.y);
+            changed &= changed - 1;
+        }
+
+        // Update the selection highlight
+        Point before = old.getSelected(), after = now.getSelected();
+        if (!Objects.equals(before, after)
+                || old.isSelectionValid() != now.isSelectionValid()) {
+            if (Plansza.isValidPoint(before)) {
+                repaintTile(before.x, before.y);
+            }
+            if (Plansza.isValidPoint(after)) {
+                repaintTile(after.x, after.y);
+            }
+        }
+
+        // Update the turn sign below the board
+        if (old.isP1Turn() != now.isP1Turn()) {
+            final int W = getWidth(), H = getHeight();
+            final int DIM = W < H? W : H, BOX_SIZE = (DIM - 2 * PADDING) / 8;
+            final int OFFSET_Y = (H - BOX_SIZE * 8) / 2;
+            repaint(0, OFFSET_Y + 8 * BOX_SIZE, W, H - OFFSET_Y - 8 * BOX_SIZE);
+        }
+    }
+
+    /**
+     * Repaints one tile, with a little room around it for checker shadows.
+     *
+     * @param x	the x-coordinate of the tile (from 0 to 7 inclusive).
+     * @param y	the y-coordinate of the tile (from 0 to 7 inclusive).
+     */
+    private void repaintTile(int x, int y) {
+        final int W = getWidth(), H = getHeight();
+        final int DIM = W < H? W : H, BOX_SIZE = (DIM - 2 * PADDING) / 8;
+        final int OFFSET_X = (W - BOX_SIZE * 8) / 2;
+        final int OFFSET_Y = (H - BOX_SIZE * 8) / 2;
+        repaint(OFFSET_X + x * BOX_SIZE - 2, OFFSET_Y + y * BOX_SIZE - 2,
+                BOX_SIZE + 4, BOX_SIZE + 4);
+    }
+
+    /**
+     * Runs a task on the game logic thread, straight away if this is that
+     * thread and later otherwise.
+     */
+    private void execute(Runnable task) {
+        if (Thread.currentThread() == logicThread) {
+            task.run();
+        } else {
+            logic.execute(task);
+        }
+    }
+
+    /**
+     * Runs a task on the game logic thread and waits for its result.
+     *
+     * @return the result, or null if the task failed.
+     */
+    private <T> T call(Callable<T> task) {
+        try {
+            if (Thread.currentThread() == logicThread) {
+                return task.call();
+            }
+            return logic.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Sends the game state to the connected network players. The state is
+     * read on the game logic thread and queued for each peer, so a slow peer
+     * never holds up the game.
+     */
     public void updateNetwork() {
+        execute(this::sendToNetworkPlayers);
+    }
+
+    private void sendToNetworkPlayers() {
 
         // Get the relevant sessions to send to
         List<Session> sessions = new ArrayList<>();
@@ -138,33 +373,182 @@ public class CheckerBoard extends JButton{
         }
     }
 
-    public synchronized boolean setGameState(boolean testValue,
-                                             String newState, String expected) {
+    /**
+     * Sets the game state on the game logic thread and waits for it. This
+     * starts a new history from the state.
+     *
+     * @param newState	the new game state.
+     */
+    public void setGameState(String newState) {
+        call(() -> {
+            this.game.setGameState(newState);
+            publish();
+            return null;
+        });
+    }
 
-        // Test the value if requested
-        if (testValue && !game.getGameState().equals(expected)) {
-            return false;
+    /**
+     * Brings the game to a state sent by a peer and waits for it. The steps
+     * that lead to the state are played, so they are kept in the history;
+     * the state is only set outright if it cannot be reached from the
+     * current one.
+     * <p>
+     * The steps are looked for on a copy of the game on the calling thread,
+     * so the game logic thread is only held up to play them. They are only
+     * played if the game is still at the version of the copy; if a move was
+     * made meanwhile they are looked for again from the game as it is.
+     *
+     * @param newState	the new game state.
+     * @return true if the state was reached by playing steps.
+     * @see {@link Gra#moveTo(String)}
+     */
+    public boolean moveTo(String newState) {
+        final Gra copy = getGameCopy();
+        final int[] steps = copy.findSteps(newState);
+        Boolean played = call(() -> {
+            boolean moved = (steps != null
+                    && game.getVersion() == copy.getVersion()
+                    && game.play(steps)) || game.moveTo(newState);
+            publish();
+            return moved;
+        });
+        return played != null && played;
+    }
+
+    /**
+     * Gets the current game state, read on the game logic thread.
+     *
+     * @return the state string of the game.
+     * @see {@link Gra#getGameState()}
+     */
+    public String getGameState() {
+        String state = call(() -> game.getGameState());
+        return (state == null)? "" : state;
+    }
+
+    /**
+     * Gets a copy of the game and its history, made on the game logic thread.
+     *
+     * @return the copy of the game.
+     */
+    public Gra getGameCopy() {
+        Gra copy = call(() -> game.copy());
+        return (copy == null)? new Gra() : copy;
+    }
+
+    /**
+     * Takes back turns on the game logic thread until it is a human player's
+     * turn again, so a computer player does not replay its move at once.
+     */
+    public void undo() {
+        execute(() -> {
+            stopPlayers();
+            while (game.undoTurn() && !isHumanTurn()) {}
+            this.selected = null;
+        });
+        update();
+    }
+
+    /**
+     * Plays again the turns that were taken back on the game logic thread,
+     * up to the next human player's turn.
+     */
+    public void redo() {
+        execute(() -> {
+            stopPlayers();
+            while (game.redoTurn() && !isHumanTurn()) {}
+            this.selected = null;
+        });
+        update();
+    }
+
+    /**
+     * Cancels a computer move on its way and stops both players thinking.
+     */
+    private void stopPlayers() {
+        if (pendingMove != null) {
+            pendingMove.cancel(false);
+            this.pendingMove = null;
+        }
+        stopMove();
+        if (player1 != null) {
+            player1.stopThinking();
+        }
+        if (player2 != null) {
+            player2.stopThinking();
         }
+    }
 
-        // Update the game state
-        this.game.setGameState(newState);
-        repaint();
+    /**
+     * Drops the computer move being worked out, cutting its search short, and
+     * waits for the computer player thread to be done with the player. The
+     * stop request is repeated in case the search had not started yet and
+     * cleared it. This must be called on the game logic thread.
+     */
+    private void stopMove() {
+        Future<int[]> move = thinking;
+        Gracz player = thinkingPlayer;
+        if (move == null) {
+            return;
+        }
+        this.thinking = null;
+        this.thinkingPlayer = null;
+        while (true) {
+            player.stopMove();
+            try {
+                move.get(10, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException e) {
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
 
-        return true;
+        // The player may think on the opponent's time after the dropped move
+        player.stopThinking();
+    }
+
+    /**
+     * Checks if the current player is a person, at this board or across the
+     * network.
+     */
+    private boolean isHumanTurn() {
+        Gracz player = getCurrentPlayer();
+        return player == null || player.isHuman()
+                || player instanceof NetworkPlayer;
     }
 
+    /**
+     * Resets the game to the initial state on the game logic thread, first
+     * stopping both players thinking.
+     */
+    public void restart() {
+        execute(() -> {
+            stopPlayers();
+            game.restart();
+        });
+        update();
+    }
+
+    /**
+     * Queues the current game state to be sent to the peer of a session. It
+     * is sent on the session's own sender thread, and replaces any earlier
+     * state that was not sent yet.
+     *
+     * @param s	the session.
+     */
     public void sendGameState(Session s) {
 
         if (s == null) {
             return;
         }
 
-        // Create the command and send it
-        Command update = new Command(Command.COMMAND_UPDATE,
-                s.getSid(), game.getGameState());
-        String host = s.getDestinationHost();
-        int port = s.getDestinationPort();
-        update.send(host, port);
+        // Queue the state, which is sent as an update command
+        s.getOutbound().offer(getGameState());
     }
 
     /**
@@ -172,12 +556,15 @@ public class CheckerBoard extends JButton{
      */
     @Override
     public void paint(Graphics g) {
+        PaintEvent event = new PaintEvent();
+        event.begin();
         super.paint(g);
 
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
-        Gra game = this.game.copy();
+        BoardSnapshot game = this.snapshot;
+        Point selected = game.getSelected();
 
         // Perform calculations
         final int BOX_PADDING = 4;
@@ -188,98 +575,33 @@ public class CheckerBoard extends JButton{
         final int CHECKER_SIZE = Math.max(0, BOX_SIZE - 2 * BOX_PADDING);
 
         // Draw checker board
-        g.setColor(Color.BLACK);
-        g.drawRect(OFFSET_X - 1, OFFSET_Y - 1, BOX_SIZE * 8 + 1, BOX_SIZE * 8 + 1);
-        g.setColor(lightTile);
-        g.fillRect(OFFSET_X, OFFSET_Y, BOX_SIZE * 8, BOX_SIZE * 8);
-        g.setColor(darkTile);
-        for (int y = 0; y < 8; y ++) {
-            for (int x = (y + 1) % 2; x < 8; x += 2) {
-                g.fillRect(OFFSET_X + x * BOX_SIZE, OFFSET_Y + y * BOX_SIZE,
-                        BOX_SIZE, BOX_SIZE);
-            }
-        }
+        g.drawImage(CheckerSprites.getBoard(BOX_SIZE, lightTile, darkTile),
+                OFFSET_X - 1, OFFSET_Y - 1, null);
 
         // Highlight the selected tile if valid
         if (Plansza.isValidPoint(selected)) {
-            g.setColor(selectionValid? Color.GREEN : Color.RED);
+            g.setColor(game.isSelectionValid()? Color.GREEN : Color.RED);
             g.fillRect(OFFSET_X + selected.x * BOX_SIZE,
                     OFFSET_Y + selected.y * BOX_SIZE,
                     BOX_SIZE, BOX_SIZE);
         }
 
-        // Draw the checkers
-        Plansza b = game.getBoard();
+        // Draw the checkers (only those in the area being repainted)
+        Rectangle clip = g.getClipBounds();
         for (int y = 0; y < 8; y ++) {
             int cy = OFFSET_Y + y * BOX_SIZE + BOX_PADDING;
             for (int x = (y + 1) % 2; x < 8; x += 2) {
-                int id = b.get(x, y);
+                int id = game.get(x, y);
 
-                // Empty, just skip
-                if (id == Plansza.EMPTY) {
+                // Empty or not repainted, just skip
+                if (id == Plansza.EMPTY || (clip != null && !clip.intersects(
+                        OFFSET_X + x * BOX_SIZE - 2, OFFSET_Y + y * BOX_SIZE - 2,
+                        BOX_SIZE + 4, BOX_SIZE + 4))) {
                     continue;
                 }
 
                 int cx = OFFSET_X + x * BOX_SIZE + BOX_PADDING;
-
-                // Black checker
-                if (id == Plansza.BLACK_CHECKER) {
-                    g.setColor(Color.DARK_GRAY);
-                    g.fillOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.drawOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.BLACK);
-                    g.fillOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.drawOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                }
-
-                // Black king
-                else if (id == Plansza.BLACK_KING) {
-                    g.setColor(Color.DARK_GRAY);
-                    g.fillOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.drawOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.DARK_GRAY);
-                    g.fillOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.drawOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.BLACK);
-                    g.fillOval(cx - 1, cy - 2, CHECKER_SIZE, CHECKER_SIZE);
-                }
-
-                // White checker
-                else if (id == Plansza.WHITE_CHECKER) {
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.fillOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.DARK_GRAY);
-                    g.drawOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.WHITE);
-                    g.fillOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.DARK_GRAY);
-                    g.drawOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                }
-
-                // White king
-                else if (id == Plansza.WHITE_KING) {
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.fillOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.DARK_GRAY);
-                    g.drawOval(cx + 1, cy + 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.LIGHT_GRAY);
-                    g.fillOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.DARK_GRAY);
-                    g.drawOval(cx, cy, CHECKER_SIZE, CHECKER_SIZE);
-                    g.setColor(Color.WHITE);
-                    g.fillOval(cx - 1, cy - 2, CHECKER_SIZE, CHECKER_SIZE);
-                }
-
-                // Any king (add some extra highlights)
-                if (Plansza.isKingChecker(id)) {
-                    g.setColor(new Color(255, 240, 0));
-                    g.drawOval(cx - 1, cy - 2, CHECKER_SIZE, CHECKER_SIZE);
-                    g.drawOval(cx + 1, cy, CHECKER_SIZE - 4, CHECKER_SIZE - 4);
-                }
+                CheckerSprites.drawChecker(g, id, cx, cy, CHECKER_SIZE);
             }
         }
 
@@ -295,25 +617,48 @@ public class CheckerBoard extends JButton{
         g.drawString(msg, W / 2 - width / 2, OFFSET_Y + 8 * BOX_SIZE + 2 + 12);
 
         // Draw a game over sign
-        if (isGameOver) {
-            g.setFont(new Font("Arial", Font.BOLD, 20));
-            msg = "Game Over!";
+        if (game.isGameOver()) {
+            g.setFont(GAME_OVER_FONT);
+            msg = game.isDraw()? "Draw!" : "Game Over!";
             width = g.getFontMetrics().stringWidth(msg);
-            g.setColor(new Color(240, 240, 255));
+            g.setColor(GAME_OVER_BACKGROUND);
             g.fillRoundRect(W / 2 - width / 2 - 5,
                     OFFSET_Y + BOX_SIZE * 4 - 16,
                     width + 10, 30, 10, 10);
             g.setColor(Color.RED);
             g.drawString(msg, W / 2 - width / 2, OFFSET_Y + BOX_SIZE * 4 + 7);
         }
+
+        if (event.shouldCommit()) {
+            event.width = W;
+            event.height = H;
+            event.commit();
+        }
     }
 
+    /**
+     * Gets the game being played. The game is owned by the game logic thread,
+     * so it must not be changed from any other thread.
+     *
+     * @return the game.
+     */
     public Gra getGame() {
         return game;
     }
 
     public void setGame(Gra game) {
-        this.game = (game == null)? new Gra() : game;
+        execute(() -> {
+            this.game = (game == null)? new Gra() : game;
+            publish();
+        });
+    }
+
+    /**
+     * Gets the last published snapshot of the game, which is safe to read
+     * from any thread.
+     */
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
     }
 
     public CheckersWindow getWindow() {
@@ -329,10 +674,20 @@ public class CheckerBoard extends JButton{
     }
 
     public void setPlayer1(Gracz player1) {
+        final Gracz old = this.player1;
         this.player1 = (player1 == null)? new HumanPlayer() : player1;
-        if (game.isP1Turn() && !this.player1.isHuman()) {
-            this.selected = null;
-        }
+        execute(() -> {
+            stopMove();
+            if (old != null && old != this.player1
+                    && old != this.player2) {
+                old.stopThinking();
+                old.close();
+            }
+            introducePlayers();
+            if (game.isP1Turn() && !this.player1.isHuman()) {
+                this.selected = null;
+            }
+        });
     }
 
     public Gracz getPlayer2() {
@@ -340,9 +695,33 @@ public class CheckerBoard extends JButton{
     }
 
     public void setPlayer2(Gracz player2) {
+        final Gracz old = this.player2;
         this.player2 = (player2 == null)? new HumanPlayer() : player2;
-        if (!game.isP1Turn() && !this.player2.isHuman()) {
-            this.selected = null;
+        execute(() -> {
+            stopMove();
+            if (old != null && old != this.player1
+                    && old != this.player2) {
+                old.stopThinking();
+                old.close();
+            }
+            introducePlayers();
+            if (!game.isP1Turn() && !this.player2.isHuman()) {
+                this.selected = null;
+            }
+        });
+    }
+
+    /**
+     * Tells each player who its opponent is. This must be called on the game
+     * logic thread.
+     */
+    private void introducePlayers() {
+        Gracz p1 = player1, p2 = player2;
+        if (p1 != null) {
+            p1.setOpponent(p2);
+        }
+        if (p2 != null) {
+            p2.setOpponent(p1);
         }
     }
 
@@ -356,6 +735,7 @@ public class CheckerBoard extends JButton{
 
     public void setLightTile(Color lightTile) {
         this.lightTile = (lightTile == null)? Color.WHITE : lightTile;
+        repaint();
     }
 
     public Color getDarkTile() {
@@ -364,13 +744,14 @@ public class CheckerBoard extends JButton{
 
     public void setDarkTile(Color darkTile) {
         this.darkTile = (darkTile == null)? Color.BLACK : darkTile;
+        repaint();
     }
 
     /**
      * Handles a click on this component at the specified point. If the current
      * player is not human, this method does nothing. Otherwise, the selected
      * point is updated and a move is attempted if the last click and this one
-     * both are on black tiles.
+     * both are on black tiles. This is run on the game logic thread.
      *
      * @param x	the x-coordinate of the click on this component.
      * @param y	the y-coordinate of the click on this component.
@@ -382,8 +763,6 @@ public class CheckerBoard extends JButton{
             return;
         }
 
-        Gra copy = game.copy();
-
         // Determine what square (if any) was selected
         final int W = getWidth(), H = getHeight();
         final int DIM = W < H? W : H, BOX_SIZE = (DIM - 2 * PADDING) / 8;
@@ -395,15 +774,11 @@ public class CheckerBoard extends JButton{
 
         // Determine if a move should be attempted
         if (Plansza.isValidPoint(sel) && Plansza.isValidPoint(selected)) {
-            boolean change = copy.isP1Turn();
-            String expected = copy.getGameState();
-            boolean move = copy.move(selected, sel);
-            boolean updated = (move?
-                    setGameState(true, copy.getGameState(), expected) : false);
-            if (updated) {
+            boolean change = game.isP1Turn();
+            if (game.move(selected, sel)) {
                 updateNetwork();
             }
-            change = (copy.isP1Turn() != change);
+            change = (game.isP1Turn() != change);
             this.selected = change? null : sel;
         } else {
             this.selected = sel;
@@ -411,7 +786,7 @@ public class CheckerBoard extends JButton{
 
         // Check if the selection is valid
         this.selectionValid = isValidSelection(
-                copy.getBoard(), copy.isP1Turn(), selected);
+                game.getBoard(), game.isP1Turn(), selected);
 
         update();
     }
@@ -471,7 +846,7 @@ public class CheckerBoard extends JButton{
             // Get the new mouse coordinates and handle the click
             Point m = CheckerBoard.this.getMousePosition();
             if (m != null) {
-                handleClick(m.x, m.y);
+                execute(() -> handleClick(m.x, m.y));
             }
         }
     }
@@ -0,0 +1,212 @@
+package ui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import Model.Plansza;
+
+/**
+ * Pre-rendered images for drawing checker boards. Each of the four kinds of
+ * checker is drawn once per size, and the empty board once per tile size and
+ * tile colours, so painting a board is one image for the board plus one per
+ * checker. The images are shared by every board component.
+ */
+public final class CheckerSprites {
+
+    /** The number of sizes kept before the least recently used is dropped
+     * (resizing a window goes through many sizes). */
+    private static final int MAX_CACHED = 16;
+
+    /** The colour of the highlights on kings. */
+    private static final Color KING_HIGHLIGHT = new Color(255, 240, 0);
+
+    /** How far a sprite reaches left of and above the checker position. */
+    private static final int SPRITE_X = 1, SPRITE_Y = 2;
+
+    /** The checker sprites for each size, indexed by checker ID. */
+    private static final Map<Integer, BufferedImage[]> checkers =
+            new LinkedHashMap<Integer, BufferedImage[]>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, BufferedImage[]> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    /** The empty boards for each tile size and pair of tile colours. */
+    private static final Map<List<Integer>, BufferedImage> boards =
+            new LinkedHashMap<List<Integer>, BufferedImage>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<List<Integer>, BufferedImage> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    private CheckerSprites() {}
+
+    /**
+     * Draws a checker.
+     *
+     * @param g		the graphics to draw with.
+     * @param id	the ID of the checker (empty tiles are not drawn).
+     * @param x		the x-coordinate of the top left of the checker.
+     * @param y		the y-coordinate of the top left of the checker.
+     * @param size	the diameter of the checker.
+     */
+    public static void drawChecker(Graphics g, int id, int x, int y,
+                                   int size) {
+        if (id < Plansza.WHITE_CHECKER || id > Plansza.BLACK_KING
+                || size <= 0) {
+            return;
+        }
+        g.drawImage(getChecker(id, size), x - SPRITE_X, y - SPRITE_Y, null);
+    }
+
+    /**
+     * Gets the sprite of a checker, rendering the set for the size if it is
+     * not cached. The sprite is drawn {@code (1, 2)} pixels left of and above
+     * the checker position, to fit its shadow and raised king.
+     *
+     * @param id	the ID of the checker.
+     * @param size	the diameter of the checker.
+     * @return the sprite.
+     */
+    public static synchronized BufferedImage getChecker(int id, int size) {
+        BufferedImage[] sprites = checkers.get(size);
+        if (sprites == null) {
+            sprites = new BufferedImage[Plansza.BLACK_KING + 1];
+            for (int i = Plansza.WHITE_CHECKER; i <= Plansza.BLACK_KING; i ++) {
+                sprites[i] = renderChecker(i, size);
+            }
+            checkers.put(size, sprites);
+        }
+        return sprites[id];
+    }
+
+    /**
+     * Gets the image of an empty board: the tiles and a one pixel border
+     * around them.
+     *
+     * @param boxSize	the size of each tile.
+     * @param light		the colour of the light tiles.
+     * @param dark		the colour of the dark tiles.
+     * @return the board image, {@code boxSize * 8 + 2} pixels square.
+     */
+    public static synchronized BufferedImage getBoard(int boxSize,
+                                                      Color light, Color dark) {
+        List<Integer> key = Arrays.asList(
+                boxSize, light.getRGB(), dark.getRGB());
+        BufferedImage board = boards.get(key);
+        if (board == null) {
+            board = renderBoard(Math.max(1, boxSize), light, dark);
+            boards.put(key, board);
+        }
+        return board;
+    }
+
+    private static BufferedImage renderBoard(int boxSize, Color light,
+                                             Color dark) {
+        int dim = boxSize * 8 + 2;
+        BufferedImage img = new BufferedImage(dim, dim,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        g.setColor(Color.BLACK);
+        g.drawRect(0, 0, boxSize * 8 + 1, boxSize * 8 + 1);
+        g.setColor(light);
+        g.fillRect(1, 1, boxSize * 8, boxSize * 8);
+        g.setColor(dark);
+        for (int y = 0; y < 8; y ++) {
+            for (int x = (y + 1) % 2; x < 8; x += 2) {
+                g.fillRect(1 + x * boxSize, 1 + y * boxSize,
+                        boxSize, boxSize);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage renderChecker(int id, int size) {
+        BufferedImage img = new BufferedImage(size + 2 * SPRITE_X + 2,
+                size + 2 * SPRITE_Y + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        final int cx = SPRITE_X, cy = SPRITE_Y;
+
+        // Black checker
+        if (id == Plansza.BLACK_CHECKER) {
+            g.setColor(Color.DARK_GRAY);
+            g.fillOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.BLACK);
+            g.fillOval(cx, cy, size, size);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawOval(cx, cy, size, size);
+        }
+
+        // Black king
+        else if (id == Plansza.BLACK_KING) {
+            g.setColor(Color.DARK_GRAY);
+            g.fillOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.DARK_GRAY);
+            g.fillOval(cx, cy, size, size);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawOval(cx, cy, size, size);
+            g.setColor(Color.BLACK);
+            g.fillOval(cx - 1, cy - 2, size, size);
+        }
+
+        // White checker
+        else if (id == Plansza.WHITE_CHECKER) {
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.DARK_GRAY);
+            g.drawOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.WHITE);
+            g.fillOval(cx, cy, size, size);
+            g.setColor(Color.DARK_GRAY);
+            g.drawOval(cx, cy, size, size);
+        }
+
+        // White king
+        else if (id == Plansza.WHITE_KING) {
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.DARK_GRAY);
+            g.drawOval(cx + 1, cy + 2, size, size);
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillOval(cx, cy, size, size);
+            g.setColor(Color.DARK_GRAY);
+            g.drawOval(cx, cy, size, size);
+            g.setColor(Color.WHITE);
+            g.fillOval(cx - 1, cy - 2, size, size);
+        }
+
+        // Any king (add some extra highlights)
+        if (Plansza.isKingChecker(id)) {
+            g.setColor(KING_HIGHLIGHT);
+            g.drawOval(cx - 1, cy - 2, size, size);
+            g.drawOval(cx + 1, cy, size - 4, size - 4);
+        }
+
+        g.dispose();
+        return img;
+    }
+}
@@ -1,14 +1,25 @@
 package ui;
 
 import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
+import javax.swing.BorderFactory;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import Model.ComputerPlayer;
 import Model.Gracz;
 import Siec.CheckersNetworkHandler;
 import Siec.ConnectionListener;
 import Siec.Session;
+import Siec.SessionMonitor;
+import Siec.SessionRegistry;
+import Silnik.SearchInfo;
+import Silnik.SearchInfoRing;
 
 public class CheckersWindow extends JFrame{
 
@@ -26,12 +37,27 @@ public class CheckersWindow extends JFrame{
     /** The checker board component playing the updatable game. */
     private CheckerBoard board;
 
+    /** How often the status bar shows the latest search information. */
+    private static final int STATUS_INTERVAL = 250;
+
     private OptionPanel opts;
 
+    /** The status bar with the progress of the computer's search. */
+    private JLabel status;
+
+    /** The timer updating the status bar. */
+    private Timer statusTimer;
+
     private Session session1;
 
     private Session session2;
 
+    /** The sessions of this client by their ID. */
+    private SessionRegistry sessions;
+
+    /** The monitor that ends the sessions of peers that have gone. */
+    private SessionMonitor monitor;
+
     public CheckersWindow() {
         this(DEFAULT_WIDTH, DEFAULT_HEIGHT, DEFAULT_TITLE);
     }
@@ -53,9 +79,15 @@ public class CheckersWindow extends JFrame{
         JPanel layout = new JPanel(new BorderLayout());
         this.board = new CheckerBoard(this);
         this.opts = new OptionPanel(this);
+        this.status = new JLabel(" ");
+        this.status.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(opts, BorderLayout.CENTER);
+        bottom.add(status, BorderLayout.SOUTH);
         layout.add(board, BorderLayout.CENTER);
-        layout.add(opts, BorderLayout.SOUTH);
+        layout.add(bottom, BorderLayout.SOUTH);
         this.add(layout);
+        startStatus();
 
         // Setup the network listeners
         CheckersNetworkHandler session1Handler, session2Handler;
@@ -65,6 +97,79 @@ public class CheckersWindow extends JFrame{
                 0, session1Handler), null, null, -1);
         this.session2 = new Session(new ConnectionListener(
                 0, session2Handler), null, null, -1);
+        this.sessions = new SessionRegistry();
+        this.session1.setRegistry(sessions);
+        this.session2.setRegistry(sessions);
+        this.monitor = new SessionMonitor(new SessionMonitor.Listener() {
+
+            @Override
+            public void sessionDead(Session session) {
+                lostSession(session);
+            }
+        });
+        this.monitor.add(session1);
+        this.monitor.add(session2);
+    }
+
+    /**
+     * Ends a session whose peer stopped answering, as if it had sent a
+     * disconnect, and keeps watching it for the next connection.
+     *
+     * @param session	the dead session.
+     */
+    private void lostSession(final Session session) {
+        monitor.add(session);
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                if (!session.isConnected()) {
+                    return;
+                }
+                NetworkWindow win = (session == session1)?
+                        opts.getNetworkWindow1() : opts.getNetworkWindow2();
+                session.setSid(null);
+                win.setCanUpdateConnect(true);
+                win.setMessage("  Lost the connection to "
+                        + session.getDestinationHost() + ":"
+                        + session.getDestinationPort() + ".");
+            }
+        });
+    }
+
+    /**
+     * Starts following the information published by the computer players'
+     * searches. Only the latest entry is shown, so the searches are never
+     * held up by the UI.
+     */
+    private void startStatus() {
+        final SearchInfoRing.Reader reader =
+                ComputerPlayer.getInfoRing().newReader();
+        this.statusTimer = new Timer(STATUS_INTERVAL, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                SearchInfo info, last = null;
+                while ((info = reader.poll()) != null) {
+                    last = info;
+                }
+                if (last != null) {
+                    status.setText(format(last));
+                }
+            }
+        });
+        this.statusTimer.start();
+    }
+
+    /**
+     * Formats search information for the status bar.
+     */
+    private static String format(SearchInfo info) {
+        String score = info.isMate()? "mate " + info.getMateIn()
+                : String.format("%+.2f", info.getScore() / 100.0);
+        return "Depth " + info.getDepth() + "/" + info.getSelDepth()
+                + "  " + score + "  " + (info.getNodes() / 1000) + "k nodes  "
+                + (info.getNps() / 1000) + "k/s  " + info.getPvString();
     }
 
     public CheckerBoard getBoard() {
@@ -95,12 +200,11 @@ public class CheckersWindow extends JFrame{
      * Resets the game of checkers in the window.
      */
     public void restart() {
-        this.board.getGame().restart();
-        this.board.update();
+        this.board.restart();
     }
 
     public void setGameState(String state) {
-        this.board.getGame().setGameState(state);
+        this.board.setGameState(state);
     }
 
     public Session getSession1() {
@@ -110,4 +214,13 @@ public class CheckersWindow extends JFrame{
     public Session getSession2() {
         return session2;
     }
+
+    /**
+     * Gets the sessions of this client by their ID.
+     *
+     * @return the registry both sessions are kept in.
+     */
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
 }
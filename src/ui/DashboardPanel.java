@@ -0,0 +1,312 @@
+package ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * A grid of small boards showing many live games at once, such as the
+ * matches of an engine arena.
+ * <p>
+ * The games are not drawn when they change. Each game's owner publishes
+ * snapshots to a source, and the panel polls the sources at a fixed frame
+ * rate. Several changes between two frames are drawn once, as only the
+ * latest snapshot is kept. The grid is kept in an image, and only the
+ * boards whose snapshot changed are redrawn into it on each frame.
+ */
+public class DashboardPanel extends JComponent {
+
+    private static final long serialVersionUID = 5308462281034772512L;
+
+    /** The default number of frames drawn per second. */
+    public static final int DEFAULT_FPS = 20;
+
+    /** The smallest size of a board cell (in pixels). */
+    private static final int MIN_CELL = 48;
+
+    /** The pixels around each board in a cell. */
+    private static final int CELL_PADDING = 4;
+
+    /** The height of the title line below each board. */
+    private static final int TITLE_HEIGHT = 14;
+
+    private static final Font TITLE_FONT = new Font("Arial", Font.PLAIN, 11);
+
+    private static final Color BACKGROUND = Color.LIGHT_GRAY;
+
+    /** The games shown, in grid order. */
+    private final List<Cell> cells = new ArrayList<>();
+
+    /** The timer drawing the frames. */
+    private final Timer timer;
+
+    /** The image of the whole grid, or null if it must be rebuilt. */
+    private BufferedImage grid;
+
+    /** The columns and cell size the grid image was drawn with. */
+    private int columns, cellSize;
+
+    private Color lightTile = Color.WHITE;
+
+    private Color darkTile = Color.BLACK;
+
+    public DashboardPanel() {
+        this(DEFAULT_FPS);
+    }
+
+    public DashboardPanel(int fps) {
+        setPreferredSize(new Dimension(800, 600));
+        setOpaque(true);
+        this.timer = new Timer(1000 / Math.max(1, fps), new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drawFrame();
+            }
+        });
+        this.timer.setCoalesce(true);
+    }
+
+    /**
+     * Adds a game to the dashboard. This must be called on the event
+     * dispatch thread.
+     *
+     * @param title		the title shown below the board.
+     * @param source	where the latest snapshot of the game is taken from.
+     * It is called on the event dispatch thread once per frame, so it should
+     * only read a published value, as {@link Slot#get()} and
+     * {@link CheckerBoard#getSnapshot()} do.
+     */
+    public void addGame(String title, Supplier<BoardSnapshot> source) {
+        cells.add(new Cell(title, source));
+        this.grid = null;
+        repaint();
+    }
+
+    /**
+     * Adds a game whose owner publishes snapshots to a new slot.
+     *
+     * @param title	the title shown below the board.
+     * @return the slot for the owner of the game to publish to.
+     */
+    public Slot addGame(String title) {
+        Slot slot = new Slot();
+        addGame(title, slot);
+        return slot;
+    }
+
+    /**
+     * Removes every game from the dashboard.
+     */
+    public void clear() {
+        cells.clear();
+        this.grid = null;
+        repaint();
+    }
+
+    public int getGameCount() {
+        return cells.size();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Redraws the boards whose snapshots changed since the last frame.
+     */
+    private void drawFrame() {
+        if (grid == null || layoutChanged()) {
+            repaint();
+            return;
+        }
+        Graphics2D g = grid.createGraphics();
+        boolean changed = false;
+        for (int i = 0; i < cells.size(); i ++) {
+            Cell c = cells.get(i);
+            BoardSnapshot s = c.source.get();
+            if (s != c.drawn) {
+                drawCell(g, i, c, s);
+                changed = true;
+            }
+        }
+        g.dispose();
+        if (changed) {
+            repaint();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+
+        // Rebuild the grid for a new size or set of games
+        if (grid == null || layoutChanged()) {
+            rebuildGrid();
+        }
+        g.drawImage(grid, 0, 0, null);
+    }
+
+    /**
+     * Checks if the component size no longer matches the grid image.
+     */
+    private boolean layoutChanged() {
+        return grid.getWidth() != Math.max(1, getWidth())
+                || grid.getHeight() != Math.max(1, getHeight());
+    }
+
+    private void rebuildGrid() {
+        final int W = Math.max(1, getWidth()), H = Math.max(1, getHeight());
+        final int n = Math.max(1, cells.size());
+
+        // Use the largest cells that fit every board
+        this.columns = 1;
+        this.cellSize = 0;
+        for (int cols = 1; cols <= n; cols ++) {
+            int rows = (n + cols - 1) / cols;
+            int size = Math.min(W / cols, H / rows);
+            if (size > cellSize) {
+                this.cellSize = size;
+                this.columns = cols;
+            }
+        }
+        this.cellSize = Math.max(MIN_CELL, cellSize);
+
+        // Draw every board
+        this.grid = new BufferedImage(W, H, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = grid.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, W, H);
+        for (int i = 0; i < cells.size(); i ++) {
+            Cell c = cells.get(i);
+            drawCell(g, i, c, c.source.get());
+        }
+        g.dispose();
+    }
+
+    /**
+     * Draws one board and its title into the grid image.
+     */
+    private void drawCell(Graphics2D g, int i, Cell c, BoardSnapshot s) {
+        c.drawn = s;
+        final int X = (i % columns) * cellSize, Y = (i / columns) * cellSize;
+        final int BOX_SIZE = Math.max(1,
+                (cellSize - 2 * CELL_PADDING - TITLE_HEIGHT) / 8);
+        final int BOX_PADDING = Math.max(1, BOX_SIZE / 8);
+        final int CHECKER_SIZE = Math.max(0, BOX_SIZE - 2 * BOX_PADDING);
+        final int OFFSET_X = X + (cellSize - BOX_SIZE * 8) / 2;
+        final int OFFSET_Y = Y + CELL_PADDING + 1;
+
+        // Clear the cell and draw the empty board
+        g.setColor(BACKGROUND);
+        g.fillRect(X, Y, cellSize, cellSize);
+        g.drawImage(CheckerSprites.getBoard(BOX_SIZE, lightTile, darkTile),
+                OFFSET_X - 1, OFFSET_Y - 1, null);
+
+        // Draw the checkers
+        if (s != null) {
+            int occupied = s.getBlackMask() | s.getWhiteMask();
+            while (occupied != 0) {
+                int index = Integer.numberOfTrailingZeros(occupied);
+                occupied &= occupied - 1;
+                int y = index / 4, x = 2 * (index % 4) + (y + 1) % 2;
+                CheckerSprites.drawChecker(g, s.get(index),
+                        OFFSET_X + x * BOX_SIZE + BOX_PADDING,
+                        OFFSET_Y + y * BOX_SIZE + BOX_PADDING, CHECKER_SIZE);
+            }
+        }
+
+        // Draw the title, marking whose turn it is or that the game is over
+        String msg = c.title;
+        if (s != null) {
+            msg += s.isDraw()? " (draw)" : s.isGameOver()? " (over)"
+                    : s.isP1Turn()? " (1)" : " (2)";
+        }
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(TITLE_FONT);
+        g.setColor(s != null && s.isGameOver()? Color.RED : Color.BLACK);
+        g.drawString(msg, X + CELL_PADDING,
+                OFFSET_Y + BOX_SIZE * 8 + TITLE_HEIGHT - 2);
+    }
+
+    public Color getLightTile() {
+        return lightTile;
+    }
+
+    public void setLightTile(Color lightTile) {
+        this.lightTile = (lightTile == null)? Color.WHITE : lightTile;
+        this.grid = null;
+        repaint();
+    }
+
+    public Color getDarkTile() {
+        return darkTile;
+    }
+
+    public void setDarkTile(Color darkTile) {
+        this.darkTile = (darkTile == null)? Color.BLACK : darkTile;
+        this.grid = null;
+        repaint();
+    }
+
+    /**
+     * A game on the dashboard and the snapshot last drawn for it.
+     */
+    private static class Cell {
+
+        private final String title;
+
+        private final Supplier<BoardSnapshot> source;
+
+        private BoardSnapshot drawn;
+
+        private Cell(String title, Supplier<BoardSnapshot> source) {
+            this.title = (title == null)? "" : title;
+            this.source = source;
+        }
+    }
+
+    /**
+     * The place the owner of a game publishes its snapshots to. Publishing
+     * only replaces the latest snapshot, so it never waits for the
+     * dashboard, and the dashboard draws whichever snapshot is latest when
+     * the next frame is drawn.
+     */
+    public static class Slot implements Supplier<BoardSnapshot> {
+
+        private volatile BoardSnapshot snapshot;
+
+        /**
+         * Publishes a new snapshot of the game. This may be called from any
+         * thread.
+         */
+        public void publish(BoardSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public BoardSnapshot get() {
+            return snapshot;
+        }
+    }
+}
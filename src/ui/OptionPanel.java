@@ -4,19 +4,31 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
+import Model.ComputerPlayer;
+import Model.Gra;
 import Model.HumanPlayer;
+import Model.MctsPlayer;
 import Model.NetworkPlayer;
 import Model.Gracz;
 import Siec.CheckersNetworkHandler;
 import Siec.Command;
 import Siec.ConnectionListener;
 import Siec.Session;
+import Zapis.PdnReader;
+import Zapis.PdnWriter;
 
 public class OptionPanel extends JPanel{
 
@@ -28,6 +40,18 @@ public class OptionPanel extends JPanel{
     /** The button that when clicked, restarts the game. */
     private JButton restartBtn;
 
+    /** The button that when clicked, takes back the last turn. */
+    private JButton undoBtn;
+
+    /** The button that when clicked, plays a turn taken back again. */
+    private JButton redoBtn;
+
+    /** The button that when clicked, saves the game as PDN. */
+    private JButton saveBtn;
+
+    /** The button that when clicked, loads a game from PDN. */
+    private JButton loadBtn;
+
     /** The combo box that changes what type of player player 1 is. */
     private JComboBox<String> player1Opts;
 
@@ -58,11 +82,20 @@ public class OptionPanel extends JPanel{
 
         // Initialize the components
         OptionListener ol = new OptionListener();
-        final String[] playerTypeOpts = {"Human", "Computer", "Network"};
+        final String[] playerTypeOpts = {"Human", "Computer",
+                "Computer (MCTS)", "Network"};
         this.restartBtn = new JButton("Restart");
         this.player1Opts = new JComboBox<>(playerTypeOpts);
         this.player2Opts = new JComboBox<>(playerTypeOpts);
         this.restartBtn.addActionListener(ol);
+        this.undoBtn = new JButton("Undo");
+        this.undoBtn.addActionListener(ol);
+        this.redoBtn = new JButton("Redo");
+        this.redoBtn.addActionListener(ol);
+        this.saveBtn = new JButton("Save Game");
+        this.saveBtn.addActionListener(ol);
+        this.loadBtn = new JButton("Load Game");
+        this.loadBtn.addActionListener(ol);
         this.player1Opts.addActionListener(ol);
         this.player2Opts.addActionListener(ol);
         JPanel top = new JPanel(new FlowLayout(FlowLayout.CENTER));
@@ -81,6 +114,10 @@ public class OptionPanel extends JPanel{
 
         // Add components to the layout
         top.add(restartBtn);
+        top.add(undoBtn);
+        top.add(redoBtn);
+        top.add(saveBtn);
+        top.add(loadBtn);
         middle.add(new JLabel("(black) Player 1: "));
         middle.add(player1Opts);
         middle.add(player1Btn);
@@ -237,13 +274,62 @@ public class OptionPanel extends JPanel{
         // Determine the type
         String type = "" + playerOpts.getSelectedItem();
 
-        if (type.equals("Network")) {
+        if (type.equals("Computer")) {
+            player = new ComputerPlayer();
+        } else if (type.equals("Computer (MCTS)")) {
+            player = new MctsPlayer();
+        } else if (type.equals("Network")) {
             player = new NetworkPlayer();
         }
 
         return player;
     }
 
+    /**
+     * Asks for a file and saves the game being played to it as PDN.
+     */
+    private void saveGame() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Gra game = window.getBoard().getGameCopy();
+        try (Writer out = Files.newBufferedWriter(
+                chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8)) {
+            PdnWriter.write(out, game, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "The game could not be saved.",
+                    "Save Game", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for a PDN file and plays its first game on the board.
+     */
+    private void loadGame() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Gra game = null;
+        try (Reader in = Files.newBufferedReader(
+                chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8)) {
+            game = PdnReader.readGame(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (game == null) {
+            JOptionPane.showMessageDialog(this, "The game could not be loaded.",
+                    "Load Game", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        CheckerBoard board = window.getBoard();
+        board.setGame(game);
+        board.update();
+        board.updateNetwork();
+    }
+
     /**
      * The {@code OptionListener} class responds to the components within the
      * option panel when they are clicked/updated.
@@ -267,6 +353,16 @@ public class OptionPanel extends JPanel{
             if (src == restartBtn) {
                 window.restart();
                 window.getBoard().updateNetwork();
+            } else if (src == undoBtn) {
+                window.getBoard().undo();
+                window.getBoard().updateNetwork();
+            } else if (src == redoBtn) {
+                window.getBoard().redo();
+                window.getBoard().updateNetwork();
+            } else if (src == saveBtn) {
+                saveGame();
+            } else if (src == loadBtn) {
+                loadGame();
             } else if (src == player1Opts) {
                 Gracz player = getPlayer(player1Opts);
                 window.setPlayer1(player);
@@ -0,0 +1,23 @@
+package ui;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder event for a paint of the {@link CheckerBoard}. Its
+ * duration is the time taken to draw the board.
+ */
+@Name("checkers.Paint")
+@Label("Board Paint")
+@Category({"Checkers", "UI"})
+@Description("A paint of the checker board")
+class PaintEvent extends jdk.jfr.Event {
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+}